@@ -11,6 +11,8 @@ import android.os.Bundle;
 import android.os.Environment;
 import android.os.Handler;
 import android.os.Looper;
+import android.os.StrictMode;
+import android.os.strictmode.Violation;
 import android.view.View;
 import android.widget.LinearLayout;
 
@@ -20,14 +22,19 @@ import androidx.core.content.ContextCompat;
 import androidx.core.content.FileProvider;
 import androidx.viewpager2.widget.ViewPager2;
 
+import com.kitchenboard.net.HttpTransport;
 import com.kitchenboard.shopping.ShoppingFragment;
+import com.kitchenboard.task.TaskGroup;
 import com.kitchenboard.update.UpdateChecker;
 
 import java.io.File;
+import java.util.concurrent.Executor;
 
 public class MainActivity extends AppCompatActivity {
 
     private static final int AUTO_ADVANCE_DELAY_MS = 5_000;
+    /** Disk budget for cached API responses (forecasts, shopping lists, releases). */
+    private static final long HTTP_CACHE_BYTES = 5L * 1024 * 1024;
 
     private long downloadId = -1;
     private BroadcastReceiver downloadReceiver;
@@ -37,6 +44,8 @@ public class MainActivity extends AppCompatActivity {
     private View[] dots;
     private LinearLayout dotContainer;
     private ViewPager2.OnPageChangeCallback pageChangeCallback;
+    /** Background work of this activity; cancelled in onDestroy. */
+    private TaskGroup tasks;
 
     private final Handler autoAdvanceHandler = new Handler(Looper.getMainLooper());
     private final Runnable autoAdvanceRunnable = new Runnable() {
@@ -51,8 +60,11 @@ public class MainActivity extends AppCompatActivity {
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
+        enableStrictModeInDebug();
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_main);
+        tasks = new TaskGroup(this);
+        HttpTransport.get().installCache(new File(getCacheDir(), "http"), HTTP_CACHE_BYTES);
 
         viewPager = findViewById(R.id.view_pager);
         dotContainer = findViewById(R.id.dot_container);
@@ -148,10 +160,50 @@ public class MainActivity extends AppCompatActivity {
         autoAdvanceHandler.removeCallbacks(autoAdvanceRunnable);
     }
 
+    // ── Diagnostics ───────────────────────────────────────────────────────────
+
+    /**
+     * Debug builds log every disk read/write on the main thread (tag StrictMode).
+     * Database access there crashes the app instead (API 28+), so a query or
+     * transaction that slips onto the UI thread fails the first time it runs.
+     * Other disk access, such as the first SharedPreferences read, is only logged.
+     */
+    private static void enableStrictModeInDebug() {
+        if (!BuildConfig.DEBUG) return;
+        StrictMode.ThreadPolicy.Builder policy = new StrictMode.ThreadPolicy.Builder()
+                .detectDiskReads()
+                .detectDiskWrites()
+                .penaltyLog();
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.P) {
+            policy.penaltyListener(new Executor() {
+                @Override
+                public void execute(Runnable command) {
+                    command.run();
+                }
+            }, new StrictMode.OnThreadViolationListener() {
+                @Override
+                public void onThreadViolation(Violation violation) {
+                    if (isDatabaseAccess(violation)) {
+                        throw new IllegalStateException(
+                                "Database access on the main thread", violation);
+                    }
+                }
+            });
+        }
+        StrictMode.setThreadPolicy(policy.build());
+    }
+
+    private static boolean isDatabaseAccess(Throwable violation) {
+        for (StackTraceElement frame : violation.getStackTrace()) {
+            if (frame.getClassName().startsWith("android.database.sqlite.")) return true;
+        }
+        return false;
+    }
+
     // ── Update checker ────────────────────────────────────────────────────────
 
     private void checkForUpdates() {
-        UpdateChecker.checkForUpdate(BuildConfig.VERSION_CODE, new UpdateChecker.UpdateCallback() {
+        UpdateChecker.checkForUpdate(tasks, BuildConfig.VERSION_CODE, new UpdateChecker.UpdateCallback() {
             @Override
             public void onUpdateAvailable(final String tagName, final String downloadUrl) {
                 if (isFinishing()) return;
@@ -0,0 +1,223 @@
+package com.kitchenboard.calendar;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import com.kitchenboard.task.RequestRegistry;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+
+/**
+ * Appointments of today and the following days ({@link #DAYS} in all),
+ * kept in memory for the agenda of the calendar page.
+ *
+ * The window is read with one {@link CalendarDatabaseHelper#getAppointmentsBetween}
+ * range query on {@code executor}. After that, single appointments added
+ * or deleted on this device are patched in without a query, and at local
+ * midnight the window moves on by dropping yesterday and reading only the
+ * day that comes into view. Changes that may touch any day (series,
+ * imports, sync) call {@link #reload()}. Must be used on the main thread.
+ */
+final class AgendaCache {
+
+    interface Listener {
+        /** The agenda changed and should be drawn again. */
+        void onAgendaChanged();
+    }
+
+    static final int DAYS = 7;
+
+    private static final String REQUEST_KEY = "agenda";
+
+    private final CalendarDatabaseHelper db;
+    private final Executor executor;
+    private final RequestRegistry requests;
+    private final Listener listener;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    /** Date (YYYY-MM-DD) → appointments, only for days of the window that have any. */
+    private final TreeMap<String, List<Appointment>> days = new TreeMap<>();
+    /** Epoch day of the first day of the window as last requested. */
+    private int firstDay;
+    /** {@link #days} holds a window to show, possibly an older one while a reload runs. */
+    private boolean loaded;
+    /** The last load failed; the next roll reads the whole window again. */
+    private boolean stale;
+    private boolean started;
+
+    private final Runnable midnightRunnable = new Runnable() {
+        @Override
+        public void run() {
+            roll();
+            scheduleMidnight();
+        }
+    };
+
+    AgendaCache(CalendarDatabaseHelper db, Executor executor,
+                RequestRegistry requests, Listener listener) {
+        this.db = db;
+        this.executor = executor;
+        this.requests = requests;
+        this.listener = listener;
+    }
+
+    /**
+     * Brings the window up to today and rolls it forward at every midnight
+     * until {@link #stop()}. The handler clock stands still in deep sleep,
+     * so calling this on resume also catches a midnight that was missed.
+     */
+    void start() {
+        started = true;
+        roll();
+        scheduleMidnight();
+    }
+
+    void stop() {
+        started = false;
+        mainHandler.removeCallbacks(midnightRunnable);
+    }
+
+    /** Days of the window with appointments, in date order, or null before the first load. */
+    SortedMap<String, List<Appointment>> getDays() {
+        return loaded ? Collections.unmodifiableSortedMap(days) : null;
+    }
+
+    /** Reads the whole window again, e.g. after a series was added or removed. */
+    void reload() {
+        requests.cancel(REQUEST_KEY);
+        firstDay = today();
+        load(firstDay, firstDay + DAYS - 1, true);
+    }
+
+    /** {@code appointment} was written to the database; call once the write has finished. */
+    void onAdded(Appointment appointment) {
+        if (!covers(appointment.getDate())) return;
+        if (patchDuringLoad()) return;
+        List<Appointment> day = days.get(appointment.getDate());
+        if (day == null) {
+            day = new ArrayList<>();
+            days.put(appointment.getDate(), day);
+        }
+        int pos = Collections.binarySearch(day, appointment, CalendarDatabaseHelper.BY_DATE_AND_TITLE);
+        day.add(pos < 0 ? -pos - 1 : pos, appointment);
+        listener.onAgendaChanged();
+    }
+
+    /** The single (non-recurring) {@code appointment} was deleted from the database. */
+    void onDeleted(Appointment appointment) {
+        if (!covers(appointment.getDate())) return;
+        if (patchDuringLoad()) return;
+        List<Appointment> day = days.get(appointment.getDate());
+        if (day == null) return;
+        for (Iterator<Appointment> it = day.iterator(); it.hasNext(); ) {
+            Appointment a = it.next();
+            if (!a.isRecurring() && a.getId() == appointment.getId()) {
+                it.remove();
+                break;
+            }
+        }
+        if (day.isEmpty()) days.remove(appointment.getDate());
+        listener.onAgendaChanged();
+    }
+
+    // ── Window ────────────────────────────────────────────────────────────────
+
+    private boolean covers(String date) {
+        if (stale || (!loaded && !requests.isInFlight(REQUEST_KEY))) return false;
+        int day = IsoDates.toEpochDay(date);
+        return day >= firstDay && day < firstDay + DAYS;
+    }
+
+    /**
+     * A load that is still running may have read the table before or after
+     * the change, so it is restarted instead of patched. Returns whether it was.
+     */
+    private boolean patchDuringLoad() {
+        if (!requests.isInFlight(REQUEST_KEY)) return false;
+        reload();
+        return true;
+    }
+
+    /** Moves the window to start today, reading only the days that came into view. */
+    private void roll() {
+        int today = today();
+        if (!loaded || stale || requests.isInFlight(REQUEST_KEY)) {
+            if (!requests.isInFlight(REQUEST_KEY) || today != firstDay) reload();
+            return;
+        }
+        if (today == firstDay) return;
+        if (today < firstDay || today >= firstDay + DAYS) {
+            // Clock moved back, or the board slept through the whole window
+            reload();
+            return;
+        }
+        days.headMap(IsoDates.toIso(today)).clear();
+        int from = firstDay + DAYS;
+        firstDay = today;
+        load(from, today + DAYS - 1, false);
+        listener.onAgendaChanged();
+    }
+
+    private void scheduleMidnight() {
+        mainHandler.removeCallbacks(midnightRunnable);
+        if (!started) return;
+        Calendar next = Calendar.getInstance();
+        next.add(Calendar.DAY_OF_MONTH, 1);
+        next.set(Calendar.HOUR_OF_DAY, 0);
+        next.set(Calendar.MINUTE, 0);
+        next.set(Calendar.SECOND, 0);
+        next.set(Calendar.MILLISECOND, 0);
+        // A little late rather than early, so the date has surely changed
+        long delay = next.getTimeInMillis() - System.currentTimeMillis() + 1_000;
+        mainHandler.postDelayed(midnightRunnable, delay);
+    }
+
+    private static int today() {
+        Calendar now = Calendar.getInstance();
+        return IsoDates.epochDay(now.get(Calendar.YEAR),
+                now.get(Calendar.MONTH) + 1, now.get(Calendar.DAY_OF_MONTH));
+    }
+
+    /** Reads {@code from}..{@code to} (epoch days); replaces the window or adds to it. */
+    private void load(int from, int to, final boolean replace) {
+        final String fromDate = IsoDates.toIso(from);
+        final String toDate = IsoDates.toIso(to);
+        requests.request(REQUEST_KEY, fromDate + ".." + toDate, executor,
+                new Callable<List<Appointment>>() {
+                    @Override
+                    public List<Appointment> call() {
+                        return db.getAppointmentsBetween(fromDate, toDate);
+                    }
+                },
+                new RequestRegistry.Callback<List<Appointment>>() {
+                    @Override
+                    public void onResult(List<Appointment> appointments) {
+                        if (replace) days.clear();
+                        for (Appointment a : appointments) {
+                            List<Appointment> day = days.get(a.getDate());
+                            if (day == null) {
+                                day = new ArrayList<>();
+                                days.put(a.getDate(), day);
+                            }
+                            day.add(a);
+                        }
+                        loaded = true;
+                        stale = false;
+                        listener.onAgendaChanged();
+                    }
+
+                    @Override
+                    public void onError(Exception e) {
+                        // Shown as it is until the next midnight or resume reads it again
+                        stale = true;
+                    }
+                });
+    }
+}
@@ -4,14 +4,23 @@ public class Appointment {
     private final long id;
     private final String date;
     private final String title;
+    /** Id of the {@link Recurrence} this is an occurrence of; 0 for a single appointment. */
+    private final long recurrenceId;
 
     public Appointment(long id, String date, String title) {
+        this(id, date, title, 0);
+    }
+
+    public Appointment(long id, String date, String title, long recurrenceId) {
         this.id = id;
         this.date = date;
         this.title = title;
+        this.recurrenceId = recurrenceId;
     }
 
     public long getId()     { return id; }
     public String getDate() { return date; }
     public String getTitle(){ return title; }
+    public long getRecurrenceId() { return recurrenceId; }
+    public boolean isRecurring()  { return recurrenceId != 0; }
 }
@@ -44,7 +44,7 @@ public class AppointmentAdapter extends RecyclerView.Adapter<AppointmentAdapter.
     @Override
     public void onBindViewHolder(@NonNull ViewHolder holder, int position) {
         Appointment item = items.get(position);
-        holder.tvTitle.setText(item.getTitle());
+        holder.tvTitle.setText(item.isRecurring() ? "↻ " + item.getTitle() : item.getTitle());
         holder.btnDelete.setOnClickListener(new View.OnClickListener() {
             @Override
             public void onClick(View v) {
@@ -0,0 +1,162 @@
+package com.kitchenboard.calendar;
+
+import com.kitchenboard.task.RequestRegistry;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+
+/**
+ * Appointments of whole months, kept in memory so that selecting a day and
+ * drawing busy markers need no query.
+ *
+ * A month is read with one {@link CalendarDatabaseHelper#getAppointmentsBetween}
+ * range query on {@code executor}; {@link #preload} fetches the month of a
+ * date and both neighbours, so paging through the calendar usually finds
+ * its data ready. At most {@link #MAX_MONTHS} months are kept, least
+ * recently used first out. Must be used on the main thread.
+ */
+final class AppointmentMonthCache {
+
+    interface Listener {
+        /** {@code month} (YYYY-MM) was loaded or reloaded. */
+        void onMonthLoaded(String month);
+    }
+
+    static final int MAX_MONTHS = 6;
+
+    private final CalendarDatabaseHelper db;
+    private final Executor executor;
+    private final RequestRegistry requests;
+    private final Listener listener;
+    /** Month (YYYY-MM) → date (YYYY-MM-DD) → appointments of that day. */
+    private final LinkedHashMap<String, Map<String, List<Appointment>>> months =
+            new LinkedHashMap<String, Map<String, List<Appointment>>>(8, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(
+                        Map.Entry<String, Map<String, List<Appointment>>> eldest) {
+                    return size() > MAX_MONTHS;
+                }
+            };
+
+    AppointmentMonthCache(CalendarDatabaseHelper db, Executor executor,
+                          RequestRegistry requests, Listener listener) {
+        this.db = db;
+        this.executor = executor;
+        this.requests = requests;
+        this.listener = listener;
+    }
+
+    /** Appointments on {@code date}, or null while its month is not loaded. */
+    List<Appointment> getDay(String date) {
+        Map<String, List<Appointment>> days = months.get(monthOf(date));
+        if (days == null) return null;
+        List<Appointment> list = days.get(date);
+        return list != null ? list : Collections.<Appointment>emptyList();
+    }
+
+    /** Days of {@code month} (1-31, ascending) with appointments, or null while not loaded. */
+    List<Integer> getBusyDays(String month) {
+        Map<String, List<Appointment>> days = months.get(month);
+        if (days == null) return null;
+        List<Integer> busy = new ArrayList<>(days.size());
+        for (String date : days.keySet()) {
+            busy.add(Integer.parseInt(date.substring(8, 10)));
+        }
+        Collections.sort(busy);
+        return busy;
+    }
+
+    /** Loads the month of {@code date} and its neighbours unless cached or loading. */
+    void preload(String date) {
+        String month = monthOf(date);
+        int year = Integer.parseInt(month.substring(0, 4));
+        int monthOfYear = Integer.parseInt(month.substring(5, 7));
+        load(month);
+        load(monthKey(monthOfYear == 1 ? year - 1 : year, monthOfYear == 1 ? 12 : monthOfYear - 1));
+        load(monthKey(monthOfYear == 12 ? year + 1 : year, monthOfYear == 12 ? 1 : monthOfYear + 1));
+    }
+
+    /**
+     * Reads the month of {@code date} again after a change. Queue it on the
+     * executor after the write so the query sees it.
+     */
+    void reload(String date) {
+        String month = monthOf(date);
+        // A load still running may have read the table before the change
+        requests.cancel(requestKey(month));
+        months.remove(month);
+        load(month);
+    }
+
+    /**
+     * Reads every cached month again, e.g. after a recurring series was
+     * added or removed, which may touch any of them.
+     */
+    void reloadAll() {
+        List<String> cached = new ArrayList<>(months.keySet());
+        for (String month : cached) {
+            requests.cancel(requestKey(month));
+        }
+        months.clear();
+        for (String month : cached) {
+            load(month);
+        }
+    }
+
+    static String monthOf(String date) {
+        return date.substring(0, 7);
+    }
+
+    private static String monthKey(int year, int month) {
+        return String.format(Locale.US, "%04d-%02d", year, month);
+    }
+
+    private static String requestKey(String month) {
+        return "month:" + month;
+    }
+
+    private void load(final String month) {
+        if (months.containsKey(month)) return;
+        final String lastDay = month + String.format(Locale.US, "-%02d", IsoDates.daysInMonth(
+                Integer.parseInt(month.substring(0, 4)), Integer.parseInt(month.substring(5, 7))));
+        requests.request(requestKey(month), month, executor,
+                new Callable<Map<String, List<Appointment>>>() {
+                    @Override
+                    public Map<String, List<Appointment>> call() {
+                        return groupByDate(db.getAppointmentsBetween(month + "-01", lastDay));
+                    }
+                },
+                new RequestRegistry.Callback<Map<String, List<Appointment>>>() {
+                    @Override
+                    public void onResult(Map<String, List<Appointment>> days) {
+                        months.put(month, days);
+                        listener.onMonthLoaded(month);
+                    }
+
+                    @Override
+                    public void onError(Exception e) {
+                        // Left unloaded; the next preload of this month tries again
+                    }
+                });
+    }
+
+    private static Map<String, List<Appointment>> groupByDate(List<Appointment> appointments) {
+        Map<String, List<Appointment>> days = new HashMap<>();
+        for (Appointment a : appointments) {
+            List<Appointment> day = days.get(a.getDate());
+            if (day == null) {
+                day = new ArrayList<>();
+                days.put(a.getDate(), day);
+            }
+            day.add(a);
+        }
+        return days;
+    }
+}
@@ -0,0 +1,205 @@
+package com.kitchenboard.calendar;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import com.kitchenboard.net.HttpRequest;
+import com.kitchenboard.net.HttpTransport;
+import com.kitchenboard.task.TaskScheduler;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * HTTP client for the calendar part of the sync backend (backend/api.php,
+ * {@code action=cal_list} and {@code action=cal_batch}).
+ *
+ * A sync first sends the changes waiting in the outbox of
+ * {@link CalendarDatabaseHelper}, in batches of up to {@link #MAX_BATCH_SIZE}
+ * entries, and then downloads only what changed on the server since the
+ * last synced revision. Work runs on the shared network pool of
+ * {@link TaskScheduler}; results arrive on the main thread.
+ */
+public class CalendarApiClient {
+
+    /** Generic two-outcome callback. */
+    public interface Callback<T> {
+        void onSuccess(T result);
+        void onError(String message);
+    }
+
+    /** Upper bound on changes per {@code action=cal_batch} request. */
+    private static final int MAX_BATCH_SIZE = 100;
+    private static final int TIMEOUT_MS = 8000;
+
+    private final String baseUrl;
+    private final HttpTransport transport = HttpTransport.get();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    /**
+     * @param baseUrl Full URL of api.php, e.g. {@code http://192.168.1.10/kitchenboard/api.php}
+     */
+    public CalendarApiClient(String baseUrl) {
+        this.baseUrl = normalizeUrl(baseUrl);
+    }
+
+    /** Whether this client talks to {@code url}, so it can be kept instead of replaced. */
+    public boolean hasBaseUrl(String url) {
+        return baseUrl.equals(normalizeUrl(url));
+    }
+
+    private static String normalizeUrl(String url) {
+        // Strip trailing slash
+        return url.endsWith("/") ? url.substring(0, url.length() - 1) : url;
+    }
+
+    // ── Public API ────────────────────────────────────────────────────────────
+
+    /**
+     * Sends the local changes, then merges the server's changes into
+     * {@code db}. The callback receives whether the local calendar changed.
+     * Changes the server rejects as invalid (HTTP 4xx) are dropped so they
+     * cannot block the queue; on any other failure the rest stays queued.
+     */
+    public void sync(final CalendarDatabaseHelper db, final Callback<Boolean> callback) {
+        TaskScheduler.network().execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    sendOutbox(db);
+                    long since = db.getSyncRevision(baseUrl);
+                    CalendarDelta delta = fetchDelta(since);
+                    postSuccess(callback, db.applySyncDelta(baseUrl, delta));
+                } catch (final Exception e) {
+                    postError(callback, e.getMessage());
+                }
+            }
+        });
+    }
+
+    // ── Outbox ────────────────────────────────────────────────────────────────
+
+    /** Blocking: sends the outbox batch by batch until it is empty. */
+    private void sendOutbox(CalendarDatabaseHelper db) throws Exception {
+        List<CalendarChange> pending;
+        while (!(pending = db.getPendingChanges(MAX_BATCH_SIZE)).isEmpty()) {
+            JSONArray ops = new JSONArray();
+            for (CalendarChange change : pending) {
+                ops.put(toJson(change));
+            }
+            String response = httpPost(baseUrl, "action=cal_batch&ops=" + encode(ops.toString()));
+            JSONArray results = new JSONObject(response).getJSONArray("results");
+            if (results.length() != pending.size()) {
+                throw new Exception("Batch returned " + results.length()
+                        + " results for " + pending.size() + " changes");
+            }
+            List<CalendarChange> done = new ArrayList<>();
+            for (int i = 0; i < results.length(); i++) {
+                JSONObject result = results.getJSONObject(i);
+                int status = result.optInt("status", 200);
+                if (!result.getBoolean("ok") && (status < 400 || status >= 500)) {
+                    db.completeChanges(done);
+                    throw new Exception(result.optString("error", "HTTP " + status));
+                }
+                done.add(pending.get(i));
+            }
+            db.completeChanges(done);
+        }
+    }
+
+    private static JSONObject toJson(CalendarChange change) throws Exception {
+        JSONObject obj = new JSONObject();
+        obj.put("uid", change.getUid());
+        if (change.isDeleted()) {
+            obj.put("op", "delete");
+            return obj;
+        }
+        obj.put("op", "put");
+        obj.put("kind", change.getKind());
+        obj.put("title", change.getTitle());
+        if (change.getDate() != null) obj.put("date", change.getDate());
+        if (CalendarChange.RECURRENCE.equals(change.getKind())) {
+            obj.put("frequency", change.getFrequency());
+            obj.put("interval", change.getInterval());
+            if (change.getEndDate() != null) obj.put("end_date", change.getEndDate());
+        }
+        return obj;
+    }
+
+    // ── Delta parsing ─────────────────────────────────────────────────────────
+
+    /** Blocking: downloads the changes since {@code since} (0 = full snapshot). */
+    private CalendarDelta fetchDelta(long since) throws Exception {
+        String url = baseUrl + "?action=cal_list";
+        if (since > 0) url += "&since=" + since;
+        JSONObject json = new JSONObject(httpGet(url));
+
+        JSONArray entries = json.getJSONArray("entries");
+        List<CalendarChange> changed = new ArrayList<>(entries.length());
+        for (int i = 0; i < entries.length(); i++) {
+            JSONObject obj = entries.getJSONObject(i);
+            changed.add(new CalendarChange(0,
+                    obj.getString("uid"),
+                    obj.getString("kind"),
+                    false,
+                    obj.optString("date", null),
+                    obj.isNull("end_date") ? null : obj.getString("end_date"),
+                    obj.optInt("frequency", 0),
+                    obj.optInt("interval", 1),
+                    obj.getString("title")));
+        }
+        JSONArray deletedArr = json.getJSONArray("deleted");
+        List<String> deleted = new ArrayList<>(deletedArr.length());
+        for (int i = 0; i < deletedArr.length(); i++) {
+            deleted.add(deletedArr.getString(i));
+        }
+        return new CalendarDelta(json.getLong("rev"), json.getBoolean("full"), changed, deleted);
+    }
+
+    // ── HTTP helpers ──────────────────────────────────────────────────────────
+
+    private static HttpRequest.Builder jsonRequest(String url) {
+        return new HttpRequest.Builder(url)
+                .header("Accept", "application/json")
+                .timeouts(TIMEOUT_MS, TIMEOUT_MS);
+    }
+
+    private String httpGet(String url) throws IOException {
+        return transport.fetchString(jsonRequest(url).build());
+    }
+
+    private String httpPost(String url, String body) throws IOException {
+        return transport.fetchString(jsonRequest(url).postForm(body).build());
+    }
+
+    /** URL-encode a string value for an application/x-www-form-urlencoded body. */
+    private static String encode(String value) throws IOException {
+        // The Charset overload needs API 33
+        return URLEncoder.encode(value, "UTF-8");
+    }
+
+    // ── Thread helpers ────────────────────────────────────────────────────────
+
+    private <T> void postSuccess(final Callback<T> cb, final T result) {
+        mainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                cb.onSuccess(result);
+            }
+        });
+    }
+
+    private <T> void postError(final Callback<T> cb, final String msg) {
+        mainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                cb.onError(msg);
+            }
+        });
+    }
+}
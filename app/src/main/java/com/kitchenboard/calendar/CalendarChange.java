@@ -0,0 +1,57 @@
+package com.kitchenboard.calendar;
+
+/**
+ * An appointment, recurring series or standard template as exchanged with
+ * the sync backend ({@code ?action=cal_batch} / {@code cal_list}),
+ * identified by the uid the creating device assigned.
+ *
+ * Outgoing changes come from the {@code outbox} table of
+ * {@link CalendarDatabaseHelper}, which holds at most one pending change per
+ * uid; {@link #getOutboxId()} is 0 for changes received from the server.
+ */
+public class CalendarChange {
+
+    public static final String APPOINTMENT = "appointment";
+    public static final String RECURRENCE = "recurrence";
+    public static final String TEMPLATE = "template";
+
+    private final long outboxId;
+    private final String uid;
+    private final String kind;
+    private final boolean deleted;
+    private final String date;
+    private final String endDate;
+    private final int frequency;
+    private final int interval;
+    private final String title;
+
+    public CalendarChange(long outboxId, String uid, String kind, boolean deleted, String date,
+                          String endDate, int frequency, int interval, String title) {
+        this.outboxId = outboxId;
+        this.uid = uid;
+        this.kind = kind;
+        this.deleted = deleted;
+        this.date = date;
+        this.endDate = endDate;
+        this.frequency = frequency;
+        this.interval = interval;
+        this.title = title;
+    }
+
+    static CalendarChange deletion(long outboxId, String uid, String kind) {
+        return new CalendarChange(outboxId, uid, kind, true, null, null, 0, 1, null);
+    }
+
+    public long getOutboxId()  { return outboxId; }
+    public String getUid()     { return uid; }
+    /** One of {@link #APPOINTMENT}, {@link #RECURRENCE}, {@link #TEMPLATE}. */
+    public String getKind()    { return kind; }
+    public boolean isDeleted() { return deleted; }
+    /** YYYY-MM-DD; the first occurrence of a series, null for templates. */
+    public String getDate()    { return date; }
+    /** Last day of a series, or null if open-ended. */
+    public String getEndDate() { return endDate; }
+    public int getFrequency()  { return frequency; }
+    public int getInterval()   { return interval; }
+    public String getTitle()   { return title; }
+}
@@ -3,24 +3,70 @@ package com.kitchenboard.calendar;
 import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteDoneException;
+import android.database.sqlite.SQLiteException;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
 
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.UUID;
 
 public class CalendarDatabaseHelper extends SQLiteOpenHelper {
 
     private static final String DB_NAME    = "calendar.db";
-    private static final int    DB_VERSION = 1;
+    private static final int    DB_VERSION = 4;
 
     static final String TABLE_APPOINTMENTS = "appointments";
     static final String TABLE_TEMPLATES    = "standard_templates";
+    static final String TABLE_RECURRENCES  = "recurrences";
     static final String COL_ID    = "_id";
     static final String COL_DATE  = "date";   // YYYY-MM-DD
     static final String COL_TITLE = "title";
+    // recurrences: COL_DATE is the first occurrence
+    static final String COL_END_DATE  = "end_date";   // YYYY-MM-DD, NULL = open-ended
+    static final String COL_FREQUENCY = "frequency";  // Recurrence.DAILY … YEARLY
+    static final String COL_INTERVAL  = "interval_count";
+    /** Identity shared with the sync server and other devices, in all three tables. */
+    static final String COL_UID = "uid";
 
-    public CalendarDatabaseHelper(Context context) {
+    /** At most one pending change per uid, waiting to be sent to the sync server. */
+    static final String TABLE_OUTBOX     = "outbox";
+    static final String COL_OP_KIND      = "kind";      // CalendarChange.APPOINTMENT …
+    static final String COL_OP_DELETED   = "deleted";
+
+    static final String TABLE_SYNC_STATE = "sync_state";
+    static final String COL_STATE_KEY    = "key";
+    static final String COL_STATE_VALUE  = "value";
+    private static final String STATE_SERVER_URL = "server_url";
+    private static final String STATE_REVISION   = "revision";
+    /** Covers date lookups and ranges together with the title order. */
+    private static final String INDEX_APPOINTMENTS_DATE = "idx_appointments_date";
+
+    private static CalendarDatabaseHelper instance;
+
+    /** Built on first use from {@link #TABLE_RECURRENCES}; null after a change. */
+    private RecurrenceIndex recurrenceIndex;
+
+    /**
+     * The app-wide instance. The calendar screen and the sync client use the
+     * database concurrently, so it is shared and never closed.
+     */
+    public static synchronized CalendarDatabaseHelper get(Context context) {
+        if (instance == null) {
+            instance = new CalendarDatabaseHelper(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private CalendarDatabaseHelper(Context context) {
         super(context, DB_NAME, null, DB_VERSION);
     }
 
@@ -29,11 +75,15 @@ public class CalendarDatabaseHelper extends SQLiteOpenHelper {
         db.execSQL("CREATE TABLE " + TABLE_APPOINTMENTS + " (" +
                 COL_ID    + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
                 COL_DATE  + " TEXT NOT NULL, " +
-                COL_TITLE + " TEXT NOT NULL)");
+                COL_TITLE + " TEXT NOT NULL, " +
+                COL_UID   + " TEXT)");
+        createDateIndex(db);
+        createRecurrenceTable(db);
 
         db.execSQL("CREATE TABLE " + TABLE_TEMPLATES + " (" +
                 COL_ID    + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
-                COL_TITLE + " TEXT NOT NULL UNIQUE)");
+                COL_TITLE + " TEXT NOT NULL UNIQUE, " +
+                COL_UID   + " TEXT)");
 
         // Pre-populate with example standard templates
         ContentValues cv = new ContentValues();
@@ -42,27 +92,76 @@ public class CalendarDatabaseHelper extends SQLiteOpenHelper {
             cv.put(COL_TITLE, t);
             db.insert(TABLE_TEMPLATES, null, cv);
         }
+        createSyncSchema(db);
     }
 
     @Override
     public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
-        // reserved for future upgrades
+        if (oldVersion < 2) {
+            createDateIndex(db);
+        }
+        if (oldVersion < 3) {
+            createRecurrenceTable(db);
+        }
+        if (oldVersion < 4) {
+            for (String table : new String[]{TABLE_APPOINTMENTS, TABLE_RECURRENCES, TABLE_TEMPLATES}) {
+                try {
+                    db.execSQL("ALTER TABLE " + table + " ADD COLUMN " + COL_UID + " TEXT");
+                } catch (SQLiteException ignored) {
+                    // Column already exists when the table was created by this version
+                }
+            }
+            createSyncSchema(db);
+        }
+    }
+
+    private static void createDateIndex(SQLiteDatabase db) {
+        db.execSQL("CREATE INDEX IF NOT EXISTS " + INDEX_APPOINTMENTS_DATE + " ON " +
+                TABLE_APPOINTMENTS + " (" + COL_DATE + ", " + COL_TITLE + ")");
+    }
+
+    private static void createRecurrenceTable(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + TABLE_RECURRENCES + " (" +
+                COL_ID        + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                COL_DATE      + " TEXT NOT NULL, " +
+                COL_END_DATE  + " TEXT, " +
+                COL_FREQUENCY + " INTEGER NOT NULL, " +
+                COL_INTERVAL  + " INTEGER NOT NULL DEFAULT 1, " +
+                COL_TITLE     + " TEXT NOT NULL, " +
+                COL_UID       + " TEXT)");
+    }
+
+    /** Uid indexes, outbox and sync state; gives every existing row a uid. */
+    private static void createSyncSchema(SQLiteDatabase db) {
+        for (String table : new String[]{TABLE_APPOINTMENTS, TABLE_RECURRENCES, TABLE_TEMPLATES}) {
+            db.execSQL("UPDATE " + table + " SET " + COL_UID + " = lower(hex(randomblob(16)))" +
+                    " WHERE " + COL_UID + " IS NULL");
+            db.execSQL("CREATE UNIQUE INDEX IF NOT EXISTS idx_" + table + "_uid ON " +
+                    table + " (" + COL_UID + ")");
+        }
+        db.execSQL("CREATE TABLE IF NOT EXISTS " + TABLE_OUTBOX + " (" +
+                COL_ID         + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                COL_UID        + " TEXT NOT NULL UNIQUE, " +
+                COL_OP_KIND    + " TEXT NOT NULL, " +
+                COL_OP_DELETED + " INTEGER NOT NULL DEFAULT 0)");
+        db.execSQL("CREATE TABLE IF NOT EXISTS " + TABLE_SYNC_STATE + " (" +
+                COL_STATE_KEY   + " TEXT PRIMARY KEY, " +
+                COL_STATE_VALUE + " TEXT)");
     }
 
     // ── Appointments ──────────────────────────────────────────────────────────
 
-    /** Inserts a new appointment. Returns the new row id. */
+    /** Inserts a new appointment and queues it for sync. Returns the new row id. */
     public long addAppointment(String date, String title) {
         ContentValues cv = new ContentValues();
         cv.put(COL_DATE, date);
         cv.put(COL_TITLE, title);
-        return getWritableDatabase().insert(TABLE_APPOINTMENTS, null, cv);
+        return insertSynced(TABLE_APPOINTMENTS, CalendarChange.APPOINTMENT, cv);
     }
 
-    /** Permanently deletes an appointment. */
+    /** Permanently deletes an appointment and queues the deletion for sync. */
     public void deleteAppointment(long id) {
-        getWritableDatabase().delete(TABLE_APPOINTMENTS,
-                COL_ID + "=?", new String[]{String.valueOf(id)});
+        deleteSynced(TABLE_APPOINTMENTS, CalendarChange.APPOINTMENT, id);
     }
 
     /** Returns all appointments for a given date (YYYY-MM-DD), ordered by title. */
@@ -79,20 +178,202 @@ public class CalendarDatabaseHelper extends SQLiteOpenHelper {
         return list;
     }
 
+    /**
+     * Returns all appointments from {@code from} to {@code to} (YYYY-MM-DD,
+     * both inclusive), ordered by date and title: single appointments from
+     * one index range scan plus the occurrences of recurring series, which
+     * are expanded for the window only (see {@link RecurrenceIndex}).
+     */
+    public List<Appointment> getAppointmentsBetween(String from, String to) {
+        List<Appointment> list = new ArrayList<>();
+        Cursor c = getReadableDatabase().query(TABLE_APPOINTMENTS,
+                new String[]{COL_ID, COL_DATE, COL_TITLE},
+                COL_DATE + " BETWEEN ? AND ?", new String[]{from, to},
+                null, null, COL_DATE + " ASC, " + COL_TITLE + " ASC");
+        while (c.moveToNext()) {
+            list.add(new Appointment(c.getLong(0), c.getString(1), c.getString(2)));
+        }
+        c.close();
+
+        int fromDay = IsoDates.toEpochDay(from);
+        int toDay = IsoDates.toEpochDay(to);
+        List<Recurrence> series = new ArrayList<>();
+        getRecurrenceIndex().query(fromDay, toDay, series);
+        if (series.isEmpty()) return list;
+        for (Recurrence r : series) {
+            r.expand(fromDay, toDay, list);
+        }
+        Collections.sort(list, BY_DATE_AND_TITLE);
+        return list;
+    }
+
+    static final Comparator<Appointment> BY_DATE_AND_TITLE = new Comparator<Appointment>() {
+        @Override
+        public int compare(Appointment a, Appointment b) {
+            int byDate = a.getDate().compareTo(b.getDate());
+            return byDate != 0 ? byDate : a.getTitle().compareTo(b.getTitle());
+        }
+    };
+
+    // ── Recurring appointments ────────────────────────────────────────────────
+
+    /**
+     * Inserts a recurring appointment starting on {@code startDate}
+     * (YYYY-MM-DD) and repeating every {@code interval} units of
+     * {@code frequency} ({@link Recurrence#DAILY} … {@link Recurrence#YEARLY})
+     * until {@code endDate}, or forever when it is null. Returns the new row id.
+     */
+    public synchronized long addRecurrence(String startDate, String title, int frequency,
+                                           int interval, String endDate) {
+        ContentValues cv = new ContentValues();
+        cv.put(COL_DATE, startDate);
+        cv.put(COL_END_DATE, endDate);
+        cv.put(COL_FREQUENCY, frequency);
+        cv.put(COL_INTERVAL, interval);
+        cv.put(COL_TITLE, title);
+        long id = insertSynced(TABLE_RECURRENCES, CalendarChange.RECURRENCE, cv);
+        recurrenceIndex = null;
+        return id;
+    }
+
+    /** Permanently deletes a recurring appointment with all its occurrences. */
+    public synchronized void deleteRecurrence(long id) {
+        deleteSynced(TABLE_RECURRENCES, CalendarChange.RECURRENCE, id);
+        recurrenceIndex = null;
+    }
+
+    /** Returns all recurring appointments in insertion order. */
+    public List<Recurrence> getRecurrences() {
+        List<Recurrence> list = new ArrayList<>();
+        Cursor c = getReadableDatabase().query(TABLE_RECURRENCES,
+                new String[]{COL_ID, COL_TITLE, COL_FREQUENCY, COL_INTERVAL, COL_DATE, COL_END_DATE},
+                null, null, null, null, COL_ID + " ASC");
+        while (c.moveToNext()) {
+            list.add(new Recurrence(c.getLong(0), c.getString(1), c.getInt(2), c.getInt(3),
+                    IsoDates.toEpochDay(c.getString(4)),
+                    c.isNull(5) ? Recurrence.NO_END : IsoDates.toEpochDay(c.getString(5))));
+        }
+        c.close();
+        return list;
+    }
+
+    /** The series are few and change rarely, so the index is built once and kept. */
+    private synchronized RecurrenceIndex getRecurrenceIndex() {
+        if (recurrenceIndex == null) {
+            recurrenceIndex = new RecurrenceIndex(getRecurrences());
+        }
+        return recurrenceIndex;
+    }
+
+    // ── iCalendar import / export ─────────────────────────────────────────────
+
+    /**
+     * Inserts every event of {@code parser} in one transaction through two
+     * precompiled statements, reading the file as it goes. Events already
+     * present with the same date and title (or the same rule) are left
+     * alone, so importing a file twice adds nothing. Returns the number of
+     * appointments and series added, each also queued for sync; nothing is
+     * added if reading fails.
+     */
+    public synchronized int importIcs(IcsParser parser) throws IOException {
+        SQLiteDatabase db = getWritableDatabase();
+        SQLiteStatement insertAppointment = db.compileStatement(
+                "INSERT INTO " + TABLE_APPOINTMENTS +
+                " (" + COL_DATE + ", " + COL_TITLE + ", " + COL_UID + ")" +
+                " SELECT ?1, ?2, ?6 WHERE NOT EXISTS (SELECT 1 FROM " + TABLE_APPOINTMENTS +
+                " WHERE " + COL_DATE + " = ?1 AND " + COL_TITLE + " = ?2)");
+        SQLiteStatement insertRecurrence = db.compileStatement(
+                "INSERT INTO " + TABLE_RECURRENCES + " (" + COL_DATE + ", " + COL_TITLE + ", " +
+                COL_FREQUENCY + ", " + COL_INTERVAL + ", " + COL_END_DATE + ", " + COL_UID + ")" +
+                " SELECT ?1, ?2, ?3, ?4, ?5, ?6 WHERE NOT EXISTS (SELECT 1 FROM " + TABLE_RECURRENCES +
+                " WHERE " + COL_DATE + " = ?1 AND " + COL_TITLE + " = ?2 AND " +
+                COL_FREQUENCY + " = ?3 AND " + COL_INTERVAL + " = ?4 AND " + COL_END_DATE + " IS ?5)");
+        SQLiteStatement enqueue = db.compileStatement(
+                "INSERT OR REPLACE INTO " + TABLE_OUTBOX + " (" + COL_UID + ", " + COL_OP_KIND + ", " +
+                COL_OP_DELETED + ") VALUES (?, ?, 0)");
+        int added = 0;
+        db.beginTransaction();
+        try {
+            IcsParser.Event event;
+            while ((event = parser.next()) != null) {
+                SQLiteStatement insert;
+                String kind;
+                if (event.isRecurring()) {
+                    insert = insertRecurrence;
+                    kind = CalendarChange.RECURRENCE;
+                    insert.bindLong(3, event.getFrequency());
+                    insert.bindLong(4, event.getInterval());
+                    if (event.getEndDate() != null) {
+                        insert.bindString(5, event.getEndDate());
+                    } else {
+                        insert.bindNull(5);
+                    }
+                } else {
+                    insert = insertAppointment;
+                    kind = CalendarChange.APPOINTMENT;
+                }
+                String uid = newUid();
+                insert.bindString(1, event.getDate());
+                insert.bindString(2, event.getTitle());
+                insert.bindString(6, uid);
+                // -1 when the row already existed
+                if (insert.executeInsert() == -1) continue;
+                enqueue.bindString(1, uid);
+                enqueue.bindString(2, kind);
+                enqueue.executeInsert();
+                added++;
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            insertAppointment.close();
+            insertRecurrence.close();
+            enqueue.close();
+            recurrenceIndex = null;
+        }
+        return added;
+    }
+
+    /** Writes all appointments and series to {@code writer}, row by row from the cursors. */
+    public void exportIcs(IcsWriter writer) throws IOException {
+        SQLiteDatabase db = getReadableDatabase();
+        writer.begin();
+        Cursor c = db.query(TABLE_APPOINTMENTS,
+                new String[]{COL_ID, COL_DATE, COL_TITLE},
+                null, null, null, null, COL_DATE + " ASC, " + COL_TITLE + " ASC");
+        try {
+            while (c.moveToNext()) {
+                writer.writeAppointment(c.getLong(0), c.getString(1), c.getString(2));
+            }
+        } finally {
+            c.close();
+        }
+        c = db.query(TABLE_RECURRENCES,
+                new String[]{COL_ID, COL_DATE, COL_TITLE, COL_FREQUENCY, COL_INTERVAL, COL_END_DATE},
+                null, null, null, null, COL_ID + " ASC");
+        try {
+            while (c.moveToNext()) {
+                writer.writeRecurrence(c.getLong(0), c.getString(1), c.getString(2),
+                        c.getInt(3), c.getInt(4), c.isNull(5) ? null : c.getString(5));
+            }
+        } finally {
+            c.close();
+        }
+        writer.end();
+    }
+
     // ── Standard templates ────────────────────────────────────────────────────
 
-    /** Inserts a new standard template. Returns the new row id, or -1 if duplicate. */
+    /** Inserts a new standard template and queues it for sync. Returns the new row id, or -1 if duplicate. */
     public long addTemplate(String title) {
         ContentValues cv = new ContentValues();
         cv.put(COL_TITLE, title);
-        return getWritableDatabase().insertWithOnConflict(
-                TABLE_TEMPLATES, null, cv, SQLiteDatabase.CONFLICT_IGNORE);
+        return insertSynced(TABLE_TEMPLATES, CalendarChange.TEMPLATE, cv);
     }
 
-    /** Permanently deletes a standard template. */
+    /** Permanently deletes a standard template and queues the deletion for sync. */
     public void deleteTemplate(long id) {
-        getWritableDatabase().delete(TABLE_TEMPLATES,
-                COL_ID + "=?", new String[]{String.valueOf(id)});
+        deleteSynced(TABLE_TEMPLATES, CalendarChange.TEMPLATE, id);
     }
 
     /** Returns all standard templates ordered alphabetically. */
@@ -107,4 +388,302 @@ public class CalendarDatabaseHelper extends SQLiteOpenHelper {
         c.close();
         return list;
     }
+
+    // ── Sync ──────────────────────────────────────────────────────────────────
+    //
+    // Every local change is recorded in the outbox in the same transaction,
+    // replacing an older pending change of the same entry, so a burst of
+    // edits sends each touched row once and untouched rows never.
+    // CalendarApiClient sends the outbox and merges the server's deltas.
+
+    /**
+     * Inserts {@code cv} into {@code table} with a new uid and queues it.
+     * Returns the row id, or -1 when a unique constraint rejected the row.
+     */
+    private long insertSynced(String table, String kind, ContentValues cv) {
+        String uid = newUid();
+        cv.put(COL_UID, uid);
+        SQLiteDatabase db = getWritableDatabase();
+        db.beginTransaction();
+        try {
+            long id = db.insertWithOnConflict(table, null, cv, SQLiteDatabase.CONFLICT_IGNORE);
+            if (id != -1) enqueue(db, uid, kind, false);
+            db.setTransactionSuccessful();
+            return id;
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    private void deleteSynced(String table, String kind, long id) {
+        SQLiteDatabase db = getWritableDatabase();
+        db.beginTransaction();
+        try {
+            String[] idArg = {String.valueOf(id)};
+            String uid = DatabaseUtils.stringForQuery(db,
+                    "SELECT " + COL_UID + " FROM " + table + " WHERE " + COL_ID + "=?", idArg);
+            db.delete(table, COL_ID + "=?", idArg);
+            enqueue(db, uid, kind, true);
+            db.setTransactionSuccessful();
+        } catch (SQLiteDoneException e) {
+            // Already gone, e.g. deleted by a sync meanwhile
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    private static void enqueue(SQLiteDatabase db, String uid, String kind, boolean deleted) {
+        ContentValues cv = new ContentValues();
+        cv.put(COL_UID, uid);
+        cv.put(COL_OP_KIND, kind);
+        cv.put(COL_OP_DELETED, deleted ? 1 : 0);
+        // The unique uid replaces an older pending change of the same entry
+        db.insertWithOnConflict(TABLE_OUTBOX, null, cv, SQLiteDatabase.CONFLICT_REPLACE);
+    }
+
+    private static String newUid() {
+        return UUID.randomUUID().toString();
+    }
+
+    /**
+     * Returns up to {@code limit} pending changes, oldest first, with the
+     * current content of each entry.
+     */
+    public List<CalendarChange> getPendingChanges(int limit) {
+        List<CalendarChange> changes = new ArrayList<>();
+        SQLiteDatabase db = getReadableDatabase();
+        Cursor c = db.query(TABLE_OUTBOX,
+                new String[]{COL_ID, COL_UID, COL_OP_KIND, COL_OP_DELETED},
+                null, null, null, null, COL_ID + " ASC", String.valueOf(limit));
+        try {
+            while (c.moveToNext()) {
+                long opId = c.getLong(0);
+                String uid = c.getString(1);
+                String kind = c.getString(2);
+                CalendarChange change = c.getInt(3) != 0 ? null : readEntry(db, opId, uid, kind);
+                changes.add(change != null ? change : CalendarChange.deletion(opId, uid, kind));
+            }
+        } finally {
+            c.close();
+        }
+        return changes;
+    }
+
+    /** The entry {@code uid} as a put, or null if it no longer exists. */
+    private static CalendarChange readEntry(SQLiteDatabase db, long opId, String uid, String kind) {
+        String[] uidArg = {uid};
+        Cursor c;
+        switch (kind) {
+            case CalendarChange.APPOINTMENT:
+                c = db.query(TABLE_APPOINTMENTS, new String[]{COL_DATE, COL_TITLE},
+                        COL_UID + "=?", uidArg, null, null, null);
+                try {
+                    return c.moveToFirst() ? new CalendarChange(opId, uid, kind, false,
+                            c.getString(0), null, 0, 1, c.getString(1)) : null;
+                } finally {
+                    c.close();
+                }
+            case CalendarChange.RECURRENCE:
+                c = db.query(TABLE_RECURRENCES,
+                        new String[]{COL_DATE, COL_END_DATE, COL_FREQUENCY, COL_INTERVAL, COL_TITLE},
+                        COL_UID + "=?", uidArg, null, null, null);
+                try {
+                    return c.moveToFirst() ? new CalendarChange(opId, uid, kind, false,
+                            c.getString(0), c.isNull(1) ? null : c.getString(1),
+                            c.getInt(2), c.getInt(3), c.getString(4)) : null;
+                } finally {
+                    c.close();
+                }
+            default:
+                c = db.query(TABLE_TEMPLATES, new String[]{COL_TITLE},
+                        COL_UID + "=?", uidArg, null, null, null);
+                try {
+                    return c.moveToFirst() ? new CalendarChange(opId, uid, kind, false,
+                            null, null, 0, 1, c.getString(0)) : null;
+                } finally {
+                    c.close();
+                }
+        }
+    }
+
+    /**
+     * Removes sent changes from the outbox. A change made again while it
+     * was being sent has a new outbox id and stays queued.
+     */
+    public void completeChanges(List<CalendarChange> sent) {
+        if (sent.isEmpty()) return;
+        SQLiteDatabase db = getWritableDatabase();
+        db.beginTransaction();
+        try {
+            for (CalendarChange change : sent) {
+                db.delete(TABLE_OUTBOX, COL_ID + "=?",
+                        new String[]{String.valueOf(change.getOutboxId())});
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * Returns the server revision the calendar is up to date with, or 0 when
+     * nothing has been synced yet from {@code serverUrl}.
+     */
+    public long getSyncRevision(String serverUrl) {
+        if (!serverUrl.equals(getSyncState(STATE_SERVER_URL))) return 0;
+        String rev = getSyncState(STATE_REVISION);
+        try {
+            return rev != null ? Long.parseLong(rev) : 0;
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Merges a delta received from {@code serverUrl} in a single transaction
+     * and records its revision. Returns whether the calendar may have changed.
+     *
+     * Entries with a change still in the outbox keep their local state; the
+     * server catches up once it has been sent. A full snapshot drops synced
+     * entries the server no longer has. The first sync with a server queues
+     * every local entry, so what this device had before is merged into the
+     * shared calendar rather than dropped. A delta that does not go beyond
+     * the stored revision is ignored.
+     */
+    public synchronized boolean applySyncDelta(String serverUrl, CalendarDelta delta) {
+        SQLiteDatabase db = getWritableDatabase();
+        db.beginTransaction();
+        try {
+            boolean serverChanged = !serverUrl.equals(getSyncState(STATE_SERVER_URL));
+            if (!serverChanged && !delta.isFull()
+                    && delta.getRevision() <= getSyncRevision(serverUrl)) {
+                return false;
+            }
+            if (serverChanged) enqueueAll(db);
+            Set<String> pendingUids = getPendingUids(db);
+            if (delta.isFull()) {
+                for (String table : new String[]{TABLE_APPOINTMENTS, TABLE_RECURRENCES, TABLE_TEMPLATES}) {
+                    db.delete(table, COL_UID + " NOT IN (SELECT " + COL_UID + " FROM " +
+                            TABLE_OUTBOX + ")", null);
+                }
+            }
+            for (CalendarChange change : delta.getChanged()) {
+                if (!pendingUids.contains(change.getUid())) upsertRemote(db, change);
+            }
+            for (String uid : delta.getDeleted()) {
+                if (pendingUids.contains(uid)) continue;
+                for (String table : new String[]{TABLE_APPOINTMENTS, TABLE_RECURRENCES, TABLE_TEMPLATES}) {
+                    db.delete(table, COL_UID + "=?", new String[]{uid});
+                }
+            }
+            putSyncState(db, STATE_SERVER_URL, serverUrl);
+            putSyncState(db, STATE_REVISION, String.valueOf(delta.getRevision()));
+            db.setTransactionSuccessful();
+            return delta.isFull() || !delta.getChanged().isEmpty() || !delta.getDeleted().isEmpty();
+        } finally {
+            db.endTransaction();
+            recurrenceIndex = null;
+        }
+    }
+
+    private static void upsertRemote(SQLiteDatabase db, CalendarChange change) {
+        String table;
+        ContentValues cv = new ContentValues();
+        cv.put(COL_TITLE, change.getTitle());
+        switch (change.getKind()) {
+            case CalendarChange.APPOINTMENT:
+                table = TABLE_APPOINTMENTS;
+                cv.put(COL_DATE, change.getDate());
+                break;
+            case CalendarChange.RECURRENCE:
+                table = TABLE_RECURRENCES;
+                cv.put(COL_DATE, change.getDate());
+                cv.put(COL_END_DATE, change.getEndDate());
+                cv.put(COL_FREQUENCY, change.getFrequency());
+                cv.put(COL_INTERVAL, change.getInterval());
+                break;
+            case CalendarChange.TEMPLATE:
+                table = TABLE_TEMPLATES;
+                break;
+            default:
+                // Written by a newer app version
+                return;
+        }
+        if (db.update(table, cv, COL_UID + "=?", new String[]{change.getUid()}) == 0) {
+            cv.put(COL_UID, change.getUid());
+            long id = db.insertWithOnConflict(table, null, cv, SQLiteDatabase.CONFLICT_IGNORE);
+            if (id == -1 && table.equals(TABLE_TEMPLATES)) mergeTemplate(db, change);
+        }
+    }
+
+    /**
+     * Resolves a remote template whose title already exists here under
+     * another uid, e.g. the default templates every device creates. All
+     * devices keep the copy with the smaller uid and queue a deletion of the
+     * other, so the server ends up with one entry and deleting the template
+     * later removes it everywhere.
+     */
+    private static void mergeTemplate(SQLiteDatabase db, CalendarChange change) {
+        String localUid;
+        try {
+            localUid = DatabaseUtils.stringForQuery(db, "SELECT " + COL_UID + " FROM " +
+                    TABLE_TEMPLATES + " WHERE " + COL_TITLE + "=?", new String[]{change.getTitle()});
+        } catch (SQLiteDoneException e) {
+            return;
+        }
+        String remoteUid = change.getUid();
+        if (remoteUid.compareTo(localUid) < 0) {
+            ContentValues cv = new ContentValues();
+            cv.put(COL_UID, remoteUid);
+            db.update(TABLE_TEMPLATES, cv, COL_UID + "=?", new String[]{localUid});
+            // Replaces a pending put of the local copy
+            enqueue(db, localUid, CalendarChange.TEMPLATE, true);
+        } else {
+            enqueue(db, remoteUid, CalendarChange.TEMPLATE, true);
+        }
+    }
+
+    /** Queues every entry not already queued, for the first sync with a server. */
+    private static void enqueueAll(SQLiteDatabase db) {
+        String[][] tables = {
+                {TABLE_APPOINTMENTS, CalendarChange.APPOINTMENT},
+                {TABLE_RECURRENCES, CalendarChange.RECURRENCE},
+                {TABLE_TEMPLATES, CalendarChange.TEMPLATE}};
+        for (String[] t : tables) {
+            db.execSQL("INSERT OR IGNORE INTO " + TABLE_OUTBOX + " (" + COL_UID + ", " +
+                    COL_OP_KIND + ", " + COL_OP_DELETED + ") SELECT " + COL_UID + ", ?, 0 FROM " +
+                    t[0], new Object[]{t[1]});
+        }
+    }
+
+    private static Set<String> getPendingUids(SQLiteDatabase db) {
+        Set<String> uids = new HashSet<>();
+        Cursor c = db.query(TABLE_OUTBOX, new String[]{COL_UID}, null, null, null, null, null);
+        try {
+            while (c.moveToNext()) {
+                uids.add(c.getString(0));
+            }
+        } finally {
+            c.close();
+        }
+        return uids;
+    }
+
+    private String getSyncState(String key) {
+        Cursor c = getReadableDatabase().query(TABLE_SYNC_STATE,
+                new String[]{COL_STATE_VALUE}, COL_STATE_KEY + "=?", new String[]{key},
+                null, null, null);
+        try {
+            return c.moveToFirst() ? c.getString(0) : null;
+        } finally {
+            c.close();
+        }
+    }
+
+    private static void putSyncState(SQLiteDatabase db, String key, String value) {
+        ContentValues cv = new ContentValues();
+        cv.put(COL_STATE_KEY, key);
+        cv.put(COL_STATE_VALUE, value);
+        db.insertWithOnConflict(TABLE_SYNC_STATE, null, cv, SQLiteDatabase.CONFLICT_REPLACE);
+    }
 }
@@ -0,0 +1,33 @@
+package com.kitchenboard.calendar;
+
+import java.util.List;
+
+/**
+ * Calendar changes reported by the sync backend since a given revision
+ * ({@code ?action=cal_list&since=rev}).
+ *
+ * When {@link #isFull()} is true the delta holds every entry on the server
+ * and replaces whatever the client had synced before.
+ */
+public class CalendarDelta {
+    private final long revision;
+    private final boolean full;
+    private final List<CalendarChange> changed;
+    private final List<String> deleted;
+
+    public CalendarDelta(long revision, boolean full, List<CalendarChange> changed,
+                         List<String> deleted) {
+        this.revision = revision;
+        this.full = full;
+        this.changed = changed;
+        this.deleted = deleted;
+    }
+
+    /** Server revision this delta brings the client up to. */
+    public long getRevision() { return revision; }
+    public boolean isFull() { return full; }
+    /** Entries that were added or modified. */
+    public List<CalendarChange> getChanged() { return changed; }
+    /** Uids of deleted entries. */
+    public List<String> getDeleted() { return deleted; }
+}
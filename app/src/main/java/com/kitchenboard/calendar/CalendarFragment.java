@@ -1,17 +1,24 @@
 package com.kitchenboard.calendar;
 
 import android.app.AlertDialog;
+import android.content.ContentResolver;
 import android.content.DialogInterface;
+import android.net.Uri;
 import android.os.Bundle;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
+import android.widget.ArrayAdapter;
 import android.widget.CalendarView;
 import android.widget.EditText;
 import android.widget.ImageButton;
 import android.widget.LinearLayout;
+import android.widget.Spinner;
 import android.widget.TextView;
+import android.widget.Toast;
 
+import androidx.activity.result.ActivityResultLauncher;
+import androidx.activity.result.contract.ActivityResultContracts;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.fragment.app.Fragment;
@@ -20,12 +27,30 @@ import androidx.recyclerview.widget.RecyclerView;
 
 import com.google.android.material.floatingactionbutton.FloatingActionButton;
 import com.kitchenboard.R;
-
+import com.kitchenboard.shopping.ShoppingFragment;
+import com.kitchenboard.task.RequestRegistry;
+import com.kitchenboard.task.TaskGroup;
+import com.kitchenboard.task.TaskScheduler;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
 import java.text.SimpleDateFormat;
 import java.util.Calendar;
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
 
 public class CalendarFragment extends Fragment {
 
@@ -33,15 +58,59 @@ public class CalendarFragment extends Fragment {
             new SimpleDateFormat("yyyy-MM-dd", Locale.US);
     private static final SimpleDateFormat LABEL_FMT =
             new SimpleDateFormat("EEEE, dd. MMMM yyyy", Locale.GERMANY);
+    private static final SimpleDateFormat MONTH_FMT =
+            new SimpleDateFormat("MMMM", Locale.GERMANY);
+    private static final SimpleDateFormat AGENDA_FMT =
+            new SimpleDateFormat("EE dd.MM.", Locale.GERMANY);
+
+    /** Repeat choices of the add dialog; index 0 adds a single appointment. */
+    private static final String[] REPEAT_LABELS = {
+            "Einmalig", "Wöchentlich", "Alle 2 Wochen", "Monatlich", "Jährlich"};
+    private static final int[] REPEAT_FREQUENCY = {
+            -1, Recurrence.WEEKLY, Recurrence.WEEKLY, Recurrence.MONTHLY, Recurrence.YEARLY};
+    private static final int[] REPEAT_INTERVAL = {0, 1, 2, 1, 1};
+
+    private static final String REQUEST_IMPORT = "import";
+    private static final String REQUEST_EXPORT = "export";
+    private static final String REQUEST_TEMPLATES = "templates";
+    private static final String REQUEST_TEMPLATE_LIST = "template_list";
+    private static final String[] ICS_MIME_TYPES = {
+            "text/calendar", "text/plain", "application/octet-stream"};
 
     private CalendarDatabaseHelper db;
+    /** All appointment reads and writes, one at a time and off the main thread. */
+    private final Executor dbExecutor = TaskScheduler.disk().newSerialExecutor();
+    private TaskGroup tasks;
+    private RequestRegistry requests;
+    private AppointmentMonthCache monthCache;
+    /** The next days for the agenda, patched on every add and delete. */
+    private AgendaCache agenda;
+    /** Shares the calendar through the shopping list's sync server, when one is set. */
+    private CalendarSyncManager syncManager;
     private AppointmentAdapter adapter;
     private TextView tvSelectedDate;
     private TextView tvEmpty;
+    private TextView tvBusyDays;
+    private TextView tvAgenda;
 
     /** Currently selected date in YYYY-MM-DD format. */
     private String selectedDate;
 
+    private ActivityResultLauncher<String[]> importLauncher;
+    private ActivityResultLauncher<String> exportLauncher;
+
+    @Override
+    public void onCreate(@Nullable Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        importLauncher = registerForActivityResult(new ActivityResultContracts.OpenDocument(), uri -> {
+            if (uri != null) importCalendar(uri);
+        });
+        exportLauncher = registerForActivityResult(
+                new ActivityResultContracts.CreateDocument("text/calendar"), uri -> {
+                    if (uri != null) exportCalendar(uri);
+                });
+    }
+
     @Nullable
     @Override
     public View onCreateView(@NonNull LayoutInflater inflater,
@@ -54,11 +123,37 @@ public class CalendarFragment extends Fragment {
     public void onViewCreated(@NonNull View view, @Nullable Bundle savedInstanceState) {
         super.onViewCreated(view, savedInstanceState);
 
-        db = new CalendarDatabaseHelper(requireContext());
+        db = CalendarDatabaseHelper.get(requireContext());
+        tasks = new TaskGroup(getViewLifecycleOwner());
+        requests = new RequestRegistry(tasks);
+        monthCache = new AppointmentMonthCache(db, dbExecutor, requests,
+                new AppointmentMonthCache.Listener() {
+                    @Override
+                    public void onMonthLoaded(String month) {
+                        if (month.equals(AppointmentMonthCache.monthOf(selectedDate))) {
+                            refreshAppointments();
+                        }
+                    }
+                });
+        agenda = new AgendaCache(db, dbExecutor, requests, new AgendaCache.Listener() {
+            @Override
+            public void onAgendaChanged() {
+                renderAgenda();
+            }
+        });
+        syncManager = new CalendarSyncManager(db, new CalendarSyncManager.Listener() {
+            @Override
+            public void onCalendarChanged() {
+                monthCache.reloadAll();
+                agenda.reload();
+            }
+        });
         adapter = new AppointmentAdapter();
 
         tvSelectedDate = view.findViewById(R.id.tv_selected_date);
         tvEmpty = view.findViewById(R.id.tv_appointments_empty);
+        tvBusyDays = view.findViewById(R.id.tv_busy_days);
+        tvAgenda = view.findViewById(R.id.tv_agenda);
 
         RecyclerView rv = view.findViewById(R.id.rv_appointments);
         rv.setLayoutManager(new LinearLayoutManager(requireContext()));
@@ -97,6 +192,14 @@ public class CalendarFragment extends Fragment {
             }
         });
 
+        ImageButton btnFiles = view.findViewById(R.id.btn_calendar_files);
+        btnFiles.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                showImportExportDialog();
+            }
+        });
+
         adapter.setOnDeleteListener(new AppointmentAdapter.OnDeleteListener() {
             @Override
             public void onDelete(Appointment appointment) {
@@ -118,17 +221,151 @@ public class CalendarFragment extends Fragment {
         }
     }
 
+    /**
+     * Shows the selected day from the month cache and preloads the months
+     * around it; a month still loading is shown once it arrives.
+     */
     private void refreshAppointments() {
-        List<Appointment> list = db.getAppointmentsForDate(selectedDate);
+        monthCache.preload(selectedDate);
+        List<Appointment> list = monthCache.getDay(selectedDate);
+        updateBusyDays();
+        if (list == null) return;
         adapter.setItems(list);
         tvEmpty.setVisibility(list.isEmpty() ? View.VISIBLE : View.GONE);
     }
 
+    /** Lists the days of the selected month that have appointments. */
+    private void updateBusyDays() {
+        List<Integer> busy = monthCache.getBusyDays(AppointmentMonthCache.monthOf(selectedDate));
+        if (busy == null) {
+            tvBusyDays.setText("");
+            return;
+        }
+        String month;
+        try {
+            month = MONTH_FMT.format(DATE_FMT.parse(selectedDate));
+        } catch (Exception e) {
+            month = AppointmentMonthCache.monthOf(selectedDate);
+        }
+        if (busy.isEmpty()) {
+            tvBusyDays.setText(getString(R.string.calendar_busy_days_none, month));
+            return;
+        }
+        StringBuilder days = new StringBuilder();
+        for (int day : busy) {
+            if (days.length() > 0) days.append(", ");
+            days.append(day).append('.');
+        }
+        tvBusyDays.setText(getString(R.string.calendar_busy_days, month, days));
+    }
+
+    /**
+     * Draws the agenda from the agenda cache, one line per day with
+     * appointments; no query involved.
+     */
+    private void renderAgenda() {
+        SortedMap<String, List<Appointment>> days = agenda.getDays();
+        if (days == null) return;
+        if (days.isEmpty()) {
+            tvAgenda.setText(R.string.calendar_agenda_empty);
+            return;
+        }
+        String today = DATE_FMT.format(new Date());
+        String tomorrow = IsoDates.toIso(IsoDates.toEpochDay(today) + 1);
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, List<Appointment>> day : days.entrySet()) {
+            if (sb.length() > 0) sb.append('\n');
+            String date = day.getKey();
+            if (date.equals(today)) {
+                sb.append(getString(R.string.calendar_agenda_today));
+            } else if (date.equals(tomorrow)) {
+                sb.append(getString(R.string.calendar_agenda_tomorrow));
+            } else {
+                try {
+                    sb.append(AGENDA_FMT.format(DATE_FMT.parse(date)));
+                } catch (Exception e) {
+                    sb.append(date);
+                }
+            }
+            sb.append(": ");
+            List<Appointment> list = day.getValue();
+            for (int i = 0; i < list.size(); i++) {
+                if (i > 0) sb.append(", ");
+                Appointment a = list.get(i);
+                sb.append(a.isRecurring() ? "↻ " + a.getTitle() : a.getTitle());
+            }
+        }
+        tvAgenda.setText(sb);
+    }
+
+    /**
+     * Adds an appointment in the background, reloads its month afterwards
+     * and patches it into the agenda once it has its id.
+     */
+    private void addAppointment(final String date, final String title) {
+        dbExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final long id = db.addAppointment(date, title);
+                tasks.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        agenda.onAdded(new Appointment(id, date, title));
+                    }
+                });
+            }
+        });
+        monthCache.reload(date);
+        syncManager.onLocalChange();
+    }
+
+    /**
+     * Adds an appointment, or a series starting on {@code date} when a
+     * repeat choice other than "Einmalig" is selected.
+     */
+    private void addAppointment(final String date, final String title, int repeat) {
+        if (repeat <= 0) {
+            addAppointment(date, title);
+            return;
+        }
+        final int frequency = REPEAT_FREQUENCY[repeat];
+        final int interval = REPEAT_INTERVAL[repeat];
+        dbExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                db.addRecurrence(date, title, frequency, interval, null);
+            }
+        });
+        monthCache.reloadAll();
+        agenda.reload();
+        syncManager.onLocalChange();
+    }
+
     // ── Add appointment dialog ────────────────────────────────────────────────
 
+    /** Reads the templates on the database executor, then shows the dialog. */
     private void showAddAppointmentDialog() {
-        final List<Template> templates = db.getTemplates();
+        // A second tap while the templates load must not open a second dialog
+        if (requests.isInFlight(REQUEST_TEMPLATES)) return;
+        requests.request(REQUEST_TEMPLATES, null, dbExecutor, new Callable<List<Template>>() {
+            @Override
+            public List<Template> call() {
+                return db.getTemplates();
+            }
+        }, new RequestRegistry.Callback<List<Template>>() {
+            @Override
+            public void onResult(List<Template> templates) {
+                showAddAppointmentDialog(templates);
+            }
+
+            @Override
+            public void onError(Exception e) {
+                showAddAppointmentDialog(Collections.<Template>emptyList());
+            }
+        });
+    }
 
+    private void showAddAppointmentDialog(List<Template> templates) {
         View dialogView = LayoutInflater.from(requireContext())
                 .inflate(R.layout.dialog_add_appointment, null);
 
@@ -138,6 +375,12 @@ public class CalendarFragment extends Fragment {
         final LinearLayout llTemplates = dialogView.findViewById(R.id.ll_templates);
         final EditText etCustom = dialogView.findViewById(R.id.et_custom_title);
 
+        final Spinner spinnerRepeat = dialogView.findViewById(R.id.spinner_repeat);
+        ArrayAdapter<String> repeatAdapter = new ArrayAdapter<>(requireContext(),
+                android.R.layout.simple_spinner_item, REPEAT_LABELS);
+        repeatAdapter.setDropDownViewResource(android.R.layout.simple_spinner_dropdown_item);
+        spinnerRepeat.setAdapter(repeatAdapter);
+
         final AlertDialog dialog = new AlertDialog.Builder(requireContext())
                 .setTitle(R.string.calendar_add_appointment)
                 .setView(dialogView)
@@ -146,8 +389,8 @@ public class CalendarFragment extends Fragment {
                     public void onClick(DialogInterface d, int which) {
                         String custom = etCustom.getText().toString().trim();
                         if (!custom.isEmpty()) {
-                            db.addAppointment(selectedDate, custom);
-                            refreshAppointments();
+                            addAppointment(selectedDate, custom,
+                                    spinnerRepeat.getSelectedItemPosition());
                         }
                     }
                 })
@@ -167,8 +410,8 @@ public class CalendarFragment extends Fragment {
             btn.setOnClickListener(new View.OnClickListener() {
                 @Override
                 public void onClick(View v) {
-                    db.addAppointment(selectedDate, t.getTitle());
-                    refreshAppointments();
+                    addAppointment(selectedDate, t.getTitle(),
+                            spinnerRepeat.getSelectedItemPosition());
                     dialog.dismiss();
                 }
             });
@@ -180,22 +423,132 @@ public class CalendarFragment extends Fragment {
 
     // ── Delete appointment ────────────────────────────────────────────────────
 
+    /** Deleting an occurrence of a series deletes the whole series. */
     private void confirmDeleteAppointment(final Appointment appointment) {
+        final boolean series = appointment.isRecurring();
         new AlertDialog.Builder(requireContext())
                 .setTitle(R.string.calendar_delete_appointment)
-                .setMessage(getString(R.string.calendar_delete_appointment_confirm,
+                .setMessage(getString(series
+                                ? R.string.calendar_delete_series_confirm
+                                : R.string.calendar_delete_appointment_confirm,
                         appointment.getTitle()))
                 .setPositiveButton(R.string.delete, new DialogInterface.OnClickListener() {
                     @Override
                     public void onClick(DialogInterface dialog, int which) {
-                        db.deleteAppointment(appointment.getId());
-                        refreshAppointments();
+                        dbExecutor.execute(new Runnable() {
+                            @Override
+                            public void run() {
+                                if (series) {
+                                    db.deleteRecurrence(appointment.getRecurrenceId());
+                                } else {
+                                    db.deleteAppointment(appointment.getId());
+                                }
+                            }
+                        });
+                        if (series) {
+                            monthCache.reloadAll();
+                            agenda.reload();
+                        } else {
+                            monthCache.reload(appointment.getDate());
+                            agenda.onDeleted(appointment);
+                        }
+                        syncManager.onLocalChange();
+                    }
+                })
+                .setNegativeButton(R.string.cancel, null)
+                .show();
+    }
+
+    // ── iCalendar import / export ─────────────────────────────────────────────
+
+    private void showImportExportDialog() {
+        String[] choices = {getString(R.string.calendar_import), getString(R.string.calendar_export)};
+        new AlertDialog.Builder(requireContext())
+                .setTitle(R.string.calendar_import_export)
+                .setItems(choices, new DialogInterface.OnClickListener() {
+                    @Override
+                    public void onClick(DialogInterface dialog, int which) {
+                        if (which == 0) {
+                            importLauncher.launch(ICS_MIME_TYPES);
+                        } else {
+                            exportLauncher.launch("kitchenboard.ics");
+                        }
                     }
                 })
                 .setNegativeButton(R.string.cancel, null)
                 .show();
     }
 
+    /**
+     * Streams the chosen file into the database on the database executor
+     * and reloads the cached months afterwards.
+     */
+    private void importCalendar(final Uri uri) {
+        final ContentResolver resolver = requireContext().getContentResolver();
+        requests.request(REQUEST_IMPORT, uri, dbExecutor, new Callable<int[]>() {
+            @Override
+            public int[] call() throws IOException {
+                InputStream in = resolver.openInputStream(uri);
+                if (in == null) throw new FileNotFoundException(uri.toString());
+                try {
+                    IcsParser parser = new IcsParser(new BufferedReader(
+                            new InputStreamReader(in, StandardCharsets.UTF_8)));
+                    int added = db.importIcs(parser);
+                    return new int[]{added, parser.getSkippedCount()};
+                } finally {
+                    in.close();
+                }
+            }
+        }, new RequestRegistry.Callback<int[]>() {
+            @Override
+            public void onResult(int[] counts) {
+                Toast.makeText(requireContext(),
+                        getString(R.string.calendar_import_done, counts[0], counts[1]),
+                        Toast.LENGTH_LONG).show();
+                monthCache.reloadAll();
+                agenda.reload();
+                syncManager.onLocalChange();
+            }
+
+            @Override
+            public void onError(Exception e) {
+                Toast.makeText(requireContext(), R.string.calendar_import_failed,
+                        Toast.LENGTH_SHORT).show();
+            }
+        });
+    }
+
+    /** Streams all appointments and series into the chosen file. */
+    private void exportCalendar(final Uri uri) {
+        final ContentResolver resolver = requireContext().getContentResolver();
+        requests.request(REQUEST_EXPORT, uri, dbExecutor, new Callable<Void>() {
+            @Override
+            public Void call() throws IOException {
+                OutputStream out = resolver.openOutputStream(uri);
+                if (out == null) throw new FileNotFoundException(uri.toString());
+                try {
+                    db.exportIcs(new IcsWriter(new BufferedWriter(
+                            new OutputStreamWriter(out, StandardCharsets.UTF_8))));
+                } finally {
+                    out.close();
+                }
+                return null;
+            }
+        }, new RequestRegistry.Callback<Void>() {
+            @Override
+            public void onResult(Void result) {
+                Toast.makeText(requireContext(), R.string.calendar_export_done,
+                        Toast.LENGTH_SHORT).show();
+            }
+
+            @Override
+            public void onError(Exception e) {
+                Toast.makeText(requireContext(), R.string.calendar_export_failed,
+                        Toast.LENGTH_SHORT).show();
+            }
+        });
+    }
+
     // ── Manage templates dialog ───────────────────────────────────────────────
 
     private void showManageTemplatesDialog() {
@@ -222,7 +575,7 @@ public class CalendarFragment extends Fragment {
                             public void onClick(View v) {
                                 String name = etNew.getText().toString().trim();
                                 if (!name.isEmpty()) {
-                                    db.addTemplate(name);
+                                    addTemplate(name);
                                     etNew.setText("");
                                     rebuildTemplateList(llList);
                                 }
@@ -235,10 +588,53 @@ public class CalendarFragment extends Fragment {
         dialog.show();
     }
 
-    /** Rebuilds the template row list inside the manage-templates dialog. */
+    private void addTemplate(final String title) {
+        dbExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                db.addTemplate(title);
+            }
+        });
+        syncManager.onLocalChange();
+    }
+
+    private void deleteTemplate(final long id) {
+        dbExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                db.deleteTemplate(id);
+            }
+        });
+        syncManager.onLocalChange();
+    }
+
+    /**
+     * Rebuilds the template row list inside the manage-templates dialog once
+     * the templates are read. Queue it after a write so the list shows it.
+     */
     private void rebuildTemplateList(final LinearLayout container) {
+        // A read still running may have started before the last write
+        requests.cancel(REQUEST_TEMPLATE_LIST);
+        requests.request(REQUEST_TEMPLATE_LIST, null, dbExecutor, new Callable<List<Template>>() {
+            @Override
+            public List<Template> call() {
+                return db.getTemplates();
+            }
+        }, new RequestRegistry.Callback<List<Template>>() {
+            @Override
+            public void onResult(List<Template> templates) {
+                fillTemplateList(container, templates);
+            }
+
+            @Override
+            public void onError(Exception e) {
+                // The list keeps its last contents
+            }
+        });
+    }
+
+    private void fillTemplateList(final LinearLayout container, List<Template> templates) {
         container.removeAllViews();
-        List<Template> templates = db.getTemplates();
         for (final Template t : templates) {
             View row = LayoutInflater.from(requireContext())
                     .inflate(R.layout.item_template_row, container, false);
@@ -247,7 +643,7 @@ public class CalendarFragment extends Fragment {
                     .setOnClickListener(new View.OnClickListener() {
                         @Override
                         public void onClick(View v) {
-                            db.deleteTemplate(t.getId());
+                            deleteTemplate(t.getId());
                             rebuildTemplateList(container);
                         }
                     });
@@ -255,9 +651,40 @@ public class CalendarFragment extends Fragment {
         }
     }
 
+    // ── Sync ──────────────────────────────────────────────────────────────────
+
+    /** Points the sync manager at the shopping list's server; keeps the client if unchanged. */
+    private void initApiClient() {
+        String url = ShoppingFragment.loadServerUrl(requireContext());
+        CalendarApiClient current = syncManager.getApiClient();
+        if (url == null || url.isEmpty()) {
+            if (current != null) syncManager.setApiClient(null);
+        } else if (current == null || !current.hasBaseUrl(url)) {
+            syncManager.setApiClient(new CalendarApiClient(url));
+        }
+    }
+
+    @Override
+    public void onResume() {
+        super.onResume();
+        // The server may have been set up on the shopping list meanwhile
+        initApiClient();
+        syncManager.refresh();
+        // Also rolls the agenda over a midnight missed while paused
+        agenda.start();
+    }
+
+    @Override
+    public void onPause() {
+        super.onPause();
+        syncManager.pause();
+        agenda.stop();
+    }
+
     @Override
     public void onDestroyView() {
         super.onDestroyView();
-        if (db != null) db.close();
+        // The database itself stays open; it is shared with the sync
+        if (syncManager != null) syncManager.release();
     }
 }
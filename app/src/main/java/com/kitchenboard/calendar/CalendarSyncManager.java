@@ -0,0 +1,130 @@
+package com.kitchenboard.calendar;
+
+import android.os.Handler;
+import android.os.Looper;
+
+/**
+ * Keeps the calendar in step with the sync server while the calendar is on
+ * screen. Used by CalendarFragment.
+ *
+ * Local changes are written to the database (and its outbox) by the caller;
+ * {@link #onLocalChange()} then schedules a sync after a short pause, so a
+ * burst of edits goes out as one batch. While idle, the server is asked for
+ * changes from other devices every {@link #POLL_INTERVAL_MS}; failures are
+ * retried with exponential backoff. Without a server nothing happens.
+ *
+ * All methods must be called on the main thread; the listener is invoked there too.
+ */
+public class CalendarSyncManager {
+
+    public interface Listener {
+        /** The server changed the calendar; cached data must be read again. */
+        void onCalendarChanged();
+    }
+
+    private static final long INITIAL_RETRY_DELAY_MS = 2_000;
+    private static final long MAX_RETRY_DELAY_MS = 5 * 60_000;
+    /** Quiet period after a local change before the outbox is sent. */
+    private static final long FLUSH_DELAY_MS = 1_500;
+    /** How often other devices' changes are fetched while nothing else happens. */
+    private static final long POLL_INTERVAL_MS = 60_000;
+
+    private final CalendarDatabaseHelper db;
+    private final Listener listener;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    /** Null when sync is disabled. */
+    private CalendarApiClient apiClient;
+
+    private boolean syncRunning;
+    /** Another sync was requested while one was running. */
+    private boolean syncRequested;
+    private long retryDelayMs = INITIAL_RETRY_DELAY_MS;
+    private boolean released;
+    /** Not on screen: no polling until the next {@link #refresh()}. */
+    private boolean paused;
+
+    private final Runnable syncRunnable = new Runnable() {
+        @Override
+        public void run() {
+            refresh();
+        }
+    };
+
+    public CalendarSyncManager(CalendarDatabaseHelper db, Listener listener) {
+        this.db = db;
+        this.listener = listener;
+    }
+
+    /** Switches to a different sync server, or disables sync when {@code client} is null. */
+    public void setApiClient(CalendarApiClient client) {
+        apiClient = client;
+        mainHandler.removeCallbacks(syncRunnable);
+        retryDelayMs = INITIAL_RETRY_DELAY_MS;
+    }
+
+    /** The client in use, or null when sync is off. */
+    public CalendarApiClient getApiClient() {
+        return apiClient;
+    }
+
+    /** A change was written locally; (re)starts the quiet period before it is sent. */
+    public void onLocalChange() {
+        if (apiClient == null || released) return;
+        mainHandler.removeCallbacks(syncRunnable);
+        mainHandler.postDelayed(syncRunnable, FLUSH_DELAY_MS);
+    }
+
+    /**
+     * Sends pending changes and pulls the server's. Calls made while a sync
+     * is running are coalesced into one follow-up sync.
+     */
+    public void refresh() {
+        if (released || apiClient == null) return;
+        paused = false;
+        if (syncRunning) {
+            syncRequested = true;
+            return;
+        }
+        syncRunning = true;
+        mainHandler.removeCallbacks(syncRunnable);
+
+        apiClient.sync(db, new CalendarApiClient.Callback<Boolean>() {
+            @Override
+            public void onSuccess(Boolean changed) {
+                retryDelayMs = INITIAL_RETRY_DELAY_MS;
+                finishSync(true, changed);
+            }
+
+            @Override
+            public void onError(String message) {
+                finishSync(false, false);
+            }
+        });
+    }
+
+    private void finishSync(boolean ok, boolean changed) {
+        syncRunning = false;
+        if (released) return;
+        if (changed) listener.onCalendarChanged();
+        if (syncRequested) {
+            syncRequested = false;
+            refresh();
+        } else if (apiClient != null && !paused) {
+            mainHandler.postDelayed(syncRunnable, ok ? POLL_INTERVAL_MS : retryDelayMs);
+            if (!ok) retryDelayMs = Math.min(retryDelayMs * 2, MAX_RETRY_DELAY_MS);
+        }
+    }
+
+    /** Stops polling while the calendar is not visible; {@link #refresh()} resumes it. */
+    public void pause() {
+        paused = true;
+        mainHandler.removeCallbacks(syncRunnable);
+    }
+
+    /** Stops polling and retries; unsent changes stay in the outbox for the next session. */
+    public void release() {
+        released = true;
+        mainHandler.removeCallbacks(syncRunnable);
+    }
+}
@@ -0,0 +1,314 @@
+package com.kitchenboard.calendar;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * Pull parser for iCalendar (RFC 5545) files that reads one VEVENT at a
+ * time, so memory stays flat however many events a file holds.
+ *
+ * Folded lines are unfolded on the fly with one line of lookahead. Only
+ * what the calendar can store is read: the start date (times are dropped;
+ * UTC times are moved to the local date first), the summary and a simple
+ * RRULE (FREQ, INTERVAL, UNTIL or COUNT). Events without date or summary,
+ * series with BY… parts other than those repeating the start date, and
+ * series with EXDATE (cancelled occurrences the calendar cannot leave out)
+ * are skipped and counted in {@link #getSkippedCount()}.
+ */
+public class IcsParser {
+
+    /** One importable event; {@link #getFrequency()} is -1 for a single appointment. */
+    public static final class Event {
+        private final String date;
+        private final String title;
+        private final int frequency;
+        private final int interval;
+        private final String endDate;
+
+        Event(String date, String title, int frequency, int interval, String endDate) {
+            this.date = date;
+            this.title = title;
+            this.frequency = frequency;
+            this.interval = interval;
+            this.endDate = endDate;
+        }
+
+        public String getDate()    { return date; }
+        public String getTitle()   { return title; }
+        public int getFrequency()  { return frequency; }
+        public int getInterval()   { return interval; }
+        /** Last day of the series (YYYY-MM-DD), or null if open-ended. */
+        public String getEndDate() { return endDate; }
+        public boolean isRecurring() { return frequency >= 0; }
+    }
+
+    /** December 9999 as months since year 0; later series ends are capped. */
+    private static final long MAX_MONTH = 9999 * 12 + 11;
+    private static final String[] WEEKDAYS = {"TH", "FR", "SA", "SU", "MO", "TU", "WE"};
+
+    private final BufferedReader reader;
+    private final SimpleDateFormat utcFormat;
+    private final SimpleDateFormat localFormat;
+    /** Physical line read ahead to detect folding; null at end of input. */
+    private String pending;
+    private boolean started;
+    private int skipped;
+
+    public IcsParser(Reader in) {
+        reader = in instanceof BufferedReader ? (BufferedReader) in : new BufferedReader(in);
+        utcFormat = new SimpleDateFormat("yyyyMMdd'T'HHmmss'Z'", Locale.US);
+        utcFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+        localFormat = new SimpleDateFormat("yyyyMMdd", Locale.US);
+    }
+
+    /** Events skipped so far because the calendar cannot represent them. */
+    public int getSkippedCount() {
+        return skipped;
+    }
+
+    /** Returns the next importable event, or null at the end of the file. */
+    public Event next() throws IOException {
+        String line;
+        boolean inEvent = false;
+        String start = null;
+        String summary = null;
+        String rule = null;
+        boolean excluded = false;
+        // Components nested in the event, e.g. VALARM, whose properties are not the event's
+        int nested = 0;
+        while ((line = nextLine()) != null) {
+            if (!inEvent) {
+                if (line.equalsIgnoreCase("BEGIN:VEVENT")) inEvent = true;
+                continue;
+            }
+            String upper = line.toUpperCase(Locale.US);
+            if (upper.startsWith("BEGIN:")) {
+                nested++;
+                continue;
+            }
+            if (nested > 0) {
+                if (upper.startsWith("END:")) nested--;
+                continue;
+            }
+            if (upper.equals("END:VEVENT")) {
+                Event event = toEvent(start, summary, rule, excluded);
+                if (event != null) return event;
+                skipped++;
+                inEvent = false;
+                start = summary = rule = null;
+                excluded = false;
+                continue;
+            }
+            int colon = valueStart(line);
+            if (colon < 0) continue;
+            String name = propertyName(line, colon);
+            String value = line.substring(colon + 1);
+            if (name.equals("DTSTART")) {
+                start = value.trim();
+            } else if (name.equals("SUMMARY")) {
+                summary = unescape(value).trim();
+            } else if (name.equals("RRULE")) {
+                rule = value.trim();
+            } else if (name.equals("EXDATE")) {
+                excluded = true;
+            }
+        }
+        return null;
+    }
+
+    // ── Lines ─────────────────────────────────────────────────────────────────
+
+    /** Next logical line, with continuation lines (leading space or tab) joined. */
+    private String nextLine() throws IOException {
+        if (!started) {
+            pending = reader.readLine();
+            started = true;
+        }
+        if (pending == null) return null;
+        String line = pending;
+        pending = reader.readLine();
+        if (pending == null || !isContinuation(pending)) return line;
+
+        StringBuilder sb = new StringBuilder(line);
+        while (pending != null && isContinuation(pending)) {
+            sb.append(pending, 1, pending.length());
+            pending = reader.readLine();
+        }
+        return sb.toString();
+    }
+
+    private static boolean isContinuation(String line) {
+        return !line.isEmpty() && (line.charAt(0) == ' ' || line.charAt(0) == '\t');
+    }
+
+    /** Index of the colon ending name and parameters; colons in quoted parameters don't count. */
+    private static int valueStart(String line) {
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char ch = line.charAt(i);
+            if (ch == '"') {
+                quoted = !quoted;
+            } else if (ch == ':' && !quoted) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static String propertyName(String line, int colon) {
+        int semicolon = line.indexOf(';');
+        int end = semicolon >= 0 && semicolon < colon ? semicolon : colon;
+        return line.substring(0, end).trim().toUpperCase(Locale.US);
+    }
+
+    /** Resolves the TEXT escapes \\, \; \, and \n. */
+    private static String unescape(String value) {
+        if (value.indexOf('\\') < 0) return value;
+        StringBuilder sb = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char ch = value.charAt(i);
+            if (ch == '\\' && i + 1 < value.length()) {
+                char next = value.charAt(++i);
+                sb.append(next == 'n' || next == 'N' ? ' ' : next);
+            } else {
+                sb.append(ch);
+            }
+        }
+        return sb.toString();
+    }
+
+    // ── Events ────────────────────────────────────────────────────────────────
+
+    private Event toEvent(String start, String summary, String rule, boolean excluded) {
+        if (start == null || summary == null || summary.isEmpty()) return null;
+        String date = toIsoDate(start);
+        if (date == null) return null;
+        if (rule == null) return new Event(date, summary, -1, 0, null);
+        // Importing the series without its exceptions would bring cancelled dates back
+        if (excluded) return null;
+
+        int frequency = -1;
+        int interval = 1;
+        String endDate = null;
+        int count = 0;
+        for (String part : rule.split(";")) {
+            int eq = part.indexOf('=');
+            if (eq < 0) continue;
+            String key = part.substring(0, eq).toUpperCase(Locale.US);
+            String value = part.substring(eq + 1).toUpperCase(Locale.US);
+            try {
+                switch (key) {
+                    case "FREQ":
+                        frequency = frequencyOf(value);
+                        break;
+                    case "INTERVAL":
+                        interval = Integer.parseInt(value);
+                        break;
+                    case "UNTIL":
+                        endDate = toIsoDate(value);
+                        if (endDate == null) return null;
+                        break;
+                    case "COUNT":
+                        count = Integer.parseInt(value);
+                        break;
+                    case "WKST":
+                        break;
+                    default:
+                        if (!repeatsStart(key, value, date)) return null;
+                }
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+        if (frequency < 0 || interval < 1 || count < 0) return null;
+        if (count > 0) endDate = lastOccurrence(date, frequency, interval, count);
+        return new Event(date, summary, frequency, interval, endDate);
+    }
+
+    /** YYYY-MM-DD for a DATE or DATE-TIME value; UTC times are converted to the local date. */
+    private String toIsoDate(String value) {
+        if (value.length() < 8) return null;
+        String day = value.substring(0, 8);
+        if (value.endsWith("Z")) {
+            try {
+                Date utc = utcFormat.parse(value);
+                day = localFormat.format(utc);
+            } catch (ParseException e) {
+                return null;
+            }
+        }
+        for (int i = 0; i < 8; i++) {
+            if (!Character.isDigit(day.charAt(i))) return null;
+        }
+        return day.substring(0, 4) + "-" + day.substring(4, 6) + "-" + day.substring(6, 8);
+    }
+
+    private static int frequencyOf(String value) {
+        switch (value) {
+            case "DAILY":   return Recurrence.DAILY;
+            case "WEEKLY":  return Recurrence.WEEKLY;
+            case "MONTHLY": return Recurrence.MONTHLY;
+            case "YEARLY":  return Recurrence.YEARLY;
+            default:        return -1;
+        }
+    }
+
+    /**
+     * Whether a BY… part only restates the start date, as many exporters
+     * write it (e.g. BYDAY=MO for a weekly series starting on a Monday).
+     */
+    private static boolean repeatsStart(String key, String value, String isoDate) {
+        switch (key) {
+            case "BYDAY":
+                // 1970-01-01 was a Thursday
+                int epochDay = IsoDates.toEpochDay(isoDate);
+                return value.equals(WEEKDAYS[((epochDay % 7) + 7) % 7]);
+            case "BYMONTHDAY":
+                return value.equals(String.valueOf(Integer.parseInt(isoDate.substring(8, 10))));
+            case "BYMONTH":
+                return value.equals(String.valueOf(Integer.parseInt(isoDate.substring(5, 7))));
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Date of the {@code count}-th occurrence from {@code isoDate}, used as
+     * the series end. Like {@link Recurrence#expand}, monthly and yearly
+     * series skip months without the start day, and those are not counted
+     * (RFC 5545: Jan 31 with COUNT=3 ends on May 31).
+     */
+    private static String lastOccurrence(String isoDate, int frequency, int interval, int count) {
+        long steps = (long) (count - 1) * interval;
+        if (frequency == Recurrence.DAILY || frequency == Recurrence.WEEKLY) {
+            long days = frequency == Recurrence.WEEKLY ? steps * 7 : steps;
+            return IsoDates.toIso((int) Math.min(IsoDates.toEpochDay(isoDate) + days,
+                    IsoDates.toEpochDay("9999-12-31")));
+        }
+        long stepMonths = frequency == Recurrence.YEARLY ? interval * 12L : interval;
+        long month = Integer.parseInt(isoDate.substring(0, 4)) * 12L
+                + Integer.parseInt(isoDate.substring(5, 7)) - 1;
+        int day = Integer.parseInt(isoDate.substring(8, 10));
+        if (day <= 28) {
+            // Every month has the day, so every step is an occurrence
+            if (count - 1 > (MAX_MONTH - month) / stepMonths) return "9999-12-31";
+            month += (count - 1) * stepMonths;
+        } else {
+            for (int remaining = count - 1; remaining > 0; ) {
+                month += stepMonths;
+                if (month > MAX_MONTH) return "9999-12-31";
+                if (day <= IsoDates.daysInMonth((int) (month / 12), (int) (month % 12) + 1)) {
+                    remaining--;
+                }
+            }
+        }
+        if (month > MAX_MONTH) return "9999-12-31";
+        return String.format(Locale.US, "%04d-%02d-%02d", month / 12, month % 12 + 1, day);
+    }
+}
@@ -0,0 +1,111 @@
+package com.kitchenboard.calendar;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * Streaming iCalendar (RFC 5545) writer: each event goes straight to the
+ * underlying {@link Writer}, so exports need no memory per event.
+ *
+ * Appointments become all-day events; lines are folded at 75 octets of
+ * UTF-8 without splitting a character.
+ */
+public class IcsWriter {
+
+    private static final int MAX_LINE_OCTETS = 75;
+    private static final String[] FREQUENCIES = {"DAILY", "WEEKLY", "MONTHLY", "YEARLY"};
+
+    private final Writer out;
+    /** DTSTAMP shared by every event of one export. */
+    private final String stamp;
+
+    public IcsWriter(Writer out) {
+        this.out = out;
+        SimpleDateFormat fmt = new SimpleDateFormat("yyyyMMdd'T'HHmmss'Z'", Locale.US);
+        fmt.setTimeZone(TimeZone.getTimeZone("UTC"));
+        stamp = fmt.format(new Date());
+    }
+
+    public void begin() throws IOException {
+        writeLine("BEGIN:VCALENDAR");
+        writeLine("VERSION:2.0");
+        writeLine("PRODID:-//KitchenBoard//Kalender//DE");
+    }
+
+    /** Writes a single all-day appointment on {@code date} (YYYY-MM-DD). */
+    public void writeAppointment(long id, String date, String title) throws IOException {
+        writeEvent("appointment-" + id, date, title, null);
+    }
+
+    /**
+     * Writes a series as one event with an RRULE; {@code endDate} is null
+     * for an open-ended series.
+     */
+    public void writeRecurrence(long id, String startDate, String title, int frequency,
+                                int interval, String endDate) throws IOException {
+        StringBuilder rule = new StringBuilder("FREQ=").append(FREQUENCIES[frequency]);
+        if (interval > 1) rule.append(";INTERVAL=").append(interval);
+        if (endDate != null) rule.append(";UNTIL=").append(compact(endDate));
+        writeEvent("recurrence-" + id, startDate, title, rule.toString());
+    }
+
+    /** Closes the calendar and flushes; the writer itself is left open. */
+    public void end() throws IOException {
+        writeLine("END:VCALENDAR");
+        out.flush();
+    }
+
+    private void writeEvent(String uid, String date, String title, String rule) throws IOException {
+        writeLine("BEGIN:VEVENT");
+        writeLine("UID:" + uid + "@kitchenboard");
+        writeLine("DTSTAMP:" + stamp);
+        writeLine("DTSTART;VALUE=DATE:" + compact(date));
+        if (rule != null) writeLine("RRULE:" + rule);
+        writeLine("SUMMARY:" + escape(title));
+        writeLine("END:VEVENT");
+    }
+
+    /** YYYYMMDD for a YYYY-MM-DD date. */
+    private static String compact(String isoDate) {
+        return isoDate.substring(0, 4) + isoDate.substring(5, 7) + isoDate.substring(8, 10);
+    }
+
+    private static String escape(String text) {
+        StringBuilder sb = new StringBuilder(text.length() + 8);
+        for (int i = 0; i < text.length(); i++) {
+            char ch = text.charAt(i);
+            switch (ch) {
+                case '\\': sb.append("\\\\"); break;
+                case ';':  sb.append("\\;");  break;
+                case ',':  sb.append("\\,");  break;
+                case '\n': sb.append("\\n");  break;
+                case '\r': break;
+                default:   sb.append(ch);
+            }
+        }
+        return sb.toString();
+    }
+
+    /** Writes a content line, folding it with CRLF + space before 75 octets are exceeded. */
+    private void writeLine(String line) throws IOException {
+        int octets = 0;
+        int i = 0;
+        while (i < line.length()) {
+            int cp = line.codePointAt(i);
+            int size = cp < 0x80 ? 1 : cp < 0x800 ? 2 : cp < 0x10000 ? 3 : 4;
+            if (octets + size > MAX_LINE_OCTETS) {
+                out.write("\r\n ");
+                // The leading space counts toward the continuation line
+                octets = 1;
+            }
+            out.write(line, i, Character.charCount(cp));
+            octets += size;
+            i += Character.charCount(cp);
+        }
+        out.write("\r\n");
+    }
+}
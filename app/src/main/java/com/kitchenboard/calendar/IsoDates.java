@@ -0,0 +1,51 @@
+package com.kitchenboard.calendar;
+
+import java.util.Locale;
+
+/**
+ * Conversions between the calendar's YYYY-MM-DD strings and epoch days
+ * (days since 1970-01-01), the form recurrence arithmetic works in.
+ * Proleptic Gregorian calendar, no time zones involved.
+ */
+final class IsoDates {
+
+    private IsoDates() {}
+
+    /** Days since 1970-01-01 for a YYYY-MM-DD date. */
+    static int toEpochDay(String isoDate) {
+        return epochDay(Integer.parseInt(isoDate.substring(0, 4)),
+                Integer.parseInt(isoDate.substring(5, 7)),
+                Integer.parseInt(isoDate.substring(8, 10)));
+    }
+
+    /** Days since 1970-01-01 for a Gregorian date (year ≥ 1, month 1-12). */
+    static int epochDay(int year, int month, int day) {
+        // Shift the year to start in March so the leap day comes last
+        int y = month <= 2 ? year - 1 : year;
+        int era = y / 400;
+        int yearOfEra = y - era * 400;
+        int dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097 + dayOfEra - 719468;
+    }
+
+    /** YYYY-MM-DD for an epoch day (on or after year 1). */
+    static String toIso(int epochDay) {
+        int z = epochDay + 719468;
+        int era = z / 146097;
+        int dayOfEra = z - era * 146097;
+        int yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+        int dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        int mp = (5 * dayOfYear + 2) / 153;
+        int day = dayOfYear - (153 * mp + 2) / 5 + 1;
+        int month = mp < 10 ? mp + 3 : mp - 9;
+        int year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+        return String.format(Locale.US, "%04d-%02d-%02d", year, month, day);
+    }
+
+    /** Number of days in {@code month} (1-12) of {@code year}. */
+    static int daysInMonth(int year, int month) {
+        int next = month == 12 ? epochDay(year + 1, 1, 1) : epochDay(year, month + 1, 1);
+        return next - epochDay(year, month, 1);
+    }
+}
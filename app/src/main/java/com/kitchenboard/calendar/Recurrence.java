@@ -0,0 +1,92 @@
+package com.kitchenboard.calendar;
+
+import java.util.List;
+
+/**
+ * A recurring appointment: a title repeated every {@code interval} days,
+ * weeks, months or years from a start date, optionally until an end date.
+ *
+ * Occurrences are never stored; {@link #expand} computes the ones inside a
+ * window directly from the rule, jumping to the first one in the window,
+ * so its cost depends only on the number of occurrences returned. Monthly
+ * and yearly series skip months without their day (e.g. the 31st, or
+ * 29 February outside leap years).
+ */
+public class Recurrence {
+
+    public static final int DAILY   = 0;
+    public static final int WEEKLY  = 1;
+    public static final int MONTHLY = 2;
+    public static final int YEARLY  = 3;
+
+    /** End day of a series without end date. */
+    static final int NO_END = Integer.MAX_VALUE;
+
+    private final long id;
+    private final String title;
+    private final int frequency;
+    private final int interval;
+    /** First occurrence, in epoch days. */
+    private final int startDay;
+    /** Last day occurrences may fall on, in epoch days; {@link #NO_END} if open. */
+    private final int endDay;
+
+    Recurrence(long id, String title, int frequency, int interval, int startDay, int endDay) {
+        this.id = id;
+        this.title = title;
+        this.frequency = frequency;
+        this.interval = Math.max(1, interval);
+        this.startDay = startDay;
+        this.endDay = endDay;
+    }
+
+    public long getId()       { return id; }
+    public String getTitle()  { return title; }
+    public int getFrequency() { return frequency; }
+    public int getInterval()  { return interval; }
+    int getStartDay()         { return startDay; }
+    int getEndDay()           { return endDay; }
+
+    /** Adds the occurrences between {@code fromDay} and {@code toDay} (epoch days, inclusive). */
+    void expand(int fromDay, int toDay, List<Appointment> out) {
+        int first = Math.max(fromDay, startDay);
+        int last = Math.min(toDay, endDay);
+        if (first > last) return;
+
+        if (frequency == DAILY || frequency == WEEKLY) {
+            int step = frequency == WEEKLY ? interval * 7 : interval;
+            // Smallest multiple of the step at or after the window start
+            int n = (first - startDay + step - 1) / step;
+            for (long day = startDay + (long) n * step; day <= last; day += step) {
+                out.add(occurrence((int) day));
+            }
+            return;
+        }
+
+        int stepMonths = frequency == YEARLY ? interval * 12 : interval;
+        String start = IsoDates.toIso(startDay);
+        int startMonth = monthIndex(start);
+        int dayOfMonth = Integer.parseInt(start.substring(8, 10));
+        int n = (monthIndex(IsoDates.toIso(first)) - startMonth) / stepMonths;
+        for (;; n++) {
+            int month = startMonth + n * stepMonths;
+            int year = month / 12;
+            int monthOfYear = month % 12 + 1;
+            int firstOfMonth = IsoDates.epochDay(year, monthOfYear, 1);
+            if (firstOfMonth > last) break;
+            if (dayOfMonth > IsoDates.daysInMonth(year, monthOfYear)) continue;
+            int day = firstOfMonth + dayOfMonth - 1;
+            if (day >= first && day <= last) out.add(occurrence(day));
+        }
+    }
+
+    private Appointment occurrence(int day) {
+        return new Appointment(0, IsoDates.toIso(day), title, id);
+    }
+
+    /** Months since year 0 for a YYYY-MM-DD date. */
+    private static int monthIndex(String isoDate) {
+        return Integer.parseInt(isoDate.substring(0, 4)) * 12
+                + Integer.parseInt(isoDate.substring(5, 7)) - 1;
+    }
+}
@@ -0,0 +1,154 @@
+package com.kitchenboard.calendar;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Centered interval tree over the active spans (start day to end day) of
+ * recurring series, so the series touching a date window are found in
+ * O(log n + k) for k matches, however long each series runs.
+ *
+ * Each node holds the series whose span contains its center day, sorted
+ * once by start and once by end; series entirely before or after the
+ * center go to the left or right subtree. Immutable; rebuilt when the
+ * set of series changes.
+ */
+final class RecurrenceIndex {
+
+    private static final Comparator<Recurrence> BY_START = new Comparator<Recurrence>() {
+        @Override
+        public int compare(Recurrence a, Recurrence b) {
+            return Integer.compare(a.getStartDay(), b.getStartDay());
+        }
+    };
+
+    private static final Comparator<Recurrence> BY_END_DESCENDING = new Comparator<Recurrence>() {
+        @Override
+        public int compare(Recurrence a, Recurrence b) {
+            return Integer.compare(b.getEndDay(), a.getEndDay());
+        }
+    };
+
+    private static final class Node {
+        final int center;
+        final Recurrence[] byStart;
+        final Recurrence[] byEnd;
+        final Node left;
+        final Node right;
+
+        Node(int center, Recurrence[] byStart, Recurrence[] byEnd, Node left, Node right) {
+            this.center = center;
+            this.byStart = byStart;
+            this.byEnd = byEnd;
+            this.left = left;
+            this.right = right;
+        }
+    }
+
+    private final Node root;
+    private final int size;
+
+    RecurrenceIndex(List<Recurrence> series) {
+        root = build(series);
+        size = series.size();
+    }
+
+    int size() {
+        return size;
+    }
+
+    /** Adds every series whose span overlaps {@code fromDay}..{@code toDay} (inclusive) to {@code out}. */
+    void query(int fromDay, int toDay, List<Recurrence> out) {
+        Node node = root;
+        // Walk down while the window lies on one side of the center; branch only when it spans it
+        while (node != null) {
+            if (toDay < node.center) {
+                // Every span here ends at or after the center, so it overlaps iff it starts in time
+                for (Recurrence r : node.byStart) {
+                    if (r.getStartDay() > toDay) break;
+                    out.add(r);
+                }
+                node = node.left;
+            } else if (fromDay > node.center) {
+                for (Recurrence r : node.byEnd) {
+                    if (r.getEndDay() < fromDay) break;
+                    out.add(r);
+                }
+                node = node.right;
+            } else {
+                Collections.addAll(out, node.byStart);
+                queryAll(node.left, fromDay, out, true);
+                queryAll(node.right, toDay, out, false);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Below a node whose center lies inside the window only one window edge
+     * matters: spans left of it overlap iff they end at or after {@code fromDay},
+     * spans right of it iff they start at or before {@code toDay}.
+     */
+    private static void queryAll(Node node, int edge, List<Recurrence> out, boolean leftSide) {
+        while (node != null) {
+            if (leftSide) {
+                if (node.center >= edge) {
+                    Collections.addAll(out, node.byStart);
+                    queryAll(node.right, Integer.MIN_VALUE, out, true);
+                    node = node.left;
+                } else {
+                    for (Recurrence r : node.byEnd) {
+                        if (r.getEndDay() < edge) break;
+                        out.add(r);
+                    }
+                    node = node.right;
+                }
+            } else {
+                if (node.center <= edge) {
+                    Collections.addAll(out, node.byStart);
+                    queryAll(node.left, Integer.MAX_VALUE, out, false);
+                    node = node.right;
+                } else {
+                    for (Recurrence r : node.byStart) {
+                        if (r.getStartDay() > edge) break;
+                        out.add(r);
+                    }
+                    node = node.left;
+                }
+            }
+        }
+    }
+
+    private static Node build(List<Recurrence> series) {
+        if (series.isEmpty()) return null;
+        // The median endpoint lies in at least one span, so no node is empty
+        int[] endpoints = new int[series.size() * 2];
+        for (int i = 0; i < series.size(); i++) {
+            endpoints[2 * i] = series.get(i).getStartDay();
+            endpoints[2 * i + 1] = series.get(i).getEndDay();
+        }
+        Arrays.sort(endpoints);
+        int center = endpoints[endpoints.length / 2];
+
+        List<Recurrence> left = new ArrayList<>();
+        List<Recurrence> right = new ArrayList<>();
+        List<Recurrence> here = new ArrayList<>();
+        for (Recurrence r : series) {
+            if (r.getEndDay() < center) {
+                left.add(r);
+            } else if (r.getStartDay() > center) {
+                right.add(r);
+            } else {
+                here.add(r);
+            }
+        }
+        Recurrence[] byStart = here.toArray(new Recurrence[0]);
+        Recurrence[] byEnd = byStart.clone();
+        Arrays.sort(byStart, BY_START);
+        Arrays.sort(byEnd, BY_END_DESCENDING);
+        return new Node(center, byStart, byEnd, build(left), build(right));
+    }
+}
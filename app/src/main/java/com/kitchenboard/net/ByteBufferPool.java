@@ -0,0 +1,30 @@
+package com.kitchenboard.net;
+
+import java.util.ArrayDeque;
+
+/**
+ * Small pool of equally sized byte arrays used as read buffers, so that
+ * every response does not allocate (and later collect) a fresh buffer.
+ */
+final class ByteBufferPool {
+
+    private final int bufferSize;
+    private final int maxPooled;
+    private final ArrayDeque<byte[]> pool = new ArrayDeque<>();
+
+    ByteBufferPool(int bufferSize, int maxPooled) {
+        this.bufferSize = bufferSize;
+        this.maxPooled = maxPooled;
+    }
+
+    synchronized byte[] acquire() {
+        byte[] buf = pool.poll();
+        return buf != null ? buf : new byte[bufferSize];
+    }
+
+    synchronized void release(byte[] buf) {
+        if (buf.length == bufferSize && pool.size() < maxPooled) {
+            pool.push(buf);
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package com.kitchenboard.net;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Serves GET requests from an {@link HttpCache}.
+ *
+ * <ul>
+ *   <li>A stored response younger than its {@code Cache-Control: max-age} is
+ *       returned without touching the network.</li>
+ *   <li>Otherwise the request is revalidated with {@code If-None-Match} /
+ *       {@code If-Modified-Since}; a {@code 304 Not Modified} (no body on the
+ *       wire) is answered with the stored body.</li>
+ *   <li>Fresh 200 responses are stored when they carry a validator or a
+ *       max-age and neither side sent {@code no-store}.</li>
+ * </ul>
+ *
+ * Callers can force revalidation with a {@code Cache-Control: no-cache}
+ * request header. Responses passed up the chain always have the real
+ * status of the content (200), never 304.
+ */
+public class CacheInterceptor implements Interceptor {
+
+    private static final int NOT_MODIFIED = 304;
+
+    private final HttpCache cache;
+
+    public CacheInterceptor(HttpCache cache) {
+        this.cache = cache;
+    }
+
+    public HttpCache getCache() {
+        return cache;
+    }
+
+    @Override
+    public HttpResponse intercept(Chain chain) throws IOException {
+        HttpRequest request = chain.request();
+        if (!"GET".equals(request.getMethod())) return chain.proceed(request);
+
+        String requestCacheControl = request.getHeaders().get("Cache-Control");
+        if (hasDirective(requestCacheControl, "no-store")) return chain.proceed(request);
+
+        String url = request.getUrl();
+        HttpCache.Entry cached = cache.get(url);
+        if (cached != null && !hasDirective(requestCacheControl, "no-cache")
+                && isFresh(cached)) {
+            return cached.toResponse();
+        }
+
+        HttpRequest networkRequest = cached != null ? conditional(request, cached) : request;
+        HttpResponse response = chain.proceed(networkRequest);
+
+        if (response.getCode() == NOT_MODIFIED && cached != null) {
+            HttpCache.Entry refreshed = new HttpCache.Entry(url, System.currentTimeMillis(),
+                    cached.code, mergeHeaders(cached.headers, response.getHeaders()), cached.body);
+            cache.put(refreshed);
+            return refreshed.toResponse();
+        }
+        if (response.getCode() == 200) {
+            if (isCacheable(requestCacheControl, response)) {
+                cache.put(new HttpCache.Entry(url, System.currentTimeMillis(),
+                        response.getCode(), response.getHeaders(), response.getBody()));
+            } else if (cached != null) {
+                cache.remove(url);
+            }
+        }
+        return response;
+    }
+
+    // ── Cache-Control ─────────────────────────────────────────────────────────
+
+    private static boolean isFresh(HttpCache.Entry entry) {
+        String cacheControl = header(entry.headers, "Cache-Control");
+        if (hasDirective(cacheControl, "no-cache")) return false;
+        long maxAgeS = maxAgeSeconds(cacheControl);
+        if (maxAgeS <= 0) return false;
+        long ageMs = System.currentTimeMillis() - entry.receivedAtMs;
+        return ageMs >= 0 && ageMs < maxAgeS * 1000;
+    }
+
+    private static boolean isCacheable(String requestCacheControl, HttpResponse response) {
+        String cacheControl = response.header("Cache-Control");
+        if (hasDirective(requestCacheControl, "no-store")
+                || hasDirective(cacheControl, "no-store")) {
+            return false;
+        }
+        return response.header("ETag") != null
+                || response.header("Last-Modified") != null
+                || maxAgeSeconds(cacheControl) > 0;
+    }
+
+    private static HttpRequest conditional(HttpRequest request, HttpCache.Entry cached) {
+        HttpRequest.Builder b = request.newBuilder();
+        String etag = header(cached.headers, "ETag");
+        String lastModified = header(cached.headers, "Last-Modified");
+        if (etag != null && !request.getHeaders().containsKey("If-None-Match")) {
+            b.header("If-None-Match", etag);
+        }
+        if (lastModified != null && !request.getHeaders().containsKey("If-Modified-Since")) {
+            b.header("If-Modified-Since", lastModified);
+        }
+        return b.build();
+    }
+
+    /**
+     * Stored headers updated with those of a 304 (new validators, max-age);
+     * body-related headers stay as stored.
+     */
+    private static Map<String, List<String>> mergeHeaders(Map<String, List<String>> stored,
+                                                          Map<String, List<String>> fresh) {
+        Map<String, List<String>> merged = new LinkedHashMap<>();
+        for (Map.Entry<String, List<String>> h : stored.entrySet()) {
+            if (h.getKey() != null) merged.put(h.getKey(), h.getValue());
+        }
+        for (Map.Entry<String, List<String>> h : fresh.entrySet()) {
+            String name = h.getKey();
+            if (name == null || name.equalsIgnoreCase("Content-Length")
+                    || name.equalsIgnoreCase("Content-Encoding")
+                    || name.equalsIgnoreCase("Content-Type")) {
+                continue;
+            }
+            for (String existing : new ArrayList<>(merged.keySet())) {
+                if (existing.equalsIgnoreCase(name)) merged.remove(existing);
+            }
+            merged.put(name, h.getValue());
+        }
+        return merged;
+    }
+
+    private static String header(Map<String, List<String>> headers, String name) {
+        for (Map.Entry<String, List<String>> e : headers.entrySet()) {
+            if (e.getKey() != null && e.getKey().equalsIgnoreCase(name)
+                    && !e.getValue().isEmpty()) {
+                return e.getValue().get(0);
+            }
+        }
+        return null;
+    }
+
+    private static boolean hasDirective(String cacheControl, String directive) {
+        if (cacheControl == null) return false;
+        for (String part : cacheControl.split(",")) {
+            if (part.trim().toLowerCase(Locale.ROOT).startsWith(directive)) return true;
+        }
+        return false;
+    }
+
+    /** The {@code max-age} directive in seconds, or -1 when absent or malformed. */
+    private static long maxAgeSeconds(String cacheControl) {
+        if (cacheControl == null) return -1;
+        for (String part : cacheControl.split(",")) {
+            String p = part.trim().toLowerCase(Locale.ROOT);
+            if (p.startsWith("max-age=")) {
+                try {
+                    return Long.parseLong(p.substring("max-age=".length()).trim());
+                } catch (NumberFormatException e) {
+                    return -1;
+                }
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,257 @@
+package com.kitchenboard.net;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Size-bounded disk store for GET responses, used by {@link CacheInterceptor}.
+ *
+ * Each response lives in one file named after the SHA-1 of its URL. An
+ * in-memory index in access order tracks the file sizes; when the total
+ * exceeds the limit the least recently used files are deleted. The index is
+ * built lazily from the directory on first use, so creating the cache does
+ * no disk I/O (it is set up on the main thread).
+ */
+public final class HttpCache {
+
+    private static final int FORMAT_VERSION = 1;
+    private static final String SUFFIX = ".0";
+
+    /** A stored response plus the time it was received or last revalidated. */
+    static final class Entry {
+        final String url;
+        final long receivedAtMs;
+        final int code;
+        final Map<String, List<String>> headers;
+        final byte[] body;
+
+        Entry(String url, long receivedAtMs, int code,
+              Map<String, List<String>> headers, byte[] body) {
+            this.url = url;
+            this.receivedAtMs = receivedAtMs;
+            this.code = code;
+            this.headers = headers;
+            this.body = body;
+        }
+
+        HttpResponse toResponse() {
+            return new HttpResponse(code, headers, body);
+        }
+    }
+
+    private final File directory;
+    private final long maxBytes;
+    /** Key → file size, least recently used first. Guarded by {@code this}. */
+    private final LinkedHashMap<String, Long> index = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalBytes;
+    private boolean initialized;
+    private int hitCount;
+    private int requestCount;
+
+    public HttpCache(File directory, long maxBytes) {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+    }
+
+    public long getMaxBytes() { return maxBytes; }
+
+    public synchronized long size() {
+        initialize();
+        return totalBytes;
+    }
+
+    /** Lookups that found an entry (fresh or revalidated) / all lookups. */
+    public synchronized int getHitCount() { return hitCount; }
+    public synchronized int getRequestCount() { return requestCount; }
+
+    /** Deletes every stored response. */
+    public synchronized void evictAll() {
+        initialize();
+        for (String key : new ArrayList<>(index.keySet())) {
+            removeFile(key);
+        }
+    }
+
+    // ── Entries ───────────────────────────────────────────────────────────────
+
+    synchronized Entry get(String url) {
+        initialize();
+        requestCount++;
+        String key = key(url);
+        // get() rather than containsKey() so the lookup counts as a use
+        if (index.get(key) == null) return null;
+        File file = fileFor(key);
+        try {
+            Entry entry = read(file);
+            // A hash collision would hand out the wrong body
+            if (!entry.url.equals(url)) return null;
+            hitCount++;
+            // Keeps the LRU order across restarts (see initialize())
+            file.setLastModified(System.currentTimeMillis());
+            return entry;
+        } catch (IOException e) {
+            removeFile(key);
+            return null;
+        }
+    }
+
+    synchronized void put(Entry entry) {
+        initialize();
+        // A single response may not push out most of the cache
+        if (entry.body.length > maxBytes / 8) return;
+        String key = key(entry.url);
+        File file = fileFor(key);
+        File tmp = new File(directory, key + ".tmp");
+        try {
+            write(tmp, entry);
+            if (!tmp.renameTo(file)) throw new IOException("rename failed");
+        } catch (IOException e) {
+            tmp.delete();
+            removeFile(key);
+            return;
+        }
+        Long previous = index.put(key, file.length());
+        if (previous != null) totalBytes -= previous;
+        totalBytes += file.length();
+        trimToSize();
+    }
+
+    synchronized void remove(String url) {
+        initialize();
+        removeFile(key(url));
+    }
+
+    // ── Index ─────────────────────────────────────────────────────────────────
+
+    private void initialize() {
+        if (initialized) return;
+        initialized = true;
+        if (!directory.isDirectory() && !directory.mkdirs()) return;
+        File[] files = directory.listFiles();
+        if (files == null) return;
+        // Rebuild the LRU order from modification times (oldest first)
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File a, File b) {
+                return Long.compare(a.lastModified(), b.lastModified());
+            }
+        });
+        for (File f : files) {
+            String name = f.getName();
+            if (!name.endsWith(SUFFIX)) {
+                f.delete();
+                continue;
+            }
+            index.put(name.substring(0, name.length() - SUFFIX.length()), f.length());
+            totalBytes += f.length();
+        }
+        trimToSize();
+    }
+
+    private void trimToSize() {
+        Iterator<Map.Entry<String, Long>> it = index.entrySet().iterator();
+        while (totalBytes > maxBytes && it.hasNext()) {
+            Map.Entry<String, Long> eldest = it.next();
+            totalBytes -= eldest.getValue();
+            fileFor(eldest.getKey()).delete();
+            it.remove();
+        }
+    }
+
+    private void removeFile(String key) {
+        Long size = index.remove(key);
+        if (size != null) totalBytes -= size;
+        fileFor(key).delete();
+    }
+
+    private File fileFor(String key) {
+        return new File(directory, key + SUFFIX);
+    }
+
+    private static String key(String url) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1")
+                    .digest(url.getBytes(StandardCharsets.UTF_8));
+            StringBuilder sb = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                sb.append(Character.forDigit((b >> 4) & 0xf, 16))
+                  .append(Character.forDigit(b & 0xf, 16));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    // ── File format ───────────────────────────────────────────────────────────
+
+    private static void write(File file, Entry entry) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(file)))) {
+            out.writeInt(FORMAT_VERSION);
+            out.writeUTF(entry.url);
+            out.writeLong(entry.receivedAtMs);
+            out.writeInt(entry.code);
+            int count = 0;
+            for (Map.Entry<String, List<String>> h : entry.headers.entrySet()) {
+                if (h.getKey() != null) count += h.getValue().size();
+            }
+            out.writeInt(count);
+            for (Map.Entry<String, List<String>> h : entry.headers.entrySet()) {
+                // The null key is the HTTP status line
+                if (h.getKey() == null) continue;
+                for (String value : h.getValue()) {
+                    out.writeUTF(h.getKey());
+                    out.writeUTF(value);
+                }
+            }
+            out.writeInt(entry.body.length);
+            out.write(entry.body);
+        }
+    }
+
+    private static Entry read(File file) throws IOException {
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != FORMAT_VERSION) throw new IOException("Unknown cache format");
+            String url = in.readUTF();
+            long receivedAtMs = in.readLong();
+            int code = in.readInt();
+            int count = in.readInt();
+            Map<String, List<String>> headers = new LinkedHashMap<>();
+            for (int i = 0; i < count; i++) {
+                String name = in.readUTF();
+                String value = in.readUTF();
+                List<String> values = headers.get(name);
+                if (values == null) {
+                    values = new ArrayList<>();
+                    headers.put(name, values);
+                }
+                values.add(value);
+            }
+            byte[] body = new byte[in.readInt()];
+            in.readFully(body);
+            for (Map.Entry<String, List<String>> h : headers.entrySet()) {
+                h.setValue(Collections.unmodifiableList(h.getValue()));
+            }
+            return new Entry(url, receivedAtMs, code, headers, body);
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package com.kitchenboard.net;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * One execution of an {@link HttpRequest}. {@link #execute()} blocks; it can
+ * be aborted from another thread with {@link #cancel()}, which makes it throw
+ * an {@link IOException}.
+ */
+public final class HttpCall {
+
+    private final HttpTransport transport;
+    private final HttpRequest request;
+    private volatile boolean canceled;
+    private volatile HttpURLConnection connection;
+
+    HttpCall(HttpTransport transport, HttpRequest request) {
+        this.transport = transport;
+        this.request = request;
+    }
+
+    public HttpRequest getRequest() { return request; }
+
+    public boolean isCanceled() { return canceled; }
+
+    /** Aborts the call; a blocked {@link #execute()} fails with an IOException. */
+    public void cancel() {
+        canceled = true;
+        HttpURLConnection conn = connection;
+        if (conn != null) conn.disconnect();
+    }
+
+    /**
+     * Like {@link #execute()}, but returns the body as UTF-8 text and throws
+     * {@link HttpStatusException} for non-2xx responses.
+     */
+    public String fetchString() throws IOException {
+        HttpResponse response = execute();
+        if (!response.isSuccessful()) throw new HttpStatusException(response.getCode());
+        return response.bodyString();
+    }
+
+    /**
+     * Like {@link #execute()}, but returns the raw (decompressed) body and
+     * throws {@link HttpStatusException} for non-2xx responses. For callers
+     * that decode the bytes themselves without an intermediate String.
+     */
+    public byte[] fetchBytes() throws IOException {
+        HttpResponse response = execute();
+        if (!response.isSuccessful()) throw new HttpStatusException(response.getCode());
+        return response.getBody();
+    }
+
+    /** Runs the request through the interceptors and the network. */
+    public HttpResponse execute() throws IOException {
+        return new RealChain(0, request).proceed(request);
+    }
+
+    private class RealChain implements Interceptor.Chain {
+        private final int index;
+        private final HttpRequest request;
+
+        RealChain(int index, HttpRequest request) {
+            this.index = index;
+            this.request = request;
+        }
+
+        @Override public HttpRequest request() { return request; }
+        @Override public HttpCall call() { return HttpCall.this; }
+
+        @Override
+        public HttpResponse proceed(HttpRequest next) throws IOException {
+            List<Interceptor> interceptors = transport.interceptors();
+            if (index < interceptors.size()) {
+                return interceptors.get(index).intercept(new RealChain(index + 1, next));
+            }
+            return executeOnNetwork(next);
+        }
+    }
+
+    // ── Network ───────────────────────────────────────────────────────────────
+
+    private HttpResponse executeOnNetwork(HttpRequest req) throws IOException {
+        URL url = new URL(req.getUrl());
+        transport.acquireHost(url.getHost());
+        try {
+            checkCanceled();
+            HttpURLConnection conn = (HttpURLConnection) url.openConnection();
+            connection = conn;
+            checkCanceled();
+            conn.setRequestMethod(req.getMethod());
+            conn.setConnectTimeout(req.getConnectTimeoutMs());
+            conn.setReadTimeout(req.getReadTimeoutMs());
+            // Set explicitly, so the body must be decompressed here (see readBody)
+            conn.setRequestProperty("Accept-Encoding", "gzip");
+            for (Map.Entry<String, String> h : req.getHeaders().entrySet()) {
+                conn.setRequestProperty(h.getKey(), h.getValue());
+            }
+            if (req.getBody() != null) {
+                writeBody(conn, req);
+            }
+            int code = conn.getResponseCode();
+            InputStream in = code >= 400 ? conn.getErrorStream() : conn.getInputStream();
+            byte[] body = readBody(conn, in);
+            // No disconnect(): a fully read and closed stream returns the socket to the keep-alive pool
+            return new HttpResponse(code, conn.getHeaderFields(), body);
+        } catch (IOException e) {
+            if (canceled) throw new IOException("Canceled", e);
+            throw e;
+        } finally {
+            connection = null;
+            transport.releaseHost(url.getHost());
+        }
+    }
+
+    private static void writeBody(HttpURLConnection conn, HttpRequest req) throws IOException {
+        byte[] body = req.getBody();
+        conn.setDoOutput(true);
+        if (req.isGzipBody()) {
+            conn.setRequestProperty("Content-Encoding", "gzip");
+            conn.setChunkedStreamingMode(0);
+            try (OutputStream os = new GZIPOutputStream(conn.getOutputStream())) {
+                os.write(body);
+            }
+        } else {
+            conn.setFixedLengthStreamingMode(body.length);
+            try (OutputStream os = conn.getOutputStream()) {
+                os.write(body);
+            }
+        }
+    }
+
+    private byte[] readBody(HttpURLConnection conn, InputStream in) throws IOException {
+        if (in == null) return new byte[0];
+        try {
+            if ("gzip".equalsIgnoreCase(conn.getContentEncoding())) {
+                in = new GZIPInputStream(in);
+            }
+            return transport.readFully(in, conn.getContentLength());
+        } finally {
+            in.close();
+        }
+    }
+
+    private void checkCanceled() throws IOException {
+        if (canceled) throw new IOException("Canceled");
+    }
+}
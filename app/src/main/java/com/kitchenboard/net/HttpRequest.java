@@ -0,0 +1,106 @@
+package com.kitchenboard.net;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * An immutable HTTP request for {@link HttpTransport}. Create one with
+ * {@link Builder}; {@link #newBuilder()} copies a request for interceptors
+ * that need to change it.
+ */
+public final class HttpRequest {
+
+    private final String method;
+    private final String url;
+    private final Map<String, String> headers;
+    private final byte[] body;
+    private final boolean gzipBody;
+    private final int connectTimeoutMs;
+    private final int readTimeoutMs;
+
+    private HttpRequest(Builder b) {
+        method = b.method;
+        url = b.url;
+        headers = Collections.unmodifiableMap(new LinkedHashMap<>(b.headers));
+        body = b.body;
+        gzipBody = b.gzipBody;
+        connectTimeoutMs = b.connectTimeoutMs;
+        readTimeoutMs = b.readTimeoutMs;
+    }
+
+    public String getMethod() { return method; }
+    public String getUrl() { return url; }
+    public Map<String, String> getHeaders() { return headers; }
+    /** Request body, or null for GET. */
+    public byte[] getBody() { return body; }
+    /** Whether the body is sent gzip-compressed ({@code Content-Encoding: gzip}). */
+    public boolean isGzipBody() { return gzipBody; }
+    public int getConnectTimeoutMs() { return connectTimeoutMs; }
+    public int getReadTimeoutMs() { return readTimeoutMs; }
+
+    /** Safe to send twice (e.g. by {@link RetryInterceptor}). */
+    public boolean isIdempotent() {
+        return "GET".equals(method) || "HEAD".equals(method);
+    }
+
+    public Builder newBuilder() {
+        Builder b = new Builder(url);
+        b.method = method;
+        b.headers.putAll(headers);
+        b.body = body;
+        b.gzipBody = gzipBody;
+        b.connectTimeoutMs = connectTimeoutMs;
+        b.readTimeoutMs = readTimeoutMs;
+        return b;
+    }
+
+    public static final class Builder {
+        private String method = "GET";
+        private final String url;
+        private final Map<String, String> headers = new LinkedHashMap<>();
+        private byte[] body;
+        private boolean gzipBody;
+        private int connectTimeoutMs = 10_000;
+        private int readTimeoutMs = 10_000;
+
+        public Builder(String url) {
+            this.url = url;
+        }
+
+        public Builder header(String name, String value) {
+            headers.put(name, value);
+            return this;
+        }
+
+        /** POST with an {@code application/x-www-form-urlencoded} body. */
+        public Builder postForm(String formBody) {
+            return post("application/x-www-form-urlencoded",
+                    formBody.getBytes(StandardCharsets.UTF_8));
+        }
+
+        public Builder post(String contentType, byte[] body) {
+            method = "POST";
+            headers.put("Content-Type", contentType);
+            this.body = body;
+            return this;
+        }
+
+        /** Compress the body; only for servers that accept gzip request bodies. */
+        public Builder gzipBody() {
+            gzipBody = true;
+            return this;
+        }
+
+        public Builder timeouts(int connectTimeoutMs, int readTimeoutMs) {
+            this.connectTimeoutMs = connectTimeoutMs;
+            this.readTimeoutMs = readTimeoutMs;
+            return this;
+        }
+
+        public HttpRequest build() {
+            return new HttpRequest(this);
+        }
+    }
+}
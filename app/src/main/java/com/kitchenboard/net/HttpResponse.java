@@ -0,0 +1,44 @@
+package com.kitchenboard.net;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+/** A fully read HTTP response; the body is already decompressed. */
+public final class HttpResponse {
+
+    private final int code;
+    private final Map<String, List<String>> headers;
+    private final byte[] body;
+
+    public HttpResponse(int code, Map<String, List<String>> headers, byte[] body) {
+        this.code = code;
+        this.headers = headers;
+        this.body = body;
+    }
+
+    public int getCode() { return code; }
+    public byte[] getBody() { return body; }
+
+    public boolean isSuccessful() {
+        return code >= 200 && code < 300;
+    }
+
+    /** First value of the header {@code name} (case-insensitive), or null. */
+    public String header(String name) {
+        for (Map.Entry<String, List<String>> e : headers.entrySet()) {
+            if (e.getKey() != null && e.getKey().equalsIgnoreCase(name)
+                    && !e.getValue().isEmpty()) {
+                return e.getValue().get(0);
+            }
+        }
+        return null;
+    }
+
+    public Map<String, List<String>> getHeaders() { return headers; }
+
+    /** The body decoded as UTF-8, with line breaks preserved. */
+    public String bodyString() {
+        return new String(body, StandardCharsets.UTF_8);
+    }
+}
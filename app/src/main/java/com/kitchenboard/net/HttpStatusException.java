@@ -0,0 +1,20 @@
+package com.kitchenboard.net;
+
+import java.io.IOException;
+
+/** Non-2xx answer from a server. */
+public class HttpStatusException extends IOException {
+    private final int code;
+
+    public HttpStatusException(int code) {
+        super("HTTP " + code);
+        this.code = code;
+    }
+
+    public int getCode() { return code; }
+
+    /** 4xx: the request itself was rejected and repeating it will not help. */
+    public boolean isClientError() {
+        return code >= 400 && code < 500;
+    }
+}
@@ -0,0 +1,155 @@
+package com.kitchenboard.net;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Semaphore;
+
+/**
+ * The app's single HTTP stack, shared by all network clients.
+ *
+ * <ul>
+ *   <li>Connections are kept alive and reused: responses are always read to
+ *       the end and closed instead of disconnected, so the platform's
+ *       connection pool can hand the socket (and TLS session) to the next
+ *       request to the same host.</li>
+ *   <li>At most {@link #MAX_REQUESTS_PER_HOST} requests run against one host
+ *       at a time; further calls wait for a slot.</li>
+ *   <li>Responses are requested and decoded with gzip; request bodies can be
+ *       gzipped per request.</li>
+ *   <li>Read buffers come from a small pool.</li>
+ *   <li>{@link Interceptor}s wrap every call; by default metrics
+ *       ({@link #getMetrics()}) and retries of idempotent requests.</li>
+ *   <li>GET responses can be cached on disk and revalidated with
+ *       ETag / Last-Modified ({@link #installCache}).</li>
+ * </ul>
+ */
+public final class HttpTransport {
+
+    private static final int MAX_REQUESTS_PER_HOST = 4;
+    private static final int MAX_IDLE_CONNECTIONS = 8;
+    private static final int BUFFER_SIZE = 8 * 1024;
+    private static final int MAX_POOLED_BUFFERS = 8;
+
+    private static volatile HttpTransport instance;
+
+    private final List<Interceptor> interceptors = new CopyOnWriteArrayList<>();
+    private final ConcurrentHashMap<String, Semaphore> hostPermits = new ConcurrentHashMap<>();
+    private final ByteBufferPool bufferPool = new ByteBufferPool(BUFFER_SIZE, MAX_POOLED_BUFFERS);
+    private final MetricsInterceptor metrics = new MetricsInterceptor();
+    private volatile HttpCache cache;
+
+    /** The shared instance. */
+    public static HttpTransport get() {
+        if (instance == null) {
+            synchronized (HttpTransport.class) {
+                if (instance == null) instance = new HttpTransport();
+            }
+        }
+        return instance;
+    }
+
+    private HttpTransport() {
+        System.setProperty("http.keepAlive", "true");
+        System.setProperty("http.maxConnections", String.valueOf(MAX_IDLE_CONNECTIONS));
+        interceptors.add(metrics);
+        interceptors.add(new RetryInterceptor());
+    }
+
+    /**
+     * Enables the disk response cache ({@link CacheInterceptor}). It runs
+     * first, so fresh hits skip metrics, retries and the host limit. Calling
+     * this again has no effect. Safe on the main thread: the cache directory
+     * is only read on the first request.
+     */
+    public synchronized void installCache(File directory, long maxBytes) {
+        if (cache != null) return;
+        cache = new HttpCache(directory, maxBytes);
+        interceptors.add(0, new CacheInterceptor(cache));
+    }
+
+    /** The installed response cache, or null. */
+    public HttpCache getCache() {
+        return cache;
+    }
+
+    /** Appends an interceptor; it runs after the built-in ones, closest to the network. */
+    public void addInterceptor(Interceptor interceptor) {
+        interceptors.add(interceptor);
+    }
+
+    public MetricsInterceptor getMetrics() {
+        return metrics;
+    }
+
+    /** Prepares a call that can be executed once and cancelled from another thread. */
+    public HttpCall newCall(HttpRequest request) {
+        return new HttpCall(this, request);
+    }
+
+    /** Blocking: executes {@code request}; non-2xx responses are returned, not thrown. */
+    public HttpResponse execute(HttpRequest request) throws IOException {
+        return newCall(request).execute();
+    }
+
+    /**
+     * Blocking: executes {@code request} and returns the body as UTF-8 text.
+     * Throws {@link HttpStatusException} for non-2xx responses.
+     */
+    public String fetchString(HttpRequest request) throws IOException {
+        return newCall(request).fetchString();
+    }
+
+    /** Blocking: like {@link #fetchString}, but returns the body bytes. */
+    public byte[] fetchBytes(HttpRequest request) throws IOException {
+        return newCall(request).fetchBytes();
+    }
+
+    List<Interceptor> interceptors() {
+        return interceptors;
+    }
+
+    // ── Per-host limits ───────────────────────────────────────────────────────
+
+    void acquireHost(String host) throws IOException {
+        Semaphore permits = hostPermits.get(host);
+        if (permits == null) {
+            hostPermits.putIfAbsent(host, new Semaphore(MAX_REQUESTS_PER_HOST, true));
+            permits = hostPermits.get(host);
+        }
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for " + host);
+        }
+    }
+
+    void releaseHost(String host) {
+        Semaphore permits = hostPermits.get(host);
+        if (permits != null) permits.release();
+    }
+
+    // ── Buffers ───────────────────────────────────────────────────────────────
+
+    /** Reads {@code in} to the end using a pooled buffer. */
+    byte[] readFully(InputStream in, int contentLength) throws IOException {
+        byte[] buf = bufferPool.acquire();
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(
+                    contentLength > 0 ? contentLength : BUFFER_SIZE);
+            int n;
+            while ((n = in.read(buf)) != -1) {
+                out.write(buf, 0, n);
+            }
+            return out.toByteArray();
+        } finally {
+            bufferPool.release(buf);
+        }
+    }
+}
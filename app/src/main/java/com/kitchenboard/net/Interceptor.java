@@ -0,0 +1,21 @@
+package com.kitchenboard.net;
+
+import java.io.IOException;
+
+/**
+ * Hook into every request made through {@link HttpTransport}, e.g. for
+ * retries or metrics. Interceptors run in the order they were added; each
+ * one calls {@link Chain#proceed} to hand the (possibly modified) request
+ * on and may inspect, replace or retry the response.
+ */
+public interface Interceptor {
+
+    HttpResponse intercept(Chain chain) throws IOException;
+
+    interface Chain {
+        HttpRequest request();
+        /** The call being executed, e.g. to check {@link HttpCall#isCanceled()}. */
+        HttpCall call();
+        HttpResponse proceed(HttpRequest request) throws IOException;
+    }
+}
@@ -0,0 +1,71 @@
+package com.kitchenboard.net;
+
+import android.os.SystemClock;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Counts requests, failures, bytes received and total time per host.
+ * {@link #snapshot()} returns a copy that can be shown or logged.
+ */
+public class MetricsInterceptor implements Interceptor {
+
+    /** Totals for one host. */
+    public static class HostStats {
+        public int requests;
+        public int failures;
+        /** 304 answers to conditional requests from {@link CacheInterceptor}. */
+        public int notModified;
+        public long bytesReceived;
+        public long totalTimeMs;
+
+        HostStats copy() {
+            HostStats s = new HostStats();
+            s.requests = requests;
+            s.failures = failures;
+            s.notModified = notModified;
+            s.bytesReceived = bytesReceived;
+            s.totalTimeMs = totalTimeMs;
+            return s;
+        }
+    }
+
+    private final Map<String, HostStats> stats = new HashMap<>();
+
+    @Override
+    public HttpResponse intercept(Chain chain) throws IOException {
+        String host = new URL(chain.request().getUrl()).getHost();
+        long start = SystemClock.elapsedRealtime();
+        HttpResponse response = null;
+        try {
+            response = chain.proceed(chain.request());
+            return response;
+        } finally {
+            record(host, SystemClock.elapsedRealtime() - start, response);
+        }
+    }
+
+    private synchronized void record(String host, long elapsedMs, HttpResponse response) {
+        HostStats s = stats.get(host);
+        if (s == null) {
+            s = new HostStats();
+            stats.put(host, s);
+        }
+        s.requests++;
+        s.totalTimeMs += elapsedMs;
+        if (response == null || response.getCode() >= 400) s.failures++;
+        if (response != null && response.getCode() == 304) s.notModified++;
+        if (response != null) s.bytesReceived += response.getBody().length;
+    }
+
+    public synchronized Map<String, HostStats> snapshot() {
+        Map<String, HostStats> copy = new HashMap<>();
+        for (Map.Entry<String, HostStats> e : stats.entrySet()) {
+            copy.put(e.getKey(), e.getValue().copy());
+        }
+        return copy;
+    }
+}
@@ -0,0 +1,38 @@
+package com.kitchenboard.net;
+
+import java.io.IOException;
+
+/**
+ * Retries idempotent requests that failed with an I/O error or a 5xx answer,
+ * waiting a little longer before each attempt. Cancelled calls and requests
+ * with side effects (POST) are never repeated.
+ */
+public class RetryInterceptor implements Interceptor {
+
+    private static final int MAX_RETRIES = 2;
+    private static final long INITIAL_DELAY_MS = 500;
+
+    @Override
+    public HttpResponse intercept(Chain chain) throws IOException {
+        HttpRequest request = chain.request();
+        if (!request.isIdempotent()) return chain.proceed(request);
+
+        long delayMs = INITIAL_DELAY_MS;
+        for (int attempt = 0; ; attempt++) {
+            try {
+                HttpResponse response = chain.proceed(request);
+                if (response.getCode() < 500 || attempt == MAX_RETRIES) return response;
+            } catch (IOException e) {
+                if (chain.call().isCanceled() || attempt == MAX_RETRIES) throw e;
+            }
+            if (chain.call().isCanceled()) throw new IOException("Canceled");
+            try {
+                Thread.sleep(delayMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted", e);
+            }
+            delayMs *= 2;
+        }
+    }
+}
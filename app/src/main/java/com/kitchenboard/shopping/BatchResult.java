@@ -0,0 +1,25 @@
+package com.kitchenboard.shopping;
+
+/**
+ * Outcome of a single operation inside an {@code action=batch} request.
+ */
+public class BatchResult {
+    private final boolean ok;
+    private final int status;
+    private final String error;
+    private final long id;
+
+    public BatchResult(boolean ok, int status, String error, long id) {
+        this.ok = ok;
+        this.status = status;
+        this.error = error;
+        this.id = id;
+    }
+
+    public boolean isOk() { return ok; }
+    /** HTTP-style status of a failed operation (e.g. 404 for an unknown item); 200 on success. */
+    public int getStatus() { return status; }
+    public String getError() { return error; }
+    /** Server id of the item created by an add operation, otherwise 0. */
+    public long getId() { return id; }
+}
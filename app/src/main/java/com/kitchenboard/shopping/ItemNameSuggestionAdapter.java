@@ -0,0 +1,55 @@
+package com.kitchenboard.shopping;
+
+import android.content.Context;
+import android.widget.ArrayAdapter;
+import android.widget.Filter;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Autocomplete adapter for item names. Instead of holding every name ever
+ * entered, it asks the FTS-backed {@link ShoppingDatabaseHelper#searchItemNames}
+ * for the best few matches on each keystroke. The query runs on the filter's
+ * worker thread, so the UI thread never touches the database.
+ */
+public class ItemNameSuggestionAdapter extends ArrayAdapter<String> {
+
+    private static final int MAX_SUGGESTIONS = 8;
+
+    private final ShoppingDatabaseHelper db;
+    private final Filter filter = new Filter() {
+        @Override
+        protected FilterResults performFiltering(CharSequence constraint) {
+            FilterResults results = new FilterResults();
+            List<String> names = constraint != null
+                    ? db.searchItemNames(constraint.toString(), MAX_SUGGESTIONS)
+                    : new ArrayList<String>();
+            results.values = names;
+            results.count = names.size();
+            return results;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        protected void publishResults(CharSequence constraint, FilterResults results) {
+            setNotifyOnChange(false);
+            clear();
+            if (results.values != null) addAll((List<String>) results.values);
+            notifyDataSetChanged();
+        }
+    };
+
+    public ItemNameSuggestionAdapter(Context context, ShoppingDatabaseHelper db) {
+        super(context, android.R.layout.simple_dropdown_item_1line, new ArrayList<String>());
+        this.db = db;
+    }
+
+    @NonNull
+    @Override
+    public Filter getFilter() {
+        return filter;
+    }
+}
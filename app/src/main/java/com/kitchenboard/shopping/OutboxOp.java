@@ -0,0 +1,46 @@
+package com.kitchenboard.shopping;
+
+/**
+ * A shopping-list mutation that has been applied locally but not yet
+ * confirmed by the sync backend. Rows live in the {@code outbox} table of
+ * {@link ShoppingDatabaseHelper} and are replayed in insertion order.
+ *
+ * The affected item is addressed by its server id when known, otherwise by
+ * the client-generated uid it was created with.
+ */
+public class OutboxOp {
+
+    public static final String ADD = "add";
+    public static final String CHECK = "check";
+    public static final String DELETE = "delete";
+    public static final String UPDATE_QUANTITY = "update_quantity";
+
+    private final long id;
+    private final String type;
+    private final String itemUid;
+    private final long remoteId;
+    private final String name;
+    private final String category;
+    private final int quantity;
+
+    public OutboxOp(long id, String type, String itemUid, long remoteId,
+                    String name, String category, int quantity) {
+        this.id = id;
+        this.type = type;
+        this.itemUid = itemUid;
+        this.remoteId = remoteId;
+        this.name = name;
+        this.category = category;
+        this.quantity = quantity;
+    }
+
+    public long getId() { return id; }
+    /** One of {@link #ADD}, {@link #CHECK}, {@link #DELETE}, {@link #UPDATE_QUANTITY}. */
+    public String getType() { return type; }
+    public String getItemUid() { return itemUid; }
+    /** Server id of the item, or 0 while its add is still pending. */
+    public long getRemoteId() { return remoteId; }
+    public String getName() { return name; }
+    public String getCategory() { return category; }
+    public int getQuantity() { return quantity; }
+}
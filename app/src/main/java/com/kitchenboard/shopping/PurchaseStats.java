@@ -0,0 +1,122 @@
+package com.kitchenboard.shopping;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Incremental purchase analytics for the shopping list.
+ *
+ * Keeps one aggregate row per item name in {@code item_stats}: how often and
+ * when it was last bought, a moving average of the interval between purchases
+ * and of the quantity, and the resulting predicted next purchase
+ * ({@code next_due}, indexed). Each check-off updates only that row, so the
+ * history in {@code shopping_items} is never rescanned, and restock
+ * suggestions are an index range scan over {@code next_due}.
+ *
+ * All methods take the caller's {@link SQLiteDatabase} so they join the
+ * caller's transaction; {@link ShoppingDatabaseHelper} owns the schema.
+ */
+final class PurchaseStats {
+
+    static final String TABLE = "item_stats";
+    static final String COL_NAME = "name";
+    static final String COL_CATEGORY = "category";
+    static final String COL_PURCHASES = "purchase_count";
+    static final String COL_LAST_PURCHASE = "last_purchase";
+    static final String COL_AVG_INTERVAL = "avg_interval_ms";
+    static final String COL_AVG_QUANTITY = "avg_quantity";
+    static final String COL_NEXT_DUE = "next_due";
+
+    /** Weight of the newest interval/quantity in the moving averages. */
+    private static final double SMOOTHING = 0.3;
+    /** Check-offs closer together than this belong to the same shopping trip. */
+    private static final long SAME_TRIP_MS = 6L * 60 * 60 * 1000;
+    /** Suggest items whose predicted purchase is at most this far ahead. */
+    static final long SUGGESTION_HORIZON_MS = 2L * 24 * 60 * 60 * 1000;
+
+    private PurchaseStats() {}
+
+    static void createSchema(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE IF NOT EXISTS " + TABLE + " (" +
+                COL_NAME + " TEXT PRIMARY KEY, " +
+                COL_CATEGORY + " TEXT NOT NULL, " +
+                COL_PURCHASES + " INTEGER NOT NULL DEFAULT 0, " +
+                COL_LAST_PURCHASE + " INTEGER NOT NULL DEFAULT 0, " +
+                COL_AVG_INTERVAL + " INTEGER NOT NULL DEFAULT 0, " +
+                COL_AVG_QUANTITY + " REAL NOT NULL DEFAULT 1, " +
+                COL_NEXT_DUE + " INTEGER)");
+        db.execSQL("CREATE INDEX IF NOT EXISTS idx_item_stats_next_due ON " +
+                TABLE + " (" + COL_NEXT_DUE + ")");
+    }
+
+    /** Folds one purchase of {@code name} at time {@code when} into its aggregate row. */
+    static void recordPurchase(SQLiteDatabase db, String name, String category,
+                               int quantity, long when) {
+        Cursor c = db.query(TABLE,
+                new String[]{COL_PURCHASES, COL_LAST_PURCHASE, COL_AVG_INTERVAL, COL_AVG_QUANTITY},
+                COL_NAME + "=?", new String[]{name}, null, null, null);
+        ContentValues cv = new ContentValues();
+        cv.put(COL_CATEGORY, category);
+        try {
+            if (!c.moveToFirst()) {
+                cv.put(COL_NAME, name);
+                cv.put(COL_PURCHASES, 1);
+                cv.put(COL_LAST_PURCHASE, when);
+                cv.put(COL_AVG_QUANTITY, quantity);
+                db.insert(TABLE, null, cv);
+                return;
+            }
+            int purchases = c.getInt(0);
+            long lastPurchase = c.getLong(1);
+            long avgInterval = c.getLong(2);
+            double avgQuantity = c.getDouble(3);
+
+            long interval = when - lastPurchase;
+            if (interval < SAME_TRIP_MS) {
+                // Same trip: it is one purchase, just a bigger one
+                cv.put(COL_AVG_QUANTITY, avgQuantity + quantity * SMOOTHING);
+            } else {
+                avgInterval = purchases == 1
+                        ? interval
+                        : Math.round(avgInterval + SMOOTHING * (interval - avgInterval));
+                cv.put(COL_PURCHASES, purchases + 1);
+                cv.put(COL_LAST_PURCHASE, when);
+                cv.put(COL_AVG_INTERVAL, avgInterval);
+                cv.put(COL_AVG_QUANTITY, avgQuantity + SMOOTHING * (quantity - avgQuantity));
+                cv.put(COL_NEXT_DUE, when + avgInterval);
+            }
+            db.update(TABLE, cv, COL_NAME + "=?", new String[]{name});
+        } finally {
+            c.close();
+        }
+    }
+
+    /**
+     * Items predicted to be needed within {@link #SUGGESTION_HORIZON_MS} of
+     * {@code now} that are not on the active list, most overdue first.
+     */
+    static List<RestockSuggestion> getSuggestions(SQLiteDatabase db, long now, int limit) {
+        List<RestockSuggestion> suggestions = new ArrayList<>();
+        Cursor c = db.rawQuery("SELECT " + COL_NAME + ", " + COL_CATEGORY + ", " +
+                        COL_AVG_QUANTITY + ", " + COL_NEXT_DUE + " FROM " + TABLE + " s" +
+                        " WHERE " + COL_NEXT_DUE + " <= ?" +
+                        " AND NOT EXISTS (SELECT 1 FROM " + ShoppingDatabaseHelper.TABLE + " i" +
+                        " WHERE i." + ShoppingDatabaseHelper.COL_NAME + " = s." + COL_NAME +
+                        " AND i." + ShoppingDatabaseHelper.COL_CHECKED + " = 0)" +
+                        " ORDER BY " + COL_NEXT_DUE + " ASC LIMIT " + limit,
+                new String[]{String.valueOf(now + SUGGESTION_HORIZON_MS)});
+        try {
+            while (c.moveToNext()) {
+                suggestions.add(new RestockSuggestion(c.getString(0), c.getString(1),
+                        Math.max(1, (int) Math.round(c.getDouble(2))), c.getLong(3)));
+            }
+        } finally {
+            c.close();
+        }
+        return suggestions;
+    }
+}
@@ -0,0 +1,27 @@
+package com.kitchenboard.shopping;
+
+/**
+ * An item that is probably running out, judged by how often it was bought
+ * in the past (see {@link PurchaseStats}).
+ */
+public class RestockSuggestion {
+    private final String name;
+    private final String category;
+    private final int quantity;
+    private final long dueAt;
+
+    public RestockSuggestion(String name, String category, int quantity, long dueAt) {
+        this.name = name;
+        this.category = category;
+        this.quantity = quantity;
+        this.dueAt = dueAt;
+    }
+
+    public String getName() { return name; }
+    /** Category the item was last bought in. */
+    public String getCategory() { return category; }
+    /** Typical quantity bought at once. */
+    public int getQuantity() { return quantity; }
+    /** Predicted time (epoch millis) of the next purchase. */
+    public long getDueAt() { return dueAt; }
+}
@@ -9,22 +9,64 @@ import android.widget.CheckBox;
 import android.widget.TextView;
 
 import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.AsyncListDiffer;
+import androidx.recyclerview.widget.DiffUtil;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.kitchenboard.R;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Displays shopping items grouped by category.
  * Each list entry is either a category header or a shopping item.
+ *
+ * New lists are diffed against the displayed one on a background thread
+ * ({@link AsyncListDiffer}), so a refresh only animates the rows that were
+ * inserted, removed, moved or changed. Rows have stable ids: items use their
+ * database id, headers an id assigned per category name.
  */
 public class ShoppingAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
 
     private static final int TYPE_HEADER = 0;
     private static final int TYPE_ITEM = 1;
 
+    /** Change payload: only the quantity of an item differs. */
+    private static final Object PAYLOAD_QUANTITY = new Object();
+
+    private static final DiffUtil.ItemCallback<Object> DIFF_CALLBACK =
+            new DiffUtil.ItemCallback<Object>() {
+                @Override
+                public boolean areItemsTheSame(@NonNull Object oldRow, @NonNull Object newRow) {
+                    if (oldRow instanceof ShoppingItem && newRow instanceof ShoppingItem) {
+                        return ((ShoppingItem) oldRow).getId() == ((ShoppingItem) newRow).getId();
+                    }
+                    return oldRow.equals(newRow);
+                }
+
+                @Override
+                public boolean areContentsTheSame(@NonNull Object oldRow, @NonNull Object newRow) {
+                    if (oldRow instanceof String) return true; // header text is its identity
+                    ShoppingItem a = (ShoppingItem) oldRow;
+                    ShoppingItem b = (ShoppingItem) newRow;
+                    return a.getQuantity() == b.getQuantity() && sameLabel(a, b);
+                }
+
+                @Override
+                public Object getChangePayload(@NonNull Object oldRow, @NonNull Object newRow) {
+                    return sameLabel((ShoppingItem) oldRow, (ShoppingItem) newRow)
+                            ? PAYLOAD_QUANTITY : null;
+                }
+
+                private boolean sameLabel(ShoppingItem a, ShoppingItem b) {
+                    return a.getName().equals(b.getName())
+                            && a.getCategory().equals(b.getCategory());
+                }
+            };
+
     public interface OnItemCheckedListener {
         void onItemChecked(ShoppingItem item);
     }
@@ -42,7 +84,9 @@ public class ShoppingAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolde
     }
 
     // Each list entry is either a String (category header) or ShoppingItem
-    private final List<Object> rows = new ArrayList<>();
+    private final AsyncListDiffer<Object> differ = new AsyncListDiffer<>(this, DIFF_CALLBACK);
+    /** Stable ids for header rows; negative so they never clash with item ids. */
+    private final Map<String, Long> headerIds = new HashMap<>();
     private OnItemCheckedListener checkedListener;
     private OnItemLongClickListener longClickListener;
     private OnQuantityChangedListener quantityChangedListener;
@@ -53,9 +97,16 @@ public class ShoppingAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolde
     public void setOnQuantityChangedListener(OnQuantityChangedListener l) { quantityChangedListener = l; }
     public void setOnShowQrListener(OnShowQrListener l) { showQrListener = l; }
 
-    /** Replaces the current data with a fresh grouped list. */
+    public ShoppingAdapter() {
+        setHasStableIds(true);
+    }
+
+    /**
+     * Replaces the current data with a fresh grouped list. The list must be
+     * sorted by category; the diff runs in the background.
+     */
     public void setItems(List<ShoppingItem> items) {
-        rows.clear();
+        List<Object> rows = new ArrayList<>(items.size() + 8);
         String lastCategory = null;
         for (ShoppingItem item : items) {
             if (!item.getCategory().equals(lastCategory)) {
@@ -64,13 +115,13 @@ public class ShoppingAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolde
             }
             rows.add(item);
         }
-        notifyDataSetChanged();
+        differ.submitList(rows);
     }
 
     /** Returns only the ShoppingItem entries (no header strings). */
     public List<ShoppingItem> getItems() {
         List<ShoppingItem> result = new ArrayList<>();
-        for (Object o : rows) {
+        for (Object o : differ.getCurrentList()) {
             if (o instanceof ShoppingItem) result.add((ShoppingItem) o);
         }
         return result;
@@ -78,7 +129,19 @@ public class ShoppingAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolde
 
     @Override
     public int getItemViewType(int position) {
-        return rows.get(position) instanceof String ? TYPE_HEADER : TYPE_ITEM;
+        return differ.getCurrentList().get(position) instanceof String ? TYPE_HEADER : TYPE_ITEM;
+    }
+
+    @Override
+    public long getItemId(int position) {
+        Object row = differ.getCurrentList().get(position);
+        if (row instanceof ShoppingItem) return ((ShoppingItem) row).getId();
+        Long id = headerIds.get(row);
+        if (id == null) {
+            id = -(headerIds.size() + 1L);
+            headerIds.put((String) row, id);
+        }
+        return id;
     }
 
     @NonNull
@@ -96,15 +159,28 @@ public class ShoppingAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolde
 
     @Override
     public void onBindViewHolder(@NonNull RecyclerView.ViewHolder holder, int position) {
+        Object row = differ.getCurrentList().get(position);
         if (holder instanceof HeaderViewHolder) {
-            ((HeaderViewHolder) holder).bind((String) rows.get(position));
+            ((HeaderViewHolder) holder).bind((String) row);
+        } else {
+            ((ItemViewHolder) holder).bind((ShoppingItem) row);
+        }
+    }
+
+    @Override
+    public void onBindViewHolder(@NonNull RecyclerView.ViewHolder holder, int position,
+                                 @NonNull List<Object> payloads) {
+        if (holder instanceof ItemViewHolder && !payloads.isEmpty()) {
+            // Only PAYLOAD_QUANTITY is ever dispatched; any other change arrives without payload
+            ((ItemViewHolder) holder).bindQuantity(
+                    (ShoppingItem) differ.getCurrentList().get(position));
         } else {
-            ((ItemViewHolder) holder).bind((ShoppingItem) rows.get(position));
+            onBindViewHolder(holder, position);
         }
     }
 
     @Override
-    public int getItemCount() { return rows.size(); }
+    public int getItemCount() { return differ.getCurrentList().size(); }
 
     // ── ViewHolders ──────────────────────────────────────────────────────────
 
@@ -128,6 +204,8 @@ public class ShoppingAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolde
         final TextView tvQuantity;
         final Button btnPlus;
         final Button btnShowQr;
+        /** Item currently bound; the click listeners always act on it. */
+        ShoppingItem item;
 
         ItemViewHolder(View v) {
             super(v);
@@ -137,13 +215,6 @@ public class ShoppingAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolde
             tvQuantity = v.findViewById(R.id.tv_quantity);
             btnPlus = v.findViewById(R.id.btn_qty_plus);
             btnShowQr = v.findViewById(R.id.btn_show_qr);
-        }
-
-        void bind(final ShoppingItem item) {
-            checkBox.setChecked(false);
-            tvName.setText(item.getName());
-            tvName.setPaintFlags(tvName.getPaintFlags() & ~Paint.STRIKE_THRU_TEXT_FLAG);
-            tvQuantity.setText(String.valueOf(item.getQuantity()));
 
             checkBox.setOnClickListener(new View.OnClickListener() {
                 @Override
@@ -159,24 +230,14 @@ public class ShoppingAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolde
             btnMinus.setOnClickListener(new View.OnClickListener() {
                 @Override
                 public void onClick(View v) {
-                    int newQty = Math.max(1, item.getQuantity() - 1);
-                    item.setQuantity(newQty);
-                    tvQuantity.setText(String.valueOf(newQty));
-                    if (quantityChangedListener != null) {
-                        quantityChangedListener.onQuantityChanged(item, newQty);
-                    }
+                    changeQuantity(Math.max(1, item.getQuantity() - 1));
                 }
             });
 
             btnPlus.setOnClickListener(new View.OnClickListener() {
                 @Override
                 public void onClick(View v) {
-                    int newQty = item.getQuantity() + 1;
-                    item.setQuantity(newQty);
-                    tvQuantity.setText(String.valueOf(newQty));
-                    if (quantityChangedListener != null) {
-                        quantityChangedListener.onQuantityChanged(item, newQty);
-                    }
+                    changeQuantity(item.getQuantity() + 1);
                 }
             });
 
@@ -200,5 +261,28 @@ public class ShoppingAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolde
                 }
             });
         }
+
+        void bind(ShoppingItem item) {
+            this.item = item;
+            checkBox.setChecked(false);
+            tvName.setText(item.getName());
+            tvName.setPaintFlags(tvName.getPaintFlags() & ~Paint.STRIKE_THRU_TEXT_FLAG);
+            tvQuantity.setText(String.valueOf(item.getQuantity()));
+        }
+
+        /** Partial rebind for a quantity-only change. */
+        void bindQuantity(ShoppingItem item) {
+            this.item = item;
+            tvQuantity.setText(String.valueOf(item.getQuantity()));
+        }
+
+        private void changeQuantity(int newQty) {
+            // The displayed row object is updated in place so the next diff sees no change
+            item.setQuantity(newQty);
+            tvQuantity.setText(String.valueOf(newQty));
+            if (quantityChangedListener != null) {
+                quantityChangedListener.onQuantityChanged(item, newQty);
+            }
+        }
     }
 }
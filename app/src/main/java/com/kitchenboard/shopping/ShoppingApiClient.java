@@ -3,25 +3,29 @@ package com.kitchenboard.shopping;
 import android.os.Handler;
 import android.os.Looper;
 
+import com.kitchenboard.net.HttpCall;
+import com.kitchenboard.net.HttpRequest;
+import com.kitchenboard.net.HttpStatusException;
+import com.kitchenboard.net.HttpTransport;
+import com.kitchenboard.task.TaskScheduler;
+
 import org.json.JSONArray;
 import org.json.JSONObject;
 
-import java.io.BufferedReader;
-import java.io.InputStreamReader;
-import java.io.OutputStream;
-import java.net.HttpURLConnection;
-import java.net.URL;
+import java.io.IOException;
+import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 
 /**
  * HTTP client for the 4KitchenBoard shopping-list sync backend (backend/api.php).
  *
- * All methods execute the network call on a background thread and deliver
- * results back on the main (UI) thread via the supplied callback.
+ * All methods execute the network call on the shared network pool of
+ * {@link TaskScheduler} and deliver results back on the main (UI) thread via
+ * the supplied callback. Requests go through the shared {@link HttpTransport}.
+ * Instances hold no threads except the push listener, which stops with
+ * {@link #stopListening()}.
  */
 public class ShoppingApiClient {
 
@@ -31,40 +35,54 @@ public class ShoppingApiClient {
         void onError(String message);
     }
 
+    /** Upper bound on operations per {@code action=batch} request. */
+    private static final int MAX_BATCH_SIZE = 100;
+    /** How long the server holds a long-poll request open. */
+    private static final int WAIT_TIMEOUT_S = 25;
+    private static final long LISTEN_RETRY_DELAY_MS = 2_000;
+    private static final long MAX_LISTEN_RETRY_DELAY_MS = 60_000;
+    private static final int TIMEOUT_MS = 8000;
+
     private final String baseUrl;
+    private final HttpTransport transport = HttpTransport.get();
     private final Handler mainHandler = new Handler(Looper.getMainLooper());
-    private final ExecutorService executor = Executors.newFixedThreadPool(2);
+    private PushListener pushListener;
 
     /**
      * @param baseUrl Full URL of api.php, e.g. {@code http://192.168.1.10/kitchenboard/api.php}
      */
     public ShoppingApiClient(String baseUrl) {
-        // Normalise: strip trailing slash
-        this.baseUrl = baseUrl.endsWith("/") ? baseUrl.substring(0, baseUrl.length() - 1) : baseUrl;
+        this.baseUrl = normalizeUrl(baseUrl);
+    }
+
+    /** Whether this client talks to {@code url}, so it can be kept instead of replaced. */
+    public boolean hasBaseUrl(String url) {
+        return baseUrl.equals(normalizeUrl(url));
+    }
+
+    private static String normalizeUrl(String url) {
+        // Strip trailing slash
+        return url.endsWith("/") ? url.substring(0, url.length() - 1) : url;
     }
 
     // ── Public API ────────────────────────────────────────────────────────────
 
-    /** Fetch all active (unchecked) items from the server. */
-    public void fetchItems(final Callback<List<ShoppingItem>> callback) {
+    /**
+     * Brings the local mirror in {@code db} up to date and returns the active
+     * synced items. Only rows changed since the last synced revision are
+     * downloaded; the very first sync fetches a full snapshot.
+     * The database work happens on the background thread as well.
+     */
+    public void syncItems(final ShoppingDatabaseHelper db,
+                          final Callback<List<ShoppingItem>> callback) {
         runAsync(new Runnable() {
             @Override
             public void run() {
                 try {
-                    String response = httpGet(baseUrl + "?action=list");
-                    JSONObject json = new JSONObject(response);
-                    JSONArray arr = json.getJSONArray("items");
-                    final List<ShoppingItem> items = new ArrayList<>();
-                    for (int i = 0; i < arr.length(); i++) {
-                        JSONObject obj = arr.getJSONObject(i);
-                        items.add(new ShoppingItem(
-                                obj.getLong("id"),
-                                obj.getString("name"),
-                                obj.getString("category"),
-                                false,
-                                obj.optInt("quantity", 1)));
-                    }
-                    postSuccess(callback, items);
+                    long since = db.getSyncRevision(baseUrl);
+                    ShoppingDelta delta = fetchDelta(since);
+                    db.applySyncDelta(baseUrl, delta);
+                    postSuccess(callback, db.getSyncedItems());
                 } catch (final Exception e) {
                     postError(callback, e.getMessage());
                 }
@@ -72,26 +90,44 @@ public class ShoppingApiClient {
         });
     }
 
-    /** Add a new item on the server. Returns the created item (with server-assigned id). */
-    public void addItem(final String name, final String category, final int quantity,
-                        final Callback<ShoppingItem> callback) {
+    /**
+     * Sends the mutations waiting in the outbox of {@code db} to the server and
+     * removes each one once the server has accepted it. Pending operations go
+     * out as {@code action=batch} requests of up to {@link #MAX_BATCH_SIZE}
+     * operations, so a burst of local changes costs a single round trip.
+     * Stops at the first network or server failure and reports it; whatever was
+     * not sent stays queued for the next attempt. Operations the server rejects
+     * as invalid (HTTP 4xx) are dropped so they cannot block the queue.
+     * On success the callback receives the number of operations sent.
+     */
+    public void replayOutbox(final ShoppingDatabaseHelper db, final Callback<Integer> callback) {
         runAsync(new Runnable() {
             @Override
             public void run() {
+                int sent = 0;
                 try {
-                    String body = "action=add"
-                            + "&name=" + encode(name)
-                            + "&category=" + encode(category)
-                            + "&quantity=" + quantity;
-                    String response = httpPost(baseUrl, body);
-                    JSONObject json = new JSONObject(response);
-                    final ShoppingItem item = new ShoppingItem(
-                            json.getLong("id"),
-                            json.getString("name"),
-                            json.getString("category"),
-                            false,
-                            json.optInt("quantity", 1));
-                    postSuccess(callback, item);
+                    List<OutboxOp> pending = db.getPendingOps();
+                    for (int from = 0; from < pending.size(); from += MAX_BATCH_SIZE) {
+                        List<OutboxOp> chunk = pending.subList(from,
+                                Math.min(from + MAX_BATCH_SIZE, pending.size()));
+                        List<BatchResult> results = sendBatch(chunk);
+                        List<OutboxOp> done = new ArrayList<>();
+                        List<Long> remoteIds = new ArrayList<>();
+                        for (int i = 0; i < chunk.size(); i++) {
+                            BatchResult result = results.get(i);
+                            if (!result.isOk() && (result.getStatus() < 400 || result.getStatus() >= 500)) {
+                                break;
+                            }
+                            done.add(chunk.get(i));
+                            remoteIds.add(result.isOk() ? result.getId() : 0L);
+                        }
+                        db.completeOps(done, remoteIds);
+                        sent += done.size();
+                        if (done.size() < chunk.size()) {
+                            throw new HttpStatusException(results.get(done.size()).getStatus());
+                        }
+                    }
+                    postSuccess(callback, sent);
                 } catch (final Exception e) {
                     postError(callback, e.getMessage());
                 }
@@ -99,14 +135,16 @@ public class ShoppingApiClient {
         });
     }
 
-    /** Update the quantity of an item on the server. */
-    public void updateItemQuantity(final long id, final int quantity, final Callback<Void> callback) {
+    /**
+     * Performs {@code ops} in one request and one server transaction. The
+     * callback receives one result per operation, in the same order.
+     */
+    public void batch(final List<OutboxOp> ops, final Callback<List<BatchResult>> callback) {
         runAsync(new Runnable() {
             @Override
             public void run() {
                 try {
-                    httpPost(baseUrl, "action=update_quantity&id=" + id + "&quantity=" + quantity);
-                    postSuccess(callback, null);
+                    postSuccess(callback, sendBatch(ops));
                 } catch (final Exception e) {
                     postError(callback, e.getMessage());
                 }
@@ -114,94 +152,218 @@ public class ShoppingApiClient {
         });
     }
 
-    /** Mark an item as checked (bought) on the server. */
-    public void checkItem(final long id, final Callback<Void> callback) {
-        runAsync(new Runnable() {
-            @Override
-            public void run() {
-                try {
-                    httpPost(baseUrl, "action=check&id=" + id);
-                    postSuccess(callback, null);
-                } catch (final Exception e) {
-                    postError(callback, e.getMessage());
-                }
-            }
-        });
+    /**
+     * Starts a background thread that long-polls {@code action=wait} and
+     * merges every change the server reports into {@code db}. Whenever the
+     * mirror changed, {@code callback} receives the active synced items.
+     * Connection problems are reported via {@code onError} and retried with
+     * backoff; the thread ends on {@link #stopListening()} or when the server
+     * does not support waiting.
+     */
+    public synchronized void startListening(ShoppingDatabaseHelper db,
+                                            Callback<List<ShoppingItem>> callback) {
+        stopListening();
+        pushListener = new PushListener(db, callback);
+        pushListener.start();
     }
 
-    /** Permanently delete an item on the server. */
-    public void deleteItem(final long id, final Callback<Void> callback) {
-        runAsync(new Runnable() {
-            @Override
-            public void run() {
+    public synchronized void stopListening() {
+        if (pushListener != null) {
+            pushListener.shutdown();
+            pushListener = null;
+        }
+    }
+
+    // ── Push listener ─────────────────────────────────────────────────────────
+
+    /** Dedicated thread that keeps one long-poll request open at a time. */
+    private class PushListener extends Thread {
+        private final ShoppingDatabaseHelper db;
+        private final Callback<List<ShoppingItem>> callback;
+        private volatile boolean stopped;
+        private volatile HttpCall currentCall;
+
+        PushListener(ShoppingDatabaseHelper db, Callback<List<ShoppingItem>> callback) {
+            super("ShoppingPushListener");
+            this.db = db;
+            this.callback = callback;
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            long retryDelayMs = LISTEN_RETRY_DELAY_MS;
+            while (!stopped) {
                 try {
-                    httpPost(baseUrl, "action=delete&id=" + id);
-                    postSuccess(callback, null);
-                } catch (final Exception e) {
-                    postError(callback, e.getMessage());
+                    long since = db.getSyncRevision(baseUrl);
+                    HttpCall call = transport.newCall(jsonRequest(
+                            baseUrl + "?action=wait&since=" + since + "&timeout=" + WAIT_TIMEOUT_S)
+                            .timeouts(TIMEOUT_MS, (WAIT_TIMEOUT_S + 10) * 1000)
+                            // Every poll has a new since; nothing to revalidate
+                            .header("Cache-Control", "no-store")
+                            .build());
+                    currentCall = call;
+                    if (stopped) break;
+                    ShoppingDelta delta = parseDelta(call.fetchString());
+                    if (stopped) break;
+                    retryDelayMs = LISTEN_RETRY_DELAY_MS;
+                    if (delta.isFull() || delta.getRevision() != since) {
+                        db.applySyncDelta(baseUrl, delta);
+                        postSuccess(callback, db.getSyncedItems());
+                    }
+                } catch (HttpStatusException e) {
+                    // Servers without action=wait answer 400; polling on resume still works
+                    if (e.isClientError()) break;
+                    retryDelayMs = backOff(retryDelayMs, e);
+                } catch (Exception e) {
+                    if (stopped) break;
+                    retryDelayMs = backOff(retryDelayMs, e);
                 }
             }
-        });
+        }
+
+        private long backOff(long delayMs, Exception e) {
+            postError(callback, e.getMessage());
+            try {
+                Thread.sleep(delayMs);
+            } catch (InterruptedException ie) {
+                stopped = true;
+            }
+            return Math.min(delayMs * 2, MAX_LISTEN_RETRY_DELAY_MS);
+        }
+
+        void shutdown() {
+            stopped = true;
+            interrupt();
+            HttpCall call = currentCall;
+            if (call != null) call.cancel();
+        }
     }
 
-    // ── HTTP helpers ──────────────────────────────────────────────────────────
+    // ── Batch encoding ────────────────────────────────────────────────────────
 
-    private static String httpGet(String urlString) throws Exception {
-        URL url = new URL(urlString);
-        HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-        conn.setRequestMethod("GET");
-        conn.setConnectTimeout(8000);
-        conn.setReadTimeout(8000);
-        conn.setRequestProperty("Accept", "application/json");
-        return readResponse(conn);
-    }
-
-    private static String httpPost(String urlString, String body) throws Exception {
-        URL url = new URL(urlString);
-        HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-        conn.setRequestMethod("POST");
-        conn.setConnectTimeout(8000);
-        conn.setReadTimeout(8000);
-        conn.setDoOutput(true);
-        conn.setRequestProperty("Content-Type", "application/x-www-form-urlencoded");
-        conn.setRequestProperty("Accept", "application/json");
-
-        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
-        conn.setRequestProperty("Content-Length", String.valueOf(bytes.length));
-        try (OutputStream os = conn.getOutputStream()) {
-            os.write(bytes);
+    /** Blocking: sends {@code ops} as one {@code action=batch} request. */
+    private List<BatchResult> sendBatch(List<OutboxOp> ops) throws Exception {
+        JSONArray arr = new JSONArray();
+        for (OutboxOp op : ops) {
+            arr.put(toJson(op));
         }
-        return readResponse(conn);
+        String response = httpPost(baseUrl, "action=batch&ops=" + encode(arr.toString()));
+        JSONArray resultArr = new JSONObject(response).getJSONArray("results");
+        if (resultArr.length() != ops.size()) {
+            throw new Exception("Batch returned " + resultArr.length()
+                    + " results for " + ops.size() + " operations");
+        }
+        List<BatchResult> results = new ArrayList<>();
+        for (int i = 0; i < resultArr.length(); i++) {
+            JSONObject obj = resultArr.getJSONObject(i);
+            results.add(new BatchResult(
+                    obj.getBoolean("ok"),
+                    obj.optInt("status", 200),
+                    obj.optString("error", null),
+                    obj.optLong("id", 0)));
+        }
+        return results;
     }
 
-    private static String readResponse(HttpURLConnection conn) throws Exception {
-        int code = conn.getResponseCode();
-        if (code < 200 || code >= 300) {
-            conn.disconnect();
-            throw new Exception("HTTP " + code);
+    private static JSONObject toJson(OutboxOp op) throws Exception {
+        JSONObject obj = new JSONObject();
+        obj.put("op", op.getType());
+        if (op.getRemoteId() > 0 && !OutboxOp.ADD.equals(op.getType())) {
+            obj.put("id", op.getRemoteId());
+        } else {
+            obj.put("uid", op.getItemUid());
         }
-        StringBuilder sb = new StringBuilder();
-        try (BufferedReader reader = new BufferedReader(
-                new InputStreamReader(conn.getInputStream(), StandardCharsets.UTF_8))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                sb.append(line);
+        switch (op.getType()) {
+            case OutboxOp.ADD:
+                obj.put("name", op.getName());
+                obj.put("category", op.getCategory());
+                obj.put("quantity", op.getQuantity());
+                break;
+            case OutboxOp.UPDATE_QUANTITY:
+                obj.put("quantity", op.getQuantity());
+                break;
+            default:
+                break;
+        }
+        return obj;
+    }
+
+    // ── Delta parsing ─────────────────────────────────────────────────────────
+
+    /** Blocking: downloads the changes since {@code since} (0 = full snapshot). */
+    private ShoppingDelta fetchDelta(long since) throws Exception {
+        if (since <= 0) return parseDelta(httpGet(baseUrl + "?action=list"));
+        // Every delta has a new since; caching it would only push out entries that are reused
+        return parseDelta(transport.fetchString(jsonRequest(
+                baseUrl + "?action=list&since=" + since)
+                .header("Cache-Control", "no-store")
+                .build()));
+    }
+
+    private static ShoppingDelta parseDelta(String body) throws Exception {
+        JSONObject json = new JSONObject(body);
+
+        long revision = json.optLong("rev", 0);
+        // Servers without delta support only know the plain full list
+        boolean full = json.optBoolean("full", true);
+        List<ShoppingItem> changed = parseItems(json.getJSONArray("items"));
+        JSONArray checkedArr = json.optJSONArray("checked");
+        List<ShoppingItem> checked = checkedArr != null
+                ? parseItems(checkedArr) : new ArrayList<ShoppingItem>();
+        List<Long> deleted = new ArrayList<>();
+        JSONArray deletedArr = json.optJSONArray("deleted");
+        if (deletedArr != null) {
+            for (int i = 0; i < deletedArr.length(); i++) {
+                deleted.add(deletedArr.getLong(i));
             }
-        } finally {
-            conn.disconnect();
         }
-        return sb.toString();
+        return new ShoppingDelta(revision, full, changed, checked, deleted);
+    }
+
+    private static List<ShoppingItem> parseItems(JSONArray arr) throws Exception {
+        List<ShoppingItem> items = new ArrayList<>(arr.length());
+        for (int i = 0; i < arr.length(); i++) {
+            JSONObject obj = arr.getJSONObject(i);
+            long id = obj.getLong("id");
+            // Rows created before the server knew about uids are identified by id
+            String uid = obj.isNull("uid") ? "srv-" + id : obj.getString("uid");
+            items.add(new ShoppingItem(
+                    id,
+                    obj.getString("name"),
+                    obj.getString("category"),
+                    false,
+                    obj.optInt("quantity", 1),
+                    uid));
+        }
+        return items;
+    }
+
+    // ── HTTP helpers ──────────────────────────────────────────────────────────
+
+    private static HttpRequest.Builder jsonRequest(String url) {
+        return new HttpRequest.Builder(url)
+                .header("Accept", "application/json")
+                .timeouts(TIMEOUT_MS, TIMEOUT_MS);
+    }
+
+    private String httpGet(String url) throws IOException {
+        return transport.fetchString(jsonRequest(url).build());
+    }
+
+    private String httpPost(String url, String body) throws IOException {
+        return transport.fetchString(jsonRequest(url).postForm(body).build());
     }
 
     /** URL-encode a string value for an application/x-www-form-urlencoded body. */
     private static String encode(String value) {
-        return java.net.URLEncoder.encode(value, StandardCharsets.UTF_8);
+        return URLEncoder.encode(value, StandardCharsets.UTF_8);
     }
 
     // ── Thread helpers ────────────────────────────────────────────────────────
 
     private void runAsync(Runnable task) {
-        executor.execute(task);
+        TaskScheduler.network().execute(task);
     }
 
     private <T> void postSuccess(final Callback<T> cb, final T result) {
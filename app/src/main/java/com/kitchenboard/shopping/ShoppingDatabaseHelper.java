@@ -3,17 +3,24 @@ package com.kitchenboard.shopping;
 import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteException;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
+import android.os.Build;
 
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.UUID;
 
 public class ShoppingDatabaseHelper extends SQLiteOpenHelper {
 
     private static final String DB_NAME = "shopping.db";
-    private static final int DB_VERSION = 3;
+    private static final int DB_VERSION = 10;
 
     static final String TABLE = "shopping_items";
     static final String COL_ID = "_id";
@@ -22,13 +29,62 @@ public class ShoppingDatabaseHelper extends SQLiteOpenHelper {
     static final String COL_CHECKED = "checked";
     static final String COL_CREATED = "created_at";
     static final String COL_QUANTITY = "quantity";
+    /** Server id for rows mirrored from the sync backend; NULL for local-only items. */
+    static final String COL_REMOTE_ID = "remote_id";
+    /**
+     * Stable identity of items on the synced list, generated by whichever client
+     * created the item (or derived from the server id for older server rows).
+     * NULL for local-only items.
+     */
+    static final String COL_UID = "uid";
+    /** When the item was checked off; NULL for active rows and rows checked before version 9. */
+    static final String COL_CHECKED_AT = "checked_at";
+
+    /** Per name/category purchase totals of checked rows removed by {@link #compactHistory}. */
+    static final String TABLE_ARCHIVE = "purchase_archive";
+    static final String COL_ARCH_NAME = "name";
+    static final String COL_ARCH_CATEGORY = "category";
+    static final String COL_ARCH_COUNT = "purchase_count";
+    static final String COL_ARCH_QUANTITY = "quantity_total";
+    static final String COL_ARCH_LAST = "last_purchase";
 
     static final String TABLE_CATEGORIES = "categories";
     static final String COL_CAT_ID = "_id";
     static final String COL_CAT_NAME = "name";
 
+    static final String TABLE_SYNC_STATE = "sync_state";
+    static final String COL_STATE_KEY = "key";
+    static final String COL_STATE_VALUE = "value";
+
+    static final String TABLE_OUTBOX = "outbox";
+    static final String COL_OP_ID = "_id";
+    static final String COL_OP_TYPE = "op";
+    static final String COL_OP_ITEM_UID = "item_uid";
+    static final String COL_OP_REMOTE_ID = "remote_id";
+    static final String COL_OP_NAME = "name";
+    static final String COL_OP_CATEGORY = "category";
+    static final String COL_OP_QUANTITY = "quantity";
+    static final String COL_OP_CREATED = "created_at";
+
+    /** One row per distinct item name ever added, with how often and when it was last used. */
+    static final String TABLE_NAME_HISTORY = "item_history";
+    static final String COL_HIST_ID = "_id";
+    static final String COL_HIST_NAME = "name";
+    static final String COL_HIST_USE_COUNT = "use_count";
+    static final String COL_HIST_LAST_USED = "last_used";
+    /** FTS4 index over item_history.name; docid = item_history._id. */
+    static final String TABLE_NAME_FTS = "item_history_fts";
+
+    /** Age at which a name's usage counts half as much for suggestion ranking. */
+    private static final long SUGGESTION_HALF_WEIGHT_AGE_MS = 30L * 24 * 60 * 60 * 1000;
+
+    private static final String STATE_SERVER_URL = "server_url";
+    private static final String STATE_REVISION = "revision";
+
     public ShoppingDatabaseHelper(Context context) {
         super(context, DB_NAME, null, DB_VERSION);
+        // Readers (UI loads) no longer wait for sync writes and vice versa
+        setWriteAheadLoggingEnabled(true);
     }
 
     @Override
@@ -39,10 +95,113 @@ public class ShoppingDatabaseHelper extends SQLiteOpenHelper {
                 COL_CATEGORY + " TEXT NOT NULL, " +
                 COL_CHECKED + " INTEGER DEFAULT 0, " +
                 COL_CREATED + " INTEGER DEFAULT 0, " +
-                COL_QUANTITY + " INTEGER DEFAULT 1)");
+                COL_QUANTITY + " INTEGER DEFAULT 1, " +
+                COL_REMOTE_ID + " INTEGER, " +
+                COL_UID + " TEXT, " +
+                COL_CHECKED_AT + " INTEGER)");
         db.execSQL("CREATE TABLE " + TABLE_CATEGORIES + " (" +
                 COL_CAT_ID + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
                 COL_CAT_NAME + " TEXT NOT NULL UNIQUE)");
+        createSyncSchema(db);
+        createOutboxSchema(db);
+        createQueryIndexes(db);
+        createNameHistorySchema(db);
+        PurchaseStats.createSchema(db);
+        createArchiveSchema(db);
+    }
+
+    @Override
+    public void onConfigure(SQLiteDatabase db) {
+        // Takes effect for newly created files; older ones are converted by compactHistory()
+        db.execSQL("PRAGMA auto_vacuum = INCREMENTAL");
+    }
+
+    private static void createArchiveSchema(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE IF NOT EXISTS " + TABLE_ARCHIVE + " (" +
+                COL_ARCH_NAME + " TEXT NOT NULL, " +
+                COL_ARCH_CATEGORY + " TEXT NOT NULL, " +
+                COL_ARCH_COUNT + " INTEGER NOT NULL DEFAULT 0, " +
+                COL_ARCH_QUANTITY + " INTEGER NOT NULL DEFAULT 0, " +
+                COL_ARCH_LAST + " INTEGER NOT NULL DEFAULT 0, " +
+                "PRIMARY KEY (" + COL_ARCH_NAME + ", " + COL_ARCH_CATEGORY + "))");
+    }
+
+    private static void createSyncSchema(SQLiteDatabase db) {
+        db.execSQL("CREATE UNIQUE INDEX IF NOT EXISTS idx_items_remote_id ON " +
+                TABLE + " (" + COL_REMOTE_ID + ")");
+        db.execSQL("CREATE TABLE IF NOT EXISTS " + TABLE_SYNC_STATE + " (" +
+                COL_STATE_KEY + " TEXT PRIMARY KEY, " +
+                COL_STATE_VALUE + " TEXT)");
+    }
+
+    private static void createOutboxSchema(SQLiteDatabase db) {
+        db.execSQL("CREATE UNIQUE INDEX IF NOT EXISTS idx_items_uid ON " +
+                TABLE + " (" + COL_UID + ")");
+        db.execSQL("CREATE TABLE IF NOT EXISTS " + TABLE_OUTBOX + " (" +
+                COL_OP_ID + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                COL_OP_TYPE + " TEXT NOT NULL, " +
+                COL_OP_ITEM_UID + " TEXT NOT NULL, " +
+                COL_OP_REMOTE_ID + " INTEGER, " +
+                COL_OP_NAME + " TEXT, " +
+                COL_OP_CATEGORY + " TEXT, " +
+                COL_OP_QUANTITY + " INTEGER, " +
+                COL_OP_CREATED + " INTEGER DEFAULT 0)");
+    }
+
+    /**
+     * The active list is a small slice of a table that keeps every bought item,
+     * so it gets a partial index matching its ORDER BY. The queries must use the
+     * literal {@code checked=0} (not a bound argument) for SQLite to pick it.
+     * Partial indexes need SQLite 3.8.0 (API 21); older devices get a full
+     * index led by {@code checked}, which serves the same queries.
+     */
+    private static void createQueryIndexes(SQLiteDatabase db) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+            db.execSQL("CREATE INDEX IF NOT EXISTS idx_items_active ON " + TABLE + " (" +
+                    COL_CATEGORY + ", " + COL_NAME + ") WHERE " + COL_CHECKED + "=0");
+        } else {
+            db.execSQL("CREATE INDEX IF NOT EXISTS idx_items_active ON " + TABLE + " (" +
+                    COL_CHECKED + ", " + COL_CATEGORY + ", " + COL_NAME + ")");
+        }
+        db.execSQL("CREATE INDEX IF NOT EXISTS idx_items_name ON " + TABLE + " (" +
+                COL_NAME + ")");
+    }
+
+    private static void createNameHistorySchema(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE IF NOT EXISTS " + TABLE_NAME_HISTORY + " (" +
+                COL_HIST_ID + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                COL_HIST_NAME + " TEXT NOT NULL UNIQUE, " +
+                COL_HIST_USE_COUNT + " INTEGER NOT NULL DEFAULT 0, " +
+                COL_HIST_LAST_USED + " INTEGER NOT NULL DEFAULT 0)");
+        // FTS4 with the default tokenizer is available on every supported API level.
+        // That tokenizer folds ASCII case only, so names are indexed in lower case
+        // (see ftsName) to let "äpf" find "Äpfel".
+        db.execSQL("CREATE VIRTUAL TABLE IF NOT EXISTS " + TABLE_NAME_FTS +
+                " USING fts4(" + COL_HIST_NAME + ")");
+    }
+
+    /** Fills the name index from {@code item_history}, replacing what it held. */
+    private static void rebuildNameIndex(SQLiteDatabase db) {
+        db.execSQL("DELETE FROM " + TABLE_NAME_FTS);
+        SQLiteStatement insert = db.compileStatement("INSERT INTO " + TABLE_NAME_FTS +
+                " (docid, " + COL_HIST_NAME + ") VALUES (?, ?)");
+        Cursor c = db.query(TABLE_NAME_HISTORY, new String[]{COL_HIST_ID, COL_HIST_NAME},
+                null, null, null, null, null);
+        try {
+            while (c.moveToNext()) {
+                insert.bindLong(1, c.getLong(0));
+                insert.bindString(2, ftsName(c.getString(1)));
+                insert.executeInsert();
+            }
+        } finally {
+            c.close();
+            insert.close();
+        }
+    }
+
+    /** The form of a name stored in and searched against the FTS index. */
+    private static String ftsName(String name) {
+        return name.toLowerCase(Locale.GERMANY);
     }
 
     @Override
@@ -55,6 +214,72 @@ public class ShoppingDatabaseHelper extends SQLiteOpenHelper {
                 // Column may already exist if upgrade runs twice; ignore.
             }
         }
+        if (oldVersion < 4) {
+            try {
+                db.execSQL("ALTER TABLE " + TABLE + " ADD COLUMN " + COL_REMOTE_ID + " INTEGER");
+            } catch (SQLiteException ignored) {
+                // Column may already exist if upgrade runs twice; ignore.
+            }
+            createSyncSchema(db);
+        }
+        if (oldVersion < 5) {
+            try {
+                db.execSQL("ALTER TABLE " + TABLE + " ADD COLUMN " + COL_UID + " TEXT");
+            } catch (SQLiteException ignored) {
+                // Column may already exist if upgrade runs twice; ignore.
+            }
+            // Give rows mirrored by version 4 the identity the server derives for them
+            db.execSQL("UPDATE " + TABLE + " SET " + COL_UID + " = 'srv-' || " + COL_REMOTE_ID +
+                    " WHERE " + COL_REMOTE_ID + " IS NOT NULL");
+            createOutboxSchema(db);
+        }
+        if (oldVersion < 6) {
+            createQueryIndexes(db);
+        }
+        if (oldVersion < 7) {
+            createNameHistorySchema(db);
+            // Seed the suggestion history from the items recorded so far
+            db.execSQL("INSERT OR IGNORE INTO " + TABLE_NAME_HISTORY + " (" +
+                    COL_HIST_NAME + ", " + COL_HIST_USE_COUNT + ", " + COL_HIST_LAST_USED + ") " +
+                    "SELECT " + COL_NAME + ", COUNT(*), MAX(" + COL_CREATED + ") FROM " + TABLE +
+                    " GROUP BY " + COL_NAME);
+            rebuildNameIndex(db);
+        }
+        if (oldVersion < 8) {
+            PurchaseStats.createSchema(db);
+            backfillPurchaseStats(db);
+        }
+        if (oldVersion < 9) {
+            try {
+                db.execSQL("ALTER TABLE " + TABLE + " ADD COLUMN " + COL_CHECKED_AT + " INTEGER");
+            } catch (SQLiteException ignored) {
+                // Column may already exist if upgrade runs twice; ignore.
+            }
+            createArchiveSchema(db);
+        }
+        if (oldVersion >= 7 && oldVersion < 10) {
+            // Index names in lower case; earlier versions stored them as entered
+            rebuildNameIndex(db);
+        }
+    }
+
+    /**
+     * One-time seeding of {@link PurchaseStats} from the checked rows kept so
+     * far. Check-off times were never stored, so the time an item was added
+     * stands in for its purchase.
+     */
+    private static void backfillPurchaseStats(SQLiteDatabase db) {
+        Cursor c = db.query(TABLE,
+                new String[]{COL_NAME, COL_CATEGORY, COL_QUANTITY, COL_CREATED},
+                COL_CHECKED + "=1", null, null, null, COL_CREATED + " ASC");
+        try {
+            while (c.moveToNext()) {
+                PurchaseStats.recordPurchase(db, c.getString(0), c.getString(1),
+                        c.getInt(2), c.getLong(3));
+            }
+        } finally {
+            c.close();
+        }
     }
 
     /** Insert a new unchecked item. Returns the new row id. */
@@ -65,7 +290,16 @@ public class ShoppingDatabaseHelper extends SQLiteOpenHelper {
         cv.put(COL_CHECKED, 0);
         cv.put(COL_CREATED, System.currentTimeMillis());
         cv.put(COL_QUANTITY, quantity < 1 ? 1 : quantity);
-        return getWritableDatabase().insert(TABLE, null, cv);
+        SQLiteDatabase db = getWritableDatabase();
+        db.beginTransaction();
+        try {
+            long id = db.insert(TABLE, null, cv);
+            recordItemName(db, name);
+            db.setTransactionSuccessful();
+            return id;
+        } finally {
+            db.endTransaction();
+        }
     }
 
     /** Insert a new unchecked item with quantity 1. */
@@ -73,12 +307,47 @@ public class ShoppingDatabaseHelper extends SQLiteOpenHelper {
         return addItem(name, category, 1);
     }
 
-    /** Mark an item as checked (bought) — it will be hidden from the active list. */
+    /**
+     * Mark an item as checked (bought) — it will be hidden from the active list.
+     * The purchase is recorded in {@link PurchaseStats}.
+     */
     public void checkItem(long id) {
-        ContentValues cv = new ContentValues();
-        cv.put(COL_CHECKED, 1);
-        getWritableDatabase().update(TABLE, cv, COL_ID + "=?",
-                new String[]{String.valueOf(id)});
+        SQLiteDatabase db = getWritableDatabase();
+        db.beginTransaction();
+        try {
+            markChecked(db, id);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /** Checks off an active row and records the purchase. Returns false if it was not active. */
+    private static boolean markChecked(SQLiteDatabase db, long id) {
+        String[] idArg = {String.valueOf(id)};
+        Cursor c = db.query(TABLE, new String[]{COL_NAME, COL_CATEGORY, COL_QUANTITY},
+                COL_ID + "=? AND " + COL_CHECKED + "=0", idArg, null, null, null);
+        try {
+            if (!c.moveToFirst()) return false;
+            long now = System.currentTimeMillis();
+            ContentValues cv = new ContentValues();
+            cv.put(COL_CHECKED, 1);
+            cv.put(COL_CHECKED_AT, now);
+            db.update(TABLE, cv, COL_ID + "=?", idArg);
+            PurchaseStats.recordPurchase(db, c.getString(0), c.getString(1), c.getInt(2), now);
+            return true;
+        } finally {
+            c.close();
+        }
+    }
+
+    /**
+     * Items that past purchases suggest will be needed within the next days
+     * and are not on the list yet, most overdue first.
+     */
+    public List<RestockSuggestion> getRestockSuggestions(int limit) {
+        return PurchaseStats.getSuggestions(getReadableDatabase(),
+                System.currentTimeMillis(), limit);
     }
 
     /** Permanently delete an item. */
@@ -95,12 +364,12 @@ public class ShoppingDatabaseHelper extends SQLiteOpenHelper {
                 new String[]{String.valueOf(id)});
     }
 
-    /** Returns all unchecked items, ordered by category then name. */
+    /** Returns all unchecked local-only items, ordered by category then name. */
     public List<ShoppingItem> getActiveItems() {
         List<ShoppingItem> items = new ArrayList<>();
         Cursor c = getReadableDatabase().query(TABLE,
                 new String[]{COL_ID, COL_NAME, COL_CATEGORY, COL_CHECKED, COL_QUANTITY},
-                COL_CHECKED + "=?", new String[]{"0"}, null, null,
+                COL_CHECKED + "=0 AND " + COL_UID + " IS NULL", null, null, null,
                 COL_CATEGORY + " ASC, " + COL_NAME + " ASC");
         while (c.moveToNext()) {
             items.add(new ShoppingItem(
@@ -139,19 +408,469 @@ public class ShoppingDatabaseHelper extends SQLiteOpenHelper {
     }
 
     /**
-     * Returns all distinct item names ever added (including checked ones)
-     * for autocomplete suggestions, ordered alphabetically.
+     * Returns up to {@code limit} previously used item names with a word
+     * starting with each word of {@code query}, for autocomplete. Names used
+     * often and recently come first. Served from the FTS index, so the cost
+     * depends on the number of matches rather than on the size of the history.
      */
-    public List<String> getAllItemNames() {
+    public List<String> searchItemNames(String query, int limit) {
         List<String> names = new ArrayList<>();
-        // COL_NAME and TABLE are compile-time constants – safe to interpolate
-        Cursor c = getReadableDatabase().query(
-                TABLE, new String[]{"DISTINCT " + COL_NAME},
-                null, null, COL_NAME, null, COL_NAME + " ASC");
-        while (c.moveToNext()) {
-            names.add(c.getString(0));
+        String match = toPrefixMatch(query);
+        if (match.isEmpty()) return names;
+        Cursor c = getReadableDatabase().rawQuery(
+                "SELECT h." + COL_HIST_NAME + " FROM " + TABLE_NAME_FTS + " f JOIN " +
+                        TABLE_NAME_HISTORY + " h ON h." + COL_HIST_ID + " = f.docid" +
+                        " WHERE f." + COL_HIST_NAME + " MATCH ?" +
+                        " ORDER BY h." + COL_HIST_USE_COUNT + " * 1.0 / (1 + (? - h." +
+                        COL_HIST_LAST_USED + ") / " + (double) SUGGESTION_HALF_WEIGHT_AGE_MS +
+                        ") DESC, h." + COL_HIST_NAME + " ASC LIMIT " + limit,
+                new String[]{match, String.valueOf(System.currentTimeMillis())});
+        try {
+            while (c.moveToNext()) {
+                names.add(c.getString(0));
+            }
+        } finally {
+            c.close();
         }
-        c.close();
         return names;
     }
+
+    /**
+     * Turns user input into an FTS query matching names with every word as a
+     * prefix, lower-cased like the indexed names.
+     */
+    private static String toPrefixMatch(String query) {
+        query = ftsName(query);
+        StringBuilder sb = new StringBuilder();
+        StringBuilder word = new StringBuilder();
+        for (int i = 0; i <= query.length(); i++) {
+            char ch = i < query.length() ? query.charAt(i) : ' ';
+            if (Character.isLetterOrDigit(ch)) {
+                word.append(ch);
+            } else if (word.length() > 0) {
+                if (sb.length() > 0) sb.append(' ');
+                sb.append(word).append('*');
+                word.setLength(0);
+            }
+        }
+        return sb.toString();
+    }
+
+    /** Counts one more use of {@code name} for suggestion ranking. */
+    private static void recordItemName(SQLiteDatabase db, String name) {
+        long now = System.currentTimeMillis();
+        SQLiteStatement update = db.compileStatement("UPDATE " + TABLE_NAME_HISTORY + " SET " +
+                COL_HIST_USE_COUNT + " = " + COL_HIST_USE_COUNT + " + 1, " +
+                COL_HIST_LAST_USED + " = ? WHERE " + COL_HIST_NAME + " = ?");
+        try {
+            update.bindLong(1, now);
+            update.bindString(2, name);
+            if (update.executeUpdateDelete() > 0) return;
+        } finally {
+            update.close();
+        }
+        ContentValues cv = new ContentValues();
+        cv.put(COL_HIST_NAME, name);
+        cv.put(COL_HIST_USE_COUNT, 1);
+        cv.put(COL_HIST_LAST_USED, now);
+        long historyId = db.insert(TABLE_NAME_HISTORY, null, cv);
+        ContentValues fts = new ContentValues();
+        fts.put("docid", historyId);
+        fts.put(COL_HIST_NAME, ftsName(name));
+        db.insert(TABLE_NAME_FTS, null, fts);
+    }
+
+    // ── Compaction ────────────────────────────────────────────────────────────
+
+    /**
+     * Rolls checked items bought more than {@code maxAgeMs} ago into
+     * {@code purchase_archive}, deletes the raw rows and returns the freed
+     * pages to the file system with an incremental vacuum. Autocomplete and
+     * restock suggestions keep working because they read their own aggregate
+     * tables. Rows checked before check-off times were recorded are aged by
+     * the time they were added. Returns the number of rows removed.
+     */
+    public int compactHistory(long maxAgeMs) {
+        long cutoff = System.currentTimeMillis() - maxAgeMs;
+        // The cutoff is inlined: a bound (string) argument would compare as text against
+        // the COALESCE expression, which has no column affinity.
+        // Synced rows with queued operations must stay until the outbox is replayed.
+        String where = COL_CHECKED + "=1 AND COALESCE(" + COL_CHECKED_AT + ", " + COL_CREATED +
+                ") < " + cutoff + " AND (" + COL_UID + " IS NULL OR " + COL_UID + " NOT IN (SELECT " +
+                COL_OP_ITEM_UID + " FROM " + TABLE_OUTBOX + "))";
+        SQLiteDatabase db = getWritableDatabase();
+        int removed;
+        db.beginTransaction();
+        try {
+            db.execSQL("INSERT OR IGNORE INTO " + TABLE_ARCHIVE + " (" + COL_ARCH_NAME + ", " +
+                    COL_ARCH_CATEGORY + ") SELECT DISTINCT " + COL_NAME + ", " + COL_CATEGORY +
+                    " FROM " + TABLE + " WHERE " + where);
+            SQLiteStatement update = db.compileStatement("UPDATE " + TABLE_ARCHIVE + " SET " +
+                    COL_ARCH_COUNT + " = " + COL_ARCH_COUNT + " + ?, " +
+                    COL_ARCH_QUANTITY + " = " + COL_ARCH_QUANTITY + " + ?, " +
+                    COL_ARCH_LAST + " = MAX(" + COL_ARCH_LAST + ", ?) WHERE " +
+                    COL_ARCH_NAME + " = ? AND " + COL_ARCH_CATEGORY + " = ?");
+            Cursor c = db.rawQuery("SELECT " + COL_NAME + ", " + COL_CATEGORY + ", COUNT(*), SUM(" +
+                    COL_QUANTITY + "), MAX(COALESCE(" + COL_CHECKED_AT + ", " + COL_CREATED + "))" +
+                    " FROM " + TABLE + " WHERE " + where +
+                    " GROUP BY " + COL_NAME + ", " + COL_CATEGORY, null);
+            try {
+                while (c.moveToNext()) {
+                    update.bindLong(1, c.getLong(2));
+                    update.bindLong(2, c.getLong(3));
+                    update.bindLong(3, c.getLong(4));
+                    update.bindString(4, c.getString(0));
+                    update.bindString(5, c.getString(1));
+                    update.executeUpdateDelete();
+                }
+            } finally {
+                c.close();
+                update.close();
+            }
+            removed = db.delete(TABLE, where, null);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+
+        if (DatabaseUtils.longForQuery(db, "PRAGMA auto_vacuum", null) != 2) {
+            // Files created before onConfigure set the pragma need one full VACUUM
+            db.execSQL("PRAGMA auto_vacuum = INCREMENTAL");
+            db.execSQL("VACUUM");
+        } else if (removed > 0) {
+            Cursor c = db.rawQuery("PRAGMA incremental_vacuum", null);
+            try {
+                while (c.moveToNext()) {
+                    // Each step frees pages
+                }
+            } finally {
+                c.close();
+            }
+        }
+        return removed;
+    }
+
+    // ── Sync mirror ───────────────────────────────────────────────────────────
+
+    /**
+     * Returns the unchecked items on the synced list, including local changes
+     * that are still waiting in the outbox, ordered by category then name.
+     */
+    public List<ShoppingItem> getSyncedItems() {
+        List<ShoppingItem> items = new ArrayList<>();
+        Cursor c = getReadableDatabase().query(TABLE,
+                new String[]{COL_ID, COL_NAME, COL_CATEGORY, COL_QUANTITY, COL_UID},
+                COL_CHECKED + "=0 AND " + COL_UID + " IS NOT NULL", null,
+                null, null, COL_CATEGORY + " ASC, " + COL_NAME + " ASC");
+        try {
+            while (c.moveToNext()) {
+                items.add(new ShoppingItem(c.getLong(0), c.getString(1), c.getString(2),
+                        false, c.getInt(3), c.getString(4)));
+            }
+        } finally {
+            c.close();
+        }
+        return items;
+    }
+
+    /**
+     * Returns the server revision the mirror is up to date with, or 0 when
+     * nothing has been synced yet from {@code serverUrl}.
+     */
+    public long getSyncRevision(String serverUrl) {
+        if (!serverUrl.equals(getSyncState(STATE_SERVER_URL))) return 0;
+        String rev = getSyncState(STATE_REVISION);
+        try {
+            return rev != null ? Long.parseLong(rev) : 0;
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Merges a delta received from {@code serverUrl} into the mirror in a
+     * single transaction and records its revision. A full snapshot, or a
+     * delta from a different server than last time, first drops every
+     * mirrored active row. Checked rows stay in the table as purchase history.
+     *
+     * Items with operations still waiting in the outbox keep their local
+     * state; the server catches up once the outbox has been replayed.
+     * A delta that does not go beyond the stored revision (e.g. a push that
+     * raced with a regular sync) is ignored.
+     */
+    public void applySyncDelta(String serverUrl, ShoppingDelta delta) {
+        SQLiteDatabase db = getWritableDatabase();
+        db.beginTransaction();
+        try {
+            boolean serverChanged = !serverUrl.equals(getSyncState(STATE_SERVER_URL));
+            if (!serverChanged && !delta.isFull()
+                    && delta.getRevision() <= getSyncRevision(serverUrl)) {
+                return;
+            }
+            if (serverChanged) {
+                // Pending operations were meant for the previous server
+                db.delete(TABLE_OUTBOX, null, null);
+            }
+            Set<String> pendingUids = getPendingUids(db);
+            if (delta.isFull() || serverChanged) {
+                db.delete(TABLE, COL_UID + " IS NOT NULL AND " + COL_CHECKED + "=0 AND " +
+                        COL_UID + " NOT IN (SELECT " + COL_OP_ITEM_UID + " FROM " + TABLE_OUTBOX + ")",
+                        null);
+            }
+            if (serverChanged) {
+                // Keep bought items as history, but their ids mean nothing to the new server
+                ContentValues detach = new ContentValues();
+                detach.putNull(COL_REMOTE_ID);
+                detach.putNull(COL_UID);
+                db.update(TABLE, detach, COL_UID + " IS NOT NULL", null);
+            }
+            for (ShoppingItem item : delta.getChanged()) {
+                if (!pendingUids.contains(item.getUid())) upsertRemote(db, item, false);
+            }
+            for (ShoppingItem item : delta.getChecked()) {
+                if (!pendingUids.contains(item.getUid())) upsertRemote(db, item, true);
+            }
+            for (Long remoteId : delta.getDeleted()) {
+                db.delete(TABLE, COL_REMOTE_ID + "=?", new String[]{String.valueOf(remoteId)});
+            }
+            putSyncState(db, STATE_SERVER_URL, serverUrl);
+            putSyncState(db, STATE_REVISION, String.valueOf(delta.getRevision()));
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    private static void upsertRemote(SQLiteDatabase db, ShoppingItem item, boolean checked) {
+        ContentValues cv = new ContentValues();
+        cv.put(COL_NAME, item.getName());
+        cv.put(COL_CATEGORY, item.getCategory());
+        cv.put(COL_CHECKED, checked ? 1 : 0);
+        cv.put(COL_QUANTITY, item.getQuantity());
+        cv.put(COL_REMOTE_ID, item.getId());
+        String[] uidArg = {item.getUid()};
+        // Checked off on another device: count it as a purchase exactly once
+        boolean bought = checked && DatabaseUtils.queryNumEntries(db, TABLE,
+                COL_UID + "=? AND " + COL_CHECKED + "=0", uidArg) > 0;
+        if (bought) cv.put(COL_CHECKED_AT, System.currentTimeMillis());
+        if (db.update(TABLE, cv, COL_UID + "=?", uidArg) == 0) {
+            cv.put(COL_UID, item.getUid());
+            cv.put(COL_CREATED, System.currentTimeMillis());
+            bought = checked;
+            if (bought) cv.put(COL_CHECKED_AT, System.currentTimeMillis());
+            db.insert(TABLE, null, cv);
+            recordItemName(db, item.getName());
+        }
+        if (bought) {
+            PurchaseStats.recordPurchase(db, item.getName(), item.getCategory(),
+                    item.getQuantity(), System.currentTimeMillis());
+        }
+    }
+
+    private String getSyncState(String key) {
+        Cursor c = getReadableDatabase().query(TABLE_SYNC_STATE,
+                new String[]{COL_STATE_VALUE}, COL_STATE_KEY + "=?", new String[]{key},
+                null, null, null);
+        try {
+            return c.moveToFirst() ? c.getString(0) : null;
+        } finally {
+            c.close();
+        }
+    }
+
+    private static void putSyncState(SQLiteDatabase db, String key, String value) {
+        ContentValues cv = new ContentValues();
+        cv.put(COL_STATE_KEY, key);
+        cv.put(COL_STATE_VALUE, value);
+        db.insertWithOnConflict(TABLE_SYNC_STATE, null, cv, SQLiteDatabase.CONFLICT_REPLACE);
+    }
+
+    // ── Outbox ────────────────────────────────────────────────────────────────
+    //
+    // Mutations of the synced list are applied to the mirror right away and
+    // recorded in the outbox in the same transaction, so nothing is lost when
+    // the server is unreachable. ShoppingApiClient.replayOutbox() sends them.
+
+    /** Adds an item to the synced list and queues it for the server. Returns the row id. */
+    public long addSyncedItem(String name, String category, int quantity) {
+        String uid = UUID.randomUUID().toString();
+        int qty = quantity < 1 ? 1 : quantity;
+        SQLiteDatabase db = getWritableDatabase();
+        db.beginTransaction();
+        try {
+            ContentValues cv = new ContentValues();
+            cv.put(COL_NAME, name);
+            cv.put(COL_CATEGORY, category);
+            cv.put(COL_CHECKED, 0);
+            cv.put(COL_CREATED, System.currentTimeMillis());
+            cv.put(COL_QUANTITY, qty);
+            cv.put(COL_UID, uid);
+            long id = db.insert(TABLE, null, cv);
+            recordItemName(db, name);
+            enqueue(db, OutboxOp.ADD, uid, 0, name, category, qty);
+            db.setTransactionSuccessful();
+            return id;
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /** Checks off an item on the synced list and queues the change. */
+    public void checkSyncedItem(long id) {
+        SQLiteDatabase db = getWritableDatabase();
+        db.beginTransaction();
+        try {
+            SyncRef ref = findSyncRef(db, id);
+            if (ref != null && markChecked(db, id)) {
+                enqueue(db, OutboxOp.CHECK, ref.uid, ref.remoteId, null, null, 0);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /** Deletes an item from the synced list and queues the change. */
+    public void deleteSyncedItem(long id) {
+        SQLiteDatabase db = getWritableDatabase();
+        db.beginTransaction();
+        try {
+            SyncRef ref = findSyncRef(db, id);
+            if (ref != null) {
+                db.delete(TABLE, COL_ID + "=?", new String[]{String.valueOf(id)});
+                enqueue(db, OutboxOp.DELETE, ref.uid, ref.remoteId, null, null, 0);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * Changes the quantity of an item on the synced list and queues the change.
+     * Earlier quantity updates of the same item that have not been sent yet are
+     * dropped, so tapping + five times costs one request.
+     */
+    public void updateSyncedItemQuantity(long id, int quantity) {
+        int qty = quantity < 1 ? 1 : quantity;
+        SQLiteDatabase db = getWritableDatabase();
+        db.beginTransaction();
+        try {
+            SyncRef ref = findSyncRef(db, id);
+            if (ref != null) {
+                ContentValues cv = new ContentValues();
+                cv.put(COL_QUANTITY, qty);
+                db.update(TABLE, cv, COL_ID + "=?", new String[]{String.valueOf(id)});
+                db.delete(TABLE_OUTBOX, COL_OP_TYPE + "=? AND " + COL_OP_ITEM_UID + "=?",
+                        new String[]{OutboxOp.UPDATE_QUANTITY, ref.uid});
+                enqueue(db, OutboxOp.UPDATE_QUANTITY, ref.uid, ref.remoteId,
+                        null, null, qty);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /** Returns all queued operations in the order they were made. */
+    public List<OutboxOp> getPendingOps() {
+        List<OutboxOp> ops = new ArrayList<>();
+        Cursor c = getReadableDatabase().query(TABLE_OUTBOX,
+                new String[]{COL_OP_ID, COL_OP_TYPE, COL_OP_ITEM_UID, COL_OP_REMOTE_ID,
+                        COL_OP_NAME, COL_OP_CATEGORY, COL_OP_QUANTITY},
+                null, null, null, null, COL_OP_ID + " ASC");
+        try {
+            while (c.moveToNext()) {
+                ops.add(new OutboxOp(c.getLong(0), c.getString(1), c.getString(2),
+                        c.isNull(3) ? 0 : c.getLong(3), c.getString(4), c.getString(5),
+                        c.getInt(6)));
+            }
+        } finally {
+            c.close();
+        }
+        return ops;
+    }
+
+    /**
+     * Removes replayed operations from the outbox in one transaction;
+     * {@code remoteIds} is parallel to {@code ops}. For an add, the remote id is
+     * the id the server assigned; it is recorded on the item and on any later
+     * operations for it.
+     */
+    public void completeOps(List<OutboxOp> ops, List<Long> remoteIds) {
+        if (ops.isEmpty()) return;
+        SQLiteDatabase db = getWritableDatabase();
+        db.beginTransaction();
+        try {
+            for (int i = 0; i < ops.size(); i++) {
+                OutboxOp op = ops.get(i);
+                long remoteId = remoteIds.get(i);
+                db.delete(TABLE_OUTBOX, COL_OP_ID + "=?", new String[]{String.valueOf(op.getId())});
+                if (OutboxOp.ADD.equals(op.getType()) && remoteId > 0) {
+                    String[] uidArg = {op.getItemUid()};
+                    ContentValues cv = new ContentValues();
+                    cv.put(COL_REMOTE_ID, remoteId);
+                    db.updateWithOnConflict(TABLE, cv, COL_UID + "=?", uidArg,
+                            SQLiteDatabase.CONFLICT_IGNORE);
+                    ContentValues opCv = new ContentValues();
+                    opCv.put(COL_OP_REMOTE_ID, remoteId);
+                    db.update(TABLE_OUTBOX, opCv, COL_OP_ITEM_UID + "=?", uidArg);
+                }
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    private static void enqueue(SQLiteDatabase db, String type, String itemUid, long remoteId,
+                                String name, String category, int quantity) {
+        ContentValues cv = new ContentValues();
+        cv.put(COL_OP_TYPE, type);
+        cv.put(COL_OP_ITEM_UID, itemUid);
+        if (remoteId > 0) cv.put(COL_OP_REMOTE_ID, remoteId);
+        cv.put(COL_OP_NAME, name);
+        cv.put(COL_OP_CATEGORY, category);
+        cv.put(COL_OP_QUANTITY, quantity);
+        cv.put(COL_OP_CREATED, System.currentTimeMillis());
+        db.insert(TABLE_OUTBOX, null, cv);
+    }
+
+    /** How the server knows a synced item. */
+    private static class SyncRef {
+        final String uid;
+        final long remoteId;
+
+        SyncRef(String uid, long remoteId) {
+            this.uid = uid;
+            this.remoteId = remoteId;
+        }
+    }
+
+    /** Returns the server identity of the synced item with local row id {@code id}, or null. */
+    private static SyncRef findSyncRef(SQLiteDatabase db, long id) {
+        Cursor c = db.query(TABLE, new String[]{COL_UID, COL_REMOTE_ID},
+                COL_ID + "=? AND " + COL_UID + " IS NOT NULL", new String[]{String.valueOf(id)},
+                null, null, null);
+        try {
+            if (!c.moveToFirst()) return null;
+            return new SyncRef(c.getString(0), c.isNull(1) ? 0 : c.getLong(1));
+        } finally {
+            c.close();
+        }
+    }
+
+    private static Set<String> getPendingUids(SQLiteDatabase db) {
+        Set<String> uids = new HashSet<>();
+        Cursor c = db.query(true, TABLE_OUTBOX, new String[]{COL_OP_ITEM_UID},
+                null, null, null, null, null, null);
+        try {
+            while (c.moveToNext()) {
+                uids.add(c.getString(0));
+            }
+        } finally {
+            c.close();
+        }
+        return uids;
+    }
 }
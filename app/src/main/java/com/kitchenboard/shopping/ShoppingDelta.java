@@ -0,0 +1,38 @@
+package com.kitchenboard.shopping;
+
+import java.util.List;
+
+/**
+ * Changes reported by the sync backend since a given revision
+ * ({@code ?action=list&since=rev}).
+ *
+ * When {@link #isFull()} is true the delta is a complete snapshot of the
+ * active list and replaces whatever the client had mirrored before.
+ * Item ids are server ids.
+ */
+public class ShoppingDelta {
+    private final long revision;
+    private final boolean full;
+    private final List<ShoppingItem> changed;
+    private final List<ShoppingItem> checked;
+    private final List<Long> deleted;
+
+    public ShoppingDelta(long revision, boolean full, List<ShoppingItem> changed,
+                         List<ShoppingItem> checked, List<Long> deleted) {
+        this.revision = revision;
+        this.full = full;
+        this.changed = changed;
+        this.checked = checked;
+        this.deleted = deleted;
+    }
+
+    /** Server revision this delta brings the client up to. */
+    public long getRevision() { return revision; }
+    public boolean isFull() { return full; }
+    /** Active items that were added or modified. */
+    public List<ShoppingItem> getChanged() { return changed; }
+    /** Items that were checked off (bought). */
+    public List<ShoppingItem> getChecked() { return checked; }
+    /** Server ids of deleted items. */
+    public List<Long> getDeleted() { return deleted; }
+}
@@ -19,6 +19,7 @@ import android.widget.CheckBox;
 import android.widget.EditText;
 import android.widget.ImageButton;
 import android.widget.ImageView;
+import android.widget.LinearLayout;
 import android.widget.Spinner;
 import android.widget.TextView;
 import android.widget.Toast;
@@ -37,7 +38,10 @@ import com.journeyapps.barcodescanner.BarcodeEncoder;
 import com.journeyapps.barcodescanner.ScanContract;
 import com.journeyapps.barcodescanner.ScanOptions;
 import com.kitchenboard.R;
+import com.kitchenboard.task.RequestRegistry;
+import com.kitchenboard.task.TaskGroup;
 
+import java.util.ArrayList;
 import java.util.List;
 
 public class ShoppingFragment extends Fragment {
@@ -46,16 +50,26 @@ public class ShoppingFragment extends Fragment {
     private static final String PREF_SERVER_URL = "server_url";
     private static final String PREF_PENDING_QR_NAME = "pending_qr_name";
     private static final String PREF_PENDING_QR_CATEGORY = "pending_qr_category";
+    /** Age in days after which checked items are archived; no UI, set via preferences. */
+    private static final String PREF_ARCHIVE_AFTER_DAYS = "archive_after_days";
+    private static final String PREF_LAST_COMPACTION = "last_compaction";
+
+    private static final int DEFAULT_ARCHIVE_AFTER_DAYS = 90;
+    private static final long COMPACTION_INTERVAL_MS = 24L * 60 * 60 * 1000;
 
     private static final int QR_SIZE_PX = 512;
+    private static final int MAX_RESTOCK_SUGGESTIONS = 8;
 
-    private ShoppingDatabaseHelper db;
+    /** All database access from this fragment goes through the repository's worker threads. */
+    private ShoppingRepository repository;
     private ShoppingAdapter adapter;
     private TextView tvEmpty;
     private TextView tvSyncStatus;
+    private View layoutRestock;
+    private LinearLayout llRestockItems;
 
-    /** Non-null when a valid server URL is configured. */
-    private ShoppingApiClient apiClient;
+    /** Routes mutations to the local database and, when configured, the sync server. */
+    private ShoppingSyncManager syncManager;
 
     private ActivityResultLauncher<ScanOptions> scanLauncher;
 
@@ -81,10 +95,25 @@ public class ShoppingFragment extends Fragment {
     public void onViewCreated(@NonNull View view, @Nullable Bundle savedInstanceState) {
         super.onViewCreated(view, savedInstanceState);
 
-        db = new ShoppingDatabaseHelper(requireContext());
+        repository = new ShoppingRepository(new ShoppingDatabaseHelper(requireContext()));
         adapter = new ShoppingAdapter();
         tvEmpty = view.findViewById(R.id.tv_empty);
         tvSyncStatus = view.findViewById(R.id.tv_sync_status);
+        layoutRestock = view.findViewById(R.id.layout_restock);
+        llRestockItems = view.findViewById(R.id.ll_restock_items);
+        RequestRegistry requests = new RequestRegistry(new TaskGroup(getViewLifecycleOwner()));
+        syncManager = new ShoppingSyncManager(repository, requests, new ShoppingSyncManager.Listener() {
+            @Override
+            public void onItemsChanged(List<ShoppingItem> items) {
+                adapter.setItems(items);
+                tvEmpty.setVisibility(items.isEmpty() ? View.VISIBLE : View.GONE);
+                loadRestockSuggestions();
+            }
+            @Override
+            public void onSyncStatusChanged(boolean ok) {
+                if (ok) showSyncOk(); else showSyncError();
+            }
+        });
 
         RecyclerView recyclerView = view.findViewById(R.id.rv_shopping);
         recyclerView.setLayoutManager(new LinearLayoutManager(requireContext()));
@@ -125,21 +154,7 @@ public class ShoppingFragment extends Fragment {
         adapter.setOnItemCheckedListener(new ShoppingAdapter.OnItemCheckedListener() {
             @Override
             public void onItemChecked(ShoppingItem item) {
-                if (apiClient != null) {
-                    apiClient.checkItem(item.getId(), new ShoppingApiClient.Callback<Void>() {
-                        @Override
-                        public void onSuccess(Void result) {
-                            refreshList();
-                        }
-                        @Override
-                        public void onError(String message) {
-                            showSyncError();
-                        }
-                    });
-                } else {
-                    db.checkItem(item.getId());
-                    refreshList();
-                }
+                syncManager.checkItem(item.getId());
             }
         });
 
@@ -160,23 +175,14 @@ public class ShoppingFragment extends Fragment {
         adapter.setOnQuantityChangedListener(new ShoppingAdapter.OnQuantityChangedListener() {
             @Override
             public void onQuantityChanged(ShoppingItem item, int newQuantity) {
-                if (apiClient != null) {
-                    apiClient.updateItemQuantity(item.getId(), newQuantity,
-                            new ShoppingApiClient.Callback<Void>() {
-                        @Override
-                        public void onSuccess(Void result) { /* quantity updated on server */ }
-                        @Override
-                        public void onError(String message) { showSyncError(); }
-                    });
-                } else {
-                    db.updateItemQuantity(item.getId(), newQuantity);
-                }
+                syncManager.updateItemQuantity(item.getId(), newQuantity);
             }
         });
 
         // Initialise API client from stored preferences
         initApiClient();
         refreshList();
+        maybeCompactHistory();
     }
 
     @Override
@@ -184,7 +190,7 @@ public class ShoppingFragment extends Fragment {
         super.onResume();
         // Re-read server URL in case it was updated
         initApiClient();
-        if (apiClient != null) {
+        if (syncManager.isSyncEnabled()) {
             refreshList();
         }
         checkPendingQrItem();
@@ -192,13 +198,24 @@ public class ShoppingFragment extends Fragment {
 
     // ── Sync helpers ──────────────────────────────────────────────────────────
 
+    /** Points the sync manager at the saved server; keeps the current client if it is unchanged. */
     private void initApiClient() {
         String url = loadServerUrl();
-        apiClient = (url != null && !url.isEmpty()) ? new ShoppingApiClient(url) : null;
+        ShoppingApiClient current = syncManager.getApiClient();
+        if (url == null || url.isEmpty()) {
+            if (current != null) syncManager.setApiClient(null);
+        } else if (current == null || !current.hasBaseUrl(url)) {
+            syncManager.setApiClient(new ShoppingApiClient(url));
+        }
     }
 
     private String loadServerUrl() {
-        SharedPreferences prefs = requireContext()
+        return loadServerUrl(requireContext());
+    }
+
+    /** The sync server configured here, or "" when none; the calendar syncs with it too. */
+    public static String loadServerUrl(Context context) {
+        SharedPreferences prefs = context
                 .getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
         return prefs.getString(PREF_SERVER_URL, "");
     }
@@ -251,29 +268,57 @@ public class ShoppingFragment extends Fragment {
     // ── List management ───────────────────────────────────────────────────────
 
     private void refreshList() {
-        if (apiClient != null) {
-            apiClient.fetchItems(new ShoppingApiClient.Callback<List<ShoppingItem>>() {
-                @Override
-                public void onSuccess(List<ShoppingItem> items) {
-                    showSyncOk();
-                    adapter.setItems(items);
-                    tvEmpty.setVisibility(items.isEmpty() ? View.VISIBLE : View.GONE);
-                }
+        if (!syncManager.isSyncEnabled() && tvSyncStatus != null) {
+            tvSyncStatus.setVisibility(View.GONE);
+        }
+        syncManager.refresh();
+    }
+
+    /** Starts the daily archival of old checked items in the background when due. */
+    private void maybeCompactHistory() {
+        final SharedPreferences prefs = requireContext()
+                .getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        long now = System.currentTimeMillis();
+        if (now - prefs.getLong(PREF_LAST_COMPACTION, 0) < COMPACTION_INTERVAL_MS) return;
+        prefs.edit().putLong(PREF_LAST_COMPACTION, now).apply();
+        long maxAgeMs = prefs.getInt(PREF_ARCHIVE_AFTER_DAYS, DEFAULT_ARCHIVE_AFTER_DAYS)
+                * 24L * 60 * 60 * 1000;
+        repository.compactHistory(maxAgeMs, null);
+    }
+
+    // ── Restock suggestions ───────────────────────────────────────────────────
+
+    private void loadRestockSuggestions() {
+        repository.loadRestockSuggestions(MAX_RESTOCK_SUGGESTIONS,
+                new ShoppingRepository.Callback<List<RestockSuggestion>>() {
+                    @Override
+                    public void onResult(List<RestockSuggestion> suggestions) {
+                        showRestockSuggestions(suggestions);
+                    }
+                });
+    }
+
+    /** One button per suggestion; tapping it adds the item with its usual quantity. */
+    private void showRestockSuggestions(List<RestockSuggestion> suggestions) {
+        if (llRestockItems == null) return;
+        llRestockItems.removeAllViews();
+        for (final RestockSuggestion suggestion : suggestions) {
+            Button btn = new Button(requireContext(), null, android.R.attr.borderlessButtonStyle);
+            btn.setText(suggestion.getQuantity() > 1
+                    ? suggestion.getName() + " ×" + suggestion.getQuantity()
+                    : suggestion.getName());
+            btn.setAllCaps(false);
+            btn.setContentDescription(getString(R.string.restock_add, suggestion.getName()));
+            btn.setOnClickListener(new View.OnClickListener() {
                 @Override
-                public void onError(String message) {
-                    showSyncError();
-                    // Fall back to local data so the UI is never empty on error
-                    List<ShoppingItem> localItems = db.getActiveItems();
-                    adapter.setItems(localItems);
-                    tvEmpty.setVisibility(localItems.isEmpty() ? View.VISIBLE : View.GONE);
+                public void onClick(View v) {
+                    syncManager.addItem(suggestion.getName(), suggestion.getCategory(),
+                            suggestion.getQuantity());
                 }
             });
-        } else {
-            if (tvSyncStatus != null) tvSyncStatus.setVisibility(View.GONE);
-            List<ShoppingItem> items = db.getActiveItems();
-            adapter.setItems(items);
-            tvEmpty.setVisibility(items.isEmpty() ? View.VISIBLE : View.GONE);
+            llRestockItems.addView(btn);
         }
+        layoutRestock.setVisibility(suggestions.isEmpty() ? View.GONE : View.VISIBLE);
     }
 
     private void showAddItemDialog() {
@@ -309,19 +354,12 @@ public class ShoppingFragment extends Fragment {
             }
         });
 
-        // Populate name suggestions from history
-        List<String> history = db.getAllItemNames();
-        ArrayAdapter<String> suggestAdapter = new ArrayAdapter<>(requireContext(),
-                android.R.layout.simple_dropdown_item_1line, history);
-        etName.setAdapter(suggestAdapter);
+        // Suggest names from history, best matches looked up per keystroke
+        etName.setAdapter(new ItemNameSuggestionAdapter(requireContext(), repository.getDatabase()));
         etName.setThreshold(1);
 
         // Populate category suggestions from saved categories
-        List<String> categories = db.getCategories();
-        ArrayAdapter<String> catAdapter = new ArrayAdapter<>(requireContext(),
-                android.R.layout.simple_dropdown_item_1line, categories);
-        etCategory.setAdapter(catAdapter);
-        etCategory.setThreshold(1);
+        setCategorySuggestions(etCategory);
 
         final AlertDialog dialog = new AlertDialog.Builder(requireContext())
                 .setTitle(R.string.add_item)
@@ -335,27 +373,7 @@ public class ShoppingFragment extends Fragment {
                         final String category = rawCategory.isEmpty()
                                 ? getString(R.string.category_default) : rawCategory;
                         if (name.isEmpty()) return;
-                        final int qty = quantity[0];
-
-                        if (apiClient != null) {
-                            apiClient.addItem(name, category, qty,
-                                    new ShoppingApiClient.Callback<ShoppingItem>() {
-                                @Override
-                                public void onSuccess(ShoppingItem item) {
-                                    // Save category locally for autocomplete suggestions only
-                                    db.addCategory(category);
-                                    refreshList();
-                                }
-                                @Override
-                                public void onError(String message) {
-                                    showSyncError();
-                                }
-                            });
-                        } else {
-                            db.addCategory(category);
-                            db.addItem(name, category, qty);
-                            refreshList();
-                        }
+                        syncManager.addItem(name, category, quantity[0]);
                     }
                 })
                 .setNegativeButton(R.string.cancel, null)
@@ -390,6 +408,20 @@ public class ShoppingFragment extends Fragment {
         });
     }
 
+    /** Attaches an adapter to {@code etCategory} and fills it with the saved categories. */
+    private void setCategorySuggestions(AutoCompleteTextView etCategory) {
+        final ArrayAdapter<String> catAdapter = new ArrayAdapter<>(requireContext(),
+                android.R.layout.simple_dropdown_item_1line, new ArrayList<String>());
+        etCategory.setAdapter(catAdapter);
+        etCategory.setThreshold(1);
+        repository.loadCategories(new ShoppingRepository.Callback<List<String>>() {
+            @Override
+            public void onResult(List<String> categories) {
+                catAdapter.addAll(categories);
+            }
+        });
+    }
+
     private void showDeleteConfirmation(final ShoppingItem item) {
         new AlertDialog.Builder(requireContext())
                 .setTitle(R.string.delete_item)
@@ -397,22 +429,7 @@ public class ShoppingFragment extends Fragment {
                 .setPositiveButton(R.string.delete, new DialogInterface.OnClickListener() {
                     @Override
                     public void onClick(DialogInterface dialog, int which) {
-                        if (apiClient != null) {
-                            apiClient.deleteItem(item.getId(),
-                                    new ShoppingApiClient.Callback<Void>() {
-                                @Override
-                                public void onSuccess(Void result) {
-                                    refreshList();
-                                }
-                                @Override
-                                public void onError(String message) {
-                                    showSyncError();
-                                }
-                            });
-                        } else {
-                            db.deleteItem(item.getId());
-                            refreshList();
-                        }
+                        syncManager.deleteItem(item.getId());
                     }
                 })
                 .setNegativeButton(R.string.cancel, null)
@@ -422,7 +439,8 @@ public class ShoppingFragment extends Fragment {
     @Override
     public void onDestroyView() {
         super.onDestroyView();
-        if (db != null) db.close();
+        if (syncManager != null) syncManager.release();
+        if (repository != null) repository.close();
     }
 
     // ── QR code helpers ───────────────────────────────────────────────────────
@@ -508,11 +526,7 @@ public class ShoppingFragment extends Fragment {
             tvQuantity.setText(String.valueOf(quantity[0]));
         });
 
-        List<String> categories = db.getCategories();
-        ArrayAdapter<String> catAdapter = new ArrayAdapter<>(requireContext(),
-                android.R.layout.simple_dropdown_item_1line, categories);
-        etCategory.setAdapter(catAdapter);
-        etCategory.setThreshold(1);
+        setCategorySuggestions(etCategory);
 
         new AlertDialog.Builder(requireContext())
                 .setTitle(R.string.qr_add_item)
@@ -523,24 +537,7 @@ public class ShoppingFragment extends Fragment {
                     final String itemCategory = rawCat.isEmpty()
                             ? getString(R.string.category_default) : rawCat;
                     if (itemName.isEmpty()) return;
-                    final int qty = quantity[0];
-
-                    if (apiClient != null) {
-                        apiClient.addItem(itemName, itemCategory, qty,
-                                new ShoppingApiClient.Callback<ShoppingItem>() {
-                            @Override
-                            public void onSuccess(ShoppingItem item) {
-                                db.addCategory(itemCategory);
-                                refreshList();
-                            }
-                            @Override
-                            public void onError(String message) { showSyncError(); }
-                        });
-                    } else {
-                        db.addCategory(itemCategory);
-                        db.addItem(itemName, itemCategory, qty);
-                        refreshList();
-                    }
+                    syncManager.addItem(itemName, itemCategory, quantity[0]);
                 })
                 .setNegativeButton(R.string.cancel, null)
                 .show();
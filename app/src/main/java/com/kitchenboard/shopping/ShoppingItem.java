@@ -6,17 +6,25 @@ public class ShoppingItem {
     private String category;
     private boolean checked;
     private int quantity;
+    /** Identity on the synced list (see ShoppingDatabaseHelper.COL_UID); null for local-only items. */
+    private final String uid;
 
     public ShoppingItem(long id, String name, String category, boolean checked) {
         this(id, name, category, checked, 1);
     }
 
     public ShoppingItem(long id, String name, String category, boolean checked, int quantity) {
+        this(id, name, category, checked, quantity, null);
+    }
+
+    public ShoppingItem(long id, String name, String category, boolean checked, int quantity,
+                        String uid) {
         this.id = id;
         this.name = name;
         this.category = category;
         this.checked = checked;
         this.quantity = quantity < 1 ? 1 : quantity;
+        this.uid = uid;
     }
 
     public long getId() { return id; }
@@ -26,4 +34,5 @@ public class ShoppingItem {
     public void setChecked(boolean checked) { this.checked = checked; }
     public int getQuantity() { return quantity; }
     public void setQuantity(int quantity) { this.quantity = quantity < 1 ? 1 : quantity; }
+    public String getUid() { return uid; }
 }
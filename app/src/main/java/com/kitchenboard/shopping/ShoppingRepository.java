@@ -0,0 +1,255 @@
+package com.kitchenboard.shopping;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import com.kitchenboard.task.TaskScheduler;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Asynchronous access to {@link ShoppingDatabaseHelper} for UI code.
+ *
+ * Writes run one at a time, in submission order; reads run in parallel.
+ * Both use the disk pool of {@link TaskScheduler}, so a repository owns no
+ * threads of its own. Results are delivered on the main thread, so
+ * no SQLite I/O ever happens on the main looper. Every mutation answers with
+ * the reloaded item list, read on the writer thread right after the change.
+ *
+ * The {@code synced} flag selects between the server mirror
+ * ({@code *Synced*} methods of the helper) and the local-only list.
+ */
+public class ShoppingRepository {
+
+    /** Receives a result on the main thread. */
+    public interface Callback<T> {
+        void onResult(T result);
+    }
+
+    /** How long {@link #close()} lets running reads finish before closing the database. */
+    private static final long CLOSE_TIMEOUT_MS = 5_000;
+
+    private final ShoppingDatabaseHelper db;
+    private final Executor writeExecutor = TaskScheduler.disk().newSerialExecutor();
+    /** Reads not finished yet; close waits for them. Guarded by itself. */
+    private final Set<Future<?>> pendingReads =
+            Collections.newSetFromMap(new IdentityHashMap<Future<?>, Boolean>());
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    /** Set on the main thread; results arriving afterwards are dropped. */
+    private boolean closed;
+
+    public ShoppingRepository(ShoppingDatabaseHelper db) {
+        this.db = db;
+    }
+
+    /** Runs reads on the disk pool; {@link #close()} waits for them. */
+    private final Executor readExecutor = new Executor() {
+        @Override
+        public void execute(Runnable task) {
+            if (closed) return;
+            FutureTask<Void> future = new FutureTask<Void>(task, null) {
+                @Override
+                protected void done() {
+                    synchronized (pendingReads) {
+                        pendingReads.remove(this);
+                    }
+                }
+            };
+            synchronized (pendingReads) {
+                pendingReads.add(future);
+            }
+            TaskScheduler.disk().execute(future);
+        }
+    };
+
+    /**
+     * The underlying helper, for code that already runs off the main thread
+     * (sync, autocomplete filtering).
+     */
+    public ShoppingDatabaseHelper getDatabase() {
+        return db;
+    }
+
+    /**
+     * Executor for reads of {@link #getDatabase()} that callers schedule
+     * themselves (e.g. through a {@link com.kitchenboard.task.RequestRegistry});
+     * like the repository's own reads they finish before the database is
+     * closed. Call on the main thread.
+     */
+    public Executor getReadExecutor() {
+        return readExecutor;
+    }
+
+    // ── Reads ─────────────────────────────────────────────────────────────────
+
+    public void loadCategories(Callback<List<String>> callback) {
+        read(new Callable<List<String>>() {
+            @Override
+            public List<String> call() {
+                return db.getCategories();
+            }
+        }, callback);
+    }
+
+    /** Restock suggestions from {@link PurchaseStats}, most overdue first. */
+    public void loadRestockSuggestions(final int limit,
+                                       Callback<List<RestockSuggestion>> callback) {
+        read(new Callable<List<RestockSuggestion>>() {
+            @Override
+            public List<RestockSuggestion> call() {
+                return db.getRestockSuggestions(limit);
+            }
+        }, callback);
+    }
+
+    // ── Writes ────────────────────────────────────────────────────────────────
+
+    public void addItem(final String name, final String category, final int quantity,
+                        final boolean synced, Callback<List<ShoppingItem>> callback) {
+        write(new Runnable() {
+            @Override
+            public void run() {
+                db.addCategory(category);
+                if (synced) {
+                    db.addSyncedItem(name, category, quantity);
+                } else {
+                    db.addItem(name, category, quantity);
+                }
+            }
+        }, synced, callback);
+    }
+
+    public void checkItem(final long id, final boolean synced,
+                          Callback<List<ShoppingItem>> callback) {
+        write(new Runnable() {
+            @Override
+            public void run() {
+                if (synced) {
+                    db.checkSyncedItem(id);
+                } else {
+                    db.checkItem(id);
+                }
+            }
+        }, synced, callback);
+    }
+
+    public void deleteItem(final long id, final boolean synced,
+                           Callback<List<ShoppingItem>> callback) {
+        write(new Runnable() {
+            @Override
+            public void run() {
+                if (synced) {
+                    db.deleteSyncedItem(id);
+                } else {
+                    db.deleteItem(id);
+                }
+            }
+        }, synced, callback);
+    }
+
+    public void updateItemQuantity(final long id, final int quantity, final boolean synced,
+                                   Callback<List<ShoppingItem>> callback) {
+        write(new Runnable() {
+            @Override
+            public void run() {
+                if (synced) {
+                    db.updateSyncedItemQuantity(id, quantity);
+                } else {
+                    db.updateItemQuantity(id, quantity);
+                }
+            }
+        }, synced, callback);
+    }
+
+    /**
+     * Archives and removes checked items older than {@code maxAgeMs}
+     * ({@link ShoppingDatabaseHelper#compactHistory}); the callback receives
+     * the number of rows removed.
+     */
+    public void compactHistory(final long maxAgeMs, final Callback<Integer> callback) {
+        if (closed) return;
+        writeExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                deliver(callback, db.compactHistory(maxAgeMs));
+            }
+        });
+    }
+
+    /**
+     * Stops accepting work and closes the database once queued writes have
+     * finished. Pending callbacks are not delivered. Call on the main thread.
+     */
+    public void close() {
+        closed = true;
+        writeExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                Future<?>[] reads;
+                synchronized (pendingReads) {
+                    reads = pendingReads.toArray(new Future<?>[0]);
+                }
+                long deadline = SystemClock.elapsedRealtime() + CLOSE_TIMEOUT_MS;
+                try {
+                    for (Future<?> read : reads) {
+                        long left = deadline - SystemClock.elapsedRealtime();
+                        if (left <= 0) break;
+                        read.get(left, TimeUnit.MILLISECONDS);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (ExecutionException | TimeoutException ignored) {
+                }
+                db.close();
+            }
+        });
+    }
+
+    // ── Thread helpers ────────────────────────────────────────────────────────
+
+    private <T> void read(final Callable<T> query, final Callback<T> callback) {
+        readExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    deliver(callback, query.call());
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        });
+    }
+
+    private void write(final Runnable mutation, final boolean synced,
+                       final Callback<List<ShoppingItem>> callback) {
+        if (closed) return;
+        writeExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                mutation.run();
+                deliver(callback, synced ? db.getSyncedItems() : db.getActiveItems());
+            }
+        });
+    }
+
+    private <T> void deliver(final Callback<T> callback, final T result) {
+        if (callback == null) return;
+        mainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (!closed) callback.onResult(result);
+            }
+        });
+    }
+}
@@ -0,0 +1,277 @@
+package com.kitchenboard.shopping;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import com.kitchenboard.task.RequestRegistry;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+
+/**
+ * Single entry point for shopping-list mutations, used by ShoppingFragment.
+ *
+ * Without a sync server every change simply goes to the local database.
+ * All database work goes through {@link ShoppingRepository} or the sync
+ * threads of {@link ShoppingApiClient}, never the main thread.
+ * With one, changes are applied to the local mirror immediately
+ * (optimistically) and recorded in the outbox; the outbox is then replayed
+ * to the server, retrying with exponential backoff while it is unreachable,
+ * and finally the latest server delta is merged in. Changes made in quick
+ * succession (e.g. checking off items in the store) are flushed together
+ * after a short pause so they reach the server as one batch request.
+ * While a server is configured, changes made on other devices are pushed
+ * in through a long-poll listener (see {@link ShoppingApiClient#startListening}).
+ *
+ * All methods must be called on the main thread; the listener is invoked there too.
+ */
+public class ShoppingSyncManager {
+
+    public interface Listener {
+        /** The list to display changed. */
+        void onItemsChanged(List<ShoppingItem> items);
+        /** A sync round trip finished; {@code ok} is false when the server could not be reached. */
+        void onSyncStatusChanged(boolean ok);
+    }
+
+    private static final long INITIAL_RETRY_DELAY_MS = 2_000;
+    private static final long MAX_RETRY_DELAY_MS = 5 * 60_000;
+    /** Quiet period after a local change before the outbox is flushed. */
+    private static final long FLUSH_DELAY_MS = 1_500;
+
+    /** Key of the local list load in {@link #requests}. */
+    private static final String REQUEST_LOCAL_ITEMS = "local_items";
+
+    private final ShoppingRepository repository;
+    private final RequestRegistry requests;
+    private final ShoppingDatabaseHelper db;
+    private final Listener listener;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    /** Null when sync is disabled. */
+    private ShoppingApiClient apiClient;
+
+    private boolean syncRunning;
+    /** Another sync was requested while one was running. */
+    private boolean syncRequested;
+    private long retryDelayMs = INITIAL_RETRY_DELAY_MS;
+    private boolean released;
+    /**
+     * Bumped for every list shown or change made, so that the result of a
+     * local change overtaken by a newer list is not displayed.
+     */
+    private int itemsGeneration;
+
+    private final RequestRegistry.Callback<List<ShoppingItem>> localItemsCallback =
+            new RequestRegistry.Callback<List<ShoppingItem>>() {
+                @Override
+                public void onResult(List<ShoppingItem> items) {
+                    if (!released) listener.onItemsChanged(items);
+                }
+
+                @Override
+                public void onError(Exception e) {
+                    // The list on screen stays; the next refresh reads again
+                }
+            };
+
+    private final Runnable retryRunnable = new Runnable() {
+        @Override
+        public void run() {
+            refresh();
+        }
+    };
+
+    private final Runnable flushRunnable = new Runnable() {
+        @Override
+        public void run() {
+            refresh();
+        }
+    };
+
+    private final ShoppingApiClient.Callback<List<ShoppingItem>> pushCallback =
+            new ShoppingApiClient.Callback<List<ShoppingItem>>() {
+                @Override
+                public void onSuccess(List<ShoppingItem> items) {
+                    if (released) return;
+                    showItems(items);
+                    listener.onSyncStatusChanged(true);
+                }
+
+                @Override
+                public void onError(String message) {
+                    if (!released) listener.onSyncStatusChanged(false);
+                }
+            };
+
+    /**
+     * @param requests registry of the owning view; local list loads go
+     *                 through it and end with the view
+     */
+    public ShoppingSyncManager(ShoppingRepository repository, RequestRegistry requests,
+                               Listener listener) {
+        this.repository = repository;
+        this.requests = requests;
+        this.db = repository.getDatabase();
+        this.listener = listener;
+    }
+
+    /** Switches to a different sync server, or disables sync when {@code client} is null. */
+    public void setApiClient(ShoppingApiClient client) {
+        if (apiClient != null) apiClient.stopListening();
+        apiClient = client;
+        if (client != null && !released) client.startListening(db, pushCallback);
+        mainHandler.removeCallbacks(retryRunnable);
+        mainHandler.removeCallbacks(flushRunnable);
+        retryDelayMs = INITIAL_RETRY_DELAY_MS;
+    }
+
+    /** The client in use, or null when sync is off. */
+    public ShoppingApiClient getApiClient() {
+        return apiClient;
+    }
+
+    public boolean isSyncEnabled() {
+        return apiClient != null;
+    }
+
+    // ── Mutations ─────────────────────────────────────────────────────────────
+
+    public void addItem(String name, String category, int quantity) {
+        repository.addItem(name, category, quantity, isSyncEnabled(), localChangeCallback());
+    }
+
+    public void checkItem(long id) {
+        repository.checkItem(id, isSyncEnabled(), localChangeCallback());
+    }
+
+    public void deleteItem(long id) {
+        repository.deleteItem(id, isSyncEnabled(), localChangeCallback());
+    }
+
+    /** Quantity changes are already visible in the adapter, so the list is not reloaded. */
+    public void updateItemQuantity(long id, int quantity) {
+        repository.updateItemQuantity(id, quantity, isSyncEnabled(),
+                new ShoppingRepository.Callback<List<ShoppingItem>>() {
+                    @Override
+                    public void onResult(List<ShoppingItem> items) {
+                        if (apiClient != null) scheduleFlush();
+                    }
+                });
+    }
+
+    private ShoppingRepository.Callback<List<ShoppingItem>> localChangeCallback() {
+        final int generation = ++itemsGeneration;
+        // A local load still running would show the list from before this change
+        requests.cancel(REQUEST_LOCAL_ITEMS);
+        return new ShoppingRepository.Callback<List<ShoppingItem>>() {
+            @Override
+            public void onResult(List<ShoppingItem> items) {
+                if (released) return;
+                if (generation == itemsGeneration) listener.onItemsChanged(items);
+                if (apiClient != null) scheduleFlush();
+            }
+        };
+    }
+
+    /** (Re)starts the quiet period so consecutive changes share one flush. */
+    private void scheduleFlush() {
+        mainHandler.removeCallbacks(flushRunnable);
+        mainHandler.postDelayed(flushRunnable, FLUSH_DELAY_MS);
+    }
+
+    private void showItems(List<ShoppingItem> items) {
+        itemsGeneration++;
+        requests.cancel(REQUEST_LOCAL_ITEMS);
+        listener.onItemsChanged(items);
+    }
+
+    /**
+     * Loads the list from the local database in the background and shows it.
+     * Overlapping calls share one query; a list shown meanwhile by a sync or
+     * a local change cancels it.
+     */
+    private void showLocalItems() {
+        final boolean synced = isSyncEnabled();
+        requests.request(REQUEST_LOCAL_ITEMS, synced, repository.getReadExecutor(),
+                new Callable<List<ShoppingItem>>() {
+                    @Override
+                    public List<ShoppingItem> call() {
+                        return synced ? db.getSyncedItems() : db.getActiveItems();
+                    }
+                }, localItemsCallback);
+    }
+
+    // ── Sync ──────────────────────────────────────────────────────────────────
+
+    /**
+     * Replays the outbox and pulls the latest server changes. Without a sync
+     * server this just reloads the local list. Calls made while a sync is
+     * running are coalesced into one follow-up sync.
+     */
+    public void refresh() {
+        if (released) return;
+        if (apiClient == null) {
+            showLocalItems();
+            return;
+        }
+        if (syncRunning) {
+            syncRequested = true;
+            return;
+        }
+        syncRunning = true;
+        mainHandler.removeCallbacks(retryRunnable);
+        mainHandler.removeCallbacks(flushRunnable);
+
+        final ShoppingApiClient client = apiClient;
+        client.replayOutbox(db, new ShoppingApiClient.Callback<Integer>() {
+            @Override
+            public void onSuccess(Integer sent) {
+                client.syncItems(db, new ShoppingApiClient.Callback<List<ShoppingItem>>() {
+                    @Override
+                    public void onSuccess(List<ShoppingItem> items) {
+                        retryDelayMs = INITIAL_RETRY_DELAY_MS;
+                        finishSync(true, items);
+                    }
+
+                    @Override
+                    public void onError(String message) {
+                        finishSync(false, null);
+                    }
+                });
+            }
+
+            @Override
+            public void onError(String message) {
+                finishSync(false, null);
+            }
+        });
+    }
+
+    private void finishSync(boolean ok, List<ShoppingItem> items) {
+        syncRunning = false;
+        if (released) return;
+        // Show the local state on failure so the UI is never empty on error
+        if (items != null) {
+            showItems(items);
+        } else {
+            showLocalItems();
+        }
+        listener.onSyncStatusChanged(ok);
+        if (syncRequested) {
+            syncRequested = false;
+            refresh();
+        } else if (!ok && apiClient != null) {
+            mainHandler.postDelayed(retryRunnable, retryDelayMs);
+            retryDelayMs = Math.min(retryDelayMs * 2, MAX_RETRY_DELAY_MS);
+        }
+    }
+
+    /** Stops pending retries and the push listener; the outbox stays on disk for the next session. */
+    public void release() {
+        released = true;
+        if (apiClient != null) apiClient.stopListening();
+        mainHandler.removeCallbacks(retryRunnable);
+        mainHandler.removeCallbacks(flushRunnable);
+    }
+}
@@ -0,0 +1,127 @@
+package com.kitchenboard.task;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+
+/**
+ * The requests a screen has in flight, at most one per key (e.g. "weather").
+ *
+ * <ul>
+ *   <li>A request with the same key and equal arguments as the one in
+ *       flight joins it (single-flight): no second call is made, and the
+ *       caller's callback receives the shared result.</li>
+ *   <li>A request with different arguments supersedes the one in flight,
+ *       which is cancelled; its result is dropped even if it was already
+ *       computed, so only the newest answer reaches the UI.</li>
+ *   <li>Everything is dropped when the {@link TaskGroup} is cancelled with
+ *       its view.</li>
+ * </ul>
+ *
+ * Must be used on the main thread; callbacks run there.
+ */
+public final class RequestRegistry {
+
+    /** Receives the outcome of a request on the main thread. */
+    public interface Callback<T> {
+        void onResult(T result);
+        void onError(Exception e);
+    }
+
+    private final TaskGroup tasks;
+    private final Map<String, InFlight<?>> inFlight = new HashMap<>();
+
+    public RequestRegistry(TaskGroup tasks) {
+        this.tasks = tasks;
+    }
+
+    /**
+     * Runs {@code work} on {@code executor} under {@code key}, or joins the
+     * request already in flight for it when {@code args} are equal. A
+     * callback that is already waiting on the request is not added twice.
+     */
+    public <T> void request(final String key, Object args, Executor executor,
+                            final Callable<T> work, Callback<T> callback) {
+        InFlight<?> current = inFlight.get(key);
+        if (current != null && equal(current.args, args)) {
+            @SuppressWarnings("unchecked")
+            InFlight<T> joined = (InFlight<T>) current;
+            if (!joined.callbacks.contains(callback)) joined.callbacks.add(callback);
+            return;
+        }
+        if (current != null) current.cancel();
+
+        final InFlight<T> request = new InFlight<>(args, callback);
+        inFlight.put(key, request);
+        request.future = tasks.execute(executor, new Runnable() {
+            @Override
+            public void run() {
+                T result = null;
+                Exception error = null;
+                try {
+                    result = work.call();
+                } catch (Exception e) {
+                    error = e;
+                }
+                final T finalResult = result;
+                final Exception finalError = error;
+                tasks.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        // Superseded or cancelled meanwhile: the result is stale
+                        if (inFlight.get(key) != request) return;
+                        inFlight.remove(key);
+                        request.deliver(finalResult, finalError);
+                    }
+                });
+            }
+        });
+    }
+
+    /** Whether a request for {@code key} is running. */
+    public boolean isInFlight(String key) {
+        return inFlight.containsKey(key);
+    }
+
+    /**
+     * Cancels the request for {@code key}, if any, e.g. because newer data
+     * arrived another way. Its callbacks are not called.
+     */
+    public void cancel(String key) {
+        InFlight<?> request = inFlight.remove(key);
+        if (request != null) request.cancel();
+    }
+
+    private static boolean equal(Object a, Object b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    private static final class InFlight<T> {
+        final Object args;
+        final List<Callback<T>> callbacks = new ArrayList<>(1);
+        Future<?> future;
+
+        InFlight(Object args, Callback<T> callback) {
+            this.args = args;
+            callbacks.add(callback);
+        }
+
+        void cancel() {
+            if (future != null) future.cancel(true);
+        }
+
+        void deliver(T result, Exception error) {
+            for (Callback<T> callback : callbacks) {
+                if (error != null) {
+                    callback.onError(error);
+                } else {
+                    callback.onResult(result);
+                }
+            }
+        }
+    }
+}
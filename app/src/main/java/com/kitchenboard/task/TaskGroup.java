@@ -0,0 +1,96 @@
+package com.kitchenboard.task;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import androidx.annotation.NonNull;
+import androidx.lifecycle.Lifecycle;
+import androidx.lifecycle.LifecycleEventObserver;
+import androidx.lifecycle.LifecycleOwner;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Background tasks and main-thread callbacks that belong to one screen.
+ *
+ * When the owning lifecycle is destroyed (for fragments: use
+ * {@code getViewLifecycleOwner()}), queued tasks are dropped, running ones
+ * are interrupted and callbacks posted through {@link #post} no longer
+ * run, so late results never reach a view that is gone.
+ */
+public final class TaskGroup {
+
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final Set<Future<?>> futures =
+            Collections.newSetFromMap(new IdentityHashMap<Future<?>, Boolean>());
+    private volatile boolean cancelled;
+
+    /** A group that is cancelled when {@code owner} is destroyed. Call on the main thread. */
+    public TaskGroup(LifecycleOwner owner) {
+        owner.getLifecycle().addObserver(new LifecycleEventObserver() {
+            @Override
+            public void onStateChanged(@NonNull LifecycleOwner source,
+                                       @NonNull Lifecycle.Event event) {
+                if (event == Lifecycle.Event.ON_DESTROY) {
+                    source.getLifecycle().removeObserver(this);
+                    cancel();
+                }
+            }
+        });
+    }
+
+    /**
+     * Runs {@code task} on {@code executor} (usually a {@link TaskPool})
+     * unless the group is (or gets) cancelled first. Returns a handle to
+     * cancel just this task, or null when the group is already cancelled.
+     */
+    public Future<?> execute(Executor executor, Runnable task) {
+        if (cancelled) return null;
+        final FutureTask<Void> future = new FutureTask<Void>(task, null) {
+            @Override
+            protected void done() {
+                synchronized (futures) {
+                    futures.remove(this);
+                }
+            }
+        };
+        synchronized (futures) {
+            if (cancelled) return null;
+            futures.add(future);
+        }
+        executor.execute(future);
+        return future;
+    }
+
+    /** Runs {@code callback} on the main thread unless the group is cancelled by then. */
+    public void post(final Runnable callback) {
+        if (cancelled) return;
+        mainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (!cancelled) callback.run();
+            }
+        });
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /** Cancels every task and callback of the group; later submissions are ignored. */
+    public void cancel() {
+        Future<?>[] pending;
+        synchronized (futures) {
+            cancelled = true;
+            pending = futures.toArray(new Future<?>[0]);
+            futures.clear();
+        }
+        mainHandler.removeCallbacksAndMessages(null);
+        for (Future<?> f : pending) f.cancel(true);
+    }
+}
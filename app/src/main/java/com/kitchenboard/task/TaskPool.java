@@ -0,0 +1,181 @@
+package com.kitchenboard.task;
+
+import android.os.Process;
+import android.os.SystemClock;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A named pool with a fixed number of background-priority threads for one
+ * class of work (see {@link TaskScheduler}). Idle threads time out, so an
+ * unused pool costs nothing. Counts queue depth and waiting/running time
+ * per task; {@link #snapshot()} returns a copy that can be shown or logged.
+ */
+public final class TaskPool implements Executor {
+
+    /** Totals for one pool. */
+    public static class Stats {
+        public long submitted;
+        public long completed;
+        public long failed;
+        /** Tasks waiting for a thread right now. */
+        public int queued;
+        public int maxQueued;
+        /** Summed time tasks spent waiting for a thread. */
+        public long totalWaitMs;
+        public long maxWaitMs;
+        public long totalRunMs;
+
+        Stats copy() {
+            Stats s = new Stats();
+            s.submitted = submitted;
+            s.completed = completed;
+            s.failed = failed;
+            s.queued = queued;
+            s.maxQueued = maxQueued;
+            s.totalWaitMs = totalWaitMs;
+            s.maxWaitMs = maxWaitMs;
+            s.totalRunMs = totalRunMs;
+            return s;
+        }
+    }
+
+    private static final long KEEP_ALIVE_S = 30;
+
+    private final String name;
+    private final ThreadPoolExecutor executor;
+    private final Stats stats = new Stats();
+
+    TaskPool(final String name, int threads) {
+        this.name = name;
+        executor = new ThreadPoolExecutor(threads, threads, KEEP_ALIVE_S, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                    private final AtomicInteger count = new AtomicInteger();
+
+                    @Override
+                    public Thread newThread(final Runnable r) {
+                        return new Thread(new Runnable() {
+                            @Override
+                            public void run() {
+                                // Keep background work from competing with the UI thread
+                                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                                r.run();
+                            }
+                        }, "kb-" + name + "-" + count.incrementAndGet());
+                    }
+                });
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        executor.execute(new Measured(task));
+    }
+
+    /** Like {@link #execute}, but returns a handle to cancel the task. */
+    public Future<?> submit(Runnable task) {
+        FutureTask<Void> future = new FutureTask<>(task, null);
+        execute(future);
+        return future;
+    }
+
+    /**
+     * An executor that runs its tasks one at a time, in submission order, on
+     * this pool's threads. Use it for work that must not overlap (e.g. writes
+     * to one file or database) without giving it a thread of its own.
+     */
+    public Executor newSerialExecutor() {
+        return new SerialExecutor();
+    }
+
+    public synchronized Stats snapshot() {
+        return stats.copy();
+    }
+
+    // ── Metrics ───────────────────────────────────────────────────────────────
+
+    private synchronized void onQueued() {
+        stats.submitted++;
+        stats.queued++;
+        stats.maxQueued = Math.max(stats.maxQueued, stats.queued);
+    }
+
+    private synchronized void onStarted(long waitMs) {
+        stats.queued--;
+        stats.totalWaitMs += waitMs;
+        stats.maxWaitMs = Math.max(stats.maxWaitMs, waitMs);
+    }
+
+    private synchronized void onFinished(long runMs, boolean ok) {
+        stats.totalRunMs += runMs;
+        if (ok) {
+            stats.completed++;
+        } else {
+            stats.failed++;
+        }
+    }
+
+    private final class Measured implements Runnable {
+        private final Runnable task;
+        private final long queuedAt;
+
+        Measured(Runnable task) {
+            this.task = task;
+            onQueued();
+            queuedAt = SystemClock.elapsedRealtime();
+        }
+
+        @Override
+        public void run() {
+            long start = SystemClock.elapsedRealtime();
+            onStarted(start - queuedAt);
+            boolean ok = false;
+            try {
+                task.run();
+                ok = true;
+            } finally {
+                onFinished(SystemClock.elapsedRealtime() - start, ok);
+            }
+        }
+    }
+
+    // ── Serial execution ──────────────────────────────────────────────────────
+
+    private final class SerialExecutor implements Executor {
+        private final ArrayDeque<Runnable> tasks = new ArrayDeque<>();
+        private boolean running;
+
+        @Override
+        public synchronized void execute(final Runnable task) {
+            tasks.add(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        task.run();
+                    } finally {
+                        scheduleNext();
+                    }
+                }
+            });
+            if (!running) scheduleNext();
+        }
+
+        private synchronized void scheduleNext() {
+            Runnable next = tasks.poll();
+            running = next != null;
+            if (next != null) TaskPool.this.execute(next);
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.kitchenboard.task;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The app's background threads, one bounded {@link TaskPool} per workload:
+ *
+ * <ul>
+ *   <li>{@link #network()} – blocking HTTP calls; sized like the per-host
+ *       limit of {@link com.kitchenboard.net.HttpTransport}.</li>
+ *   <li>{@link #disk()} – SQLite and file I/O; ordered work uses
+ *       {@link TaskPool#newSerialExecutor()}.</li>
+ *   <li>{@link #compute()} – CPU-bound work such as parsing or rendering.</li>
+ * </ul>
+ *
+ * Components submit to these pools instead of creating threads or
+ * executors of their own, so the thread count stays fixed however often
+ * screens are recreated. Work that belongs to a screen goes through a
+ * {@link TaskGroup} so it is cancelled with the screen.
+ */
+public final class TaskScheduler {
+
+    private static final int NETWORK_THREADS = 4;
+    private static final int DISK_THREADS = 2;
+
+    private static final TaskPool NETWORK = new TaskPool("network", NETWORK_THREADS);
+    private static final TaskPool DISK = new TaskPool("disk", DISK_THREADS);
+    private static final TaskPool COMPUTE = new TaskPool("compute",
+            Math.max(1, Runtime.getRuntime().availableProcessors() - 1));
+
+    private TaskScheduler() {}
+
+    public static TaskPool network() {
+        return NETWORK;
+    }
+
+    public static TaskPool disk() {
+        return DISK;
+    }
+
+    public static TaskPool compute() {
+        return COMPUTE;
+    }
+
+    /** Queue depth and latency totals of every pool, keyed by pool name. */
+    public static Map<String, TaskPool.Stats> snapshot() {
+        Map<String, TaskPool.Stats> stats = new LinkedHashMap<>();
+        for (TaskPool pool : new TaskPool[]{NETWORK, DISK, COMPUTE}) {
+            stats.put(pool.getName(), pool.snapshot());
+        }
+        return stats;
+    }
+}
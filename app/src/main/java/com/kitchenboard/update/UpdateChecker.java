@@ -1,16 +1,12 @@
 package com.kitchenboard.update;
 
-import android.os.Handler;
-import android.os.Looper;
+import com.kitchenboard.net.HttpRequest;
+import com.kitchenboard.net.HttpTransport;
+import com.kitchenboard.task.TaskGroup;
+import com.kitchenboard.task.TaskScheduler;
 
 import org.json.JSONObject;
 
-import java.io.BufferedReader;
-import java.io.InputStreamReader;
-import java.net.HttpURLConnection;
-import java.net.URL;
-import java.nio.charset.StandardCharsets;
-
 /**
  * Checks GitHub Releases for a newer version of the app.
  * Compares the current versionCode (= build number) against the latest release tag.
@@ -27,14 +23,16 @@ public class UpdateChecker {
     }
 
     /**
-     * Asynchronously checks for updates. The callback is always invoked on the main thread.
+     * Asynchronously checks for updates. The callback is always invoked on the main thread,
+     * unless {@code tasks} has been cancelled by then.
      *
+     * @param tasks              the caller's task group
      * @param currentVersionCode the installed app's versionCode (BuildConfig.VERSION_CODE)
      * @param callback           receives the result
      */
-    public static void checkForUpdate(final int currentVersionCode, final UpdateCallback callback) {
-        final Handler mainHandler = new Handler(Looper.getMainLooper());
-        new Thread(new Runnable() {
+    public static void checkForUpdate(final TaskGroup tasks, final int currentVersionCode,
+                                      final UpdateCallback callback) {
+        tasks.execute(TaskScheduler.network(), new Runnable() {
             @Override
             public void run() {
                 try {
@@ -64,14 +62,14 @@ public class UpdateChecker {
                         }
                         final String tag = tagName;
                         final String url = apkUrl;
-                        mainHandler.post(new Runnable() {
+                        tasks.post(new Runnable() {
                             @Override
                             public void run() {
                                 callback.onUpdateAvailable(tag, url);
                             }
                         });
                     } else {
-                        mainHandler.post(new Runnable() {
+                        tasks.post(new Runnable() {
                             @Override
                             public void run() {
                                 callback.onNoUpdate();
@@ -79,7 +77,7 @@ public class UpdateChecker {
                         });
                     }
                 } catch (final Exception e) {
-                    mainHandler.post(new Runnable() {
+                    tasks.post(new Runnable() {
                         @Override
                         public void run() {
                             callback.onError(e.getMessage());
@@ -87,7 +85,7 @@ public class UpdateChecker {
                     });
                 }
             }
-        }).start();
+        });
     }
 
     /**
@@ -106,30 +104,9 @@ public class UpdateChecker {
     }
 
     private static String httpGet(String urlString) throws Exception {
-        URL url = new URL(urlString);
-        HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-        conn.setRequestMethod("GET");
-        conn.setConnectTimeout(10000);
-        conn.setReadTimeout(10000);
-        conn.setRequestProperty("Accept", "application/json");
-        conn.setRequestProperty("User-Agent", "4KitchenBoard-Android");
-
-        int responseCode = conn.getResponseCode();
-        if (responseCode != HttpURLConnection.HTTP_OK) {
-            conn.disconnect();
-            throw new Exception("HTTP " + responseCode);
-        }
-
-        StringBuilder sb = new StringBuilder();
-        try (BufferedReader reader = new BufferedReader(
-                new InputStreamReader(conn.getInputStream(), StandardCharsets.UTF_8))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                sb.append(line);
-            }
-        } finally {
-            conn.disconnect();
-        }
-        return sb.toString();
+        return HttpTransport.get().fetchString(new HttpRequest.Builder(urlString)
+                .header("Accept", "application/json")
+                .header("User-Agent", "4KitchenBoard-Android")
+                .build());
     }
 }
@@ -0,0 +1,272 @@
+package com.kitchenboard.weather;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Calendar;
+
+/**
+ * A parsed Open-Meteo forecast, stored column by column in primitive arrays.
+ *
+ * Days are indexed from 0 (the first forecast day, today in the location's
+ * time zone) and are consecutive, so a calendar day maps to its index by
+ * subtraction. Hourly values are indexed {@code day * 24 + hour} in local
+ * time. All lookups are O(1); per-day aggregates (mean wind, dry hours) are
+ * computed once when the forecast is built. Values the API reported as null
+ * are {@link Float#NaN} (weather codes: -1). Instances are immutable.
+ */
+public final class Forecast {
+
+    static final int HOURS_PER_DAY = 24;
+    /** Weather code stored for missing values. */
+    public static final int NO_CODE = -1;
+
+    private static final long MS_PER_HOUR = 3_600_000L;
+
+    private final double currentTemperature;
+    private final int currentWeatherCode;
+    /** Offset of the location's local time from UTC. */
+    private final int utcOffsetSeconds;
+
+    // ── Daily columns ─────────────────────────────────────────────────────────
+    /** Days since 1970-01-01 (local date) for each daily entry. */
+    private final int[] epochDays;
+    private final int[] weatherCode;
+    private final float[] maxTemperature;
+    private final float[] minTemperature;
+    private final float[] precipitationSum;
+    private final float[] precipitationHours;
+    private final float[] maxWind;
+
+    // ── Hourly columns ────────────────────────────────────────────────────────
+    private final float[] hourlyTemperature;
+    private final float[] hourlyPrecipitation;
+    private final float[] hourlyWind;
+    private final int[] hourlyWeatherCode;
+
+    // ── Per-day aggregates ────────────────────────────────────────────────────
+    private final float[] meanWind;
+    private final float[] dryHours;
+
+    Forecast(double currentTemperature, int currentWeatherCode, int utcOffsetSeconds,
+             int[] epochDays, int[] weatherCode, float[] maxTemperature, float[] minTemperature,
+             float[] precipitationSum, float[] precipitationHours, float[] maxWind,
+             float[] hourlyTemperature, float[] hourlyPrecipitation, float[] hourlyWind,
+             int[] hourlyWeatherCode) {
+        this.currentTemperature = currentTemperature;
+        this.currentWeatherCode = currentWeatherCode;
+        this.utcOffsetSeconds = utcOffsetSeconds;
+        this.epochDays = epochDays;
+        this.weatherCode = weatherCode;
+        this.maxTemperature = maxTemperature;
+        this.minTemperature = minTemperature;
+        this.precipitationSum = precipitationSum;
+        this.precipitationHours = precipitationHours;
+        this.maxWind = maxWind;
+        this.hourlyTemperature = hourlyTemperature;
+        this.hourlyPrecipitation = hourlyPrecipitation;
+        this.hourlyWind = hourlyWind;
+        this.hourlyWeatherCode = hourlyWeatherCode;
+
+        int days = epochDays.length;
+        meanWind = new float[days];
+        dryHours = new float[days];
+        for (int d = 0; d < days; d++) {
+            meanWind[d] = computeMeanWind(d);
+            float wetHours = valueAt(precipitationHours, d);
+            dryHours[d] = Float.isNaN(wetHours)
+                    ? Float.NaN : Math.max(0f, HOURS_PER_DAY - wetHours);
+        }
+    }
+
+    public double getCurrentTemperature() { return currentTemperature; }
+    public int getCurrentWeatherCode() { return currentWeatherCode; }
+    public int getUtcOffsetSeconds() { return utcOffsetSeconds; }
+
+    // ── Time index ────────────────────────────────────────────────────────────
+
+    public int getDayCount() { return epochDays.length; }
+
+    public int getHourCount() { return hourlyWind.length; }
+
+    public int getEpochDay(int day) { return epochDays[day]; }
+
+    /** Index of the local calendar day {@code epochDay}, or -1 if outside the forecast. */
+    public int dayIndex(int epochDay) {
+        if (epochDays.length == 0) return -1;
+        int day = epochDay - epochDays[0];
+        return day >= 0 && day < epochDays.length ? day : -1;
+    }
+
+    /** Index into the hourly columns for {@code hour} (0-23) of {@code day}. */
+    public static int hourIndex(int day, int hour) {
+        return day * HOURS_PER_DAY + hour;
+    }
+
+    /**
+     * Hourly index covering the instant {@code timeMs} (epoch millis), or -1
+     * if the forecast does not reach it.
+     */
+    public int hourIndexAt(long timeMs) {
+        if (epochDays.length == 0) return -1;
+        long localHour = (timeMs + utcOffsetSeconds * 1000L) / MS_PER_HOUR;
+        long index = localHour - (long) epochDays[0] * HOURS_PER_DAY;
+        return index >= 0 && index < getHourCount() ? (int) index : -1;
+    }
+
+    /** Day index of the instant {@code timeMs} in the location's time zone, or -1. */
+    public int dayIndexAt(long timeMs) {
+        int hour = hourIndexAt(timeMs);
+        return hour >= 0 ? hour / HOURS_PER_DAY : -1;
+    }
+
+    /** {@link Calendar#SUNDAY} … {@link Calendar#SATURDAY} for {@code day}. */
+    public int getDayOfWeek(int day) {
+        // 1970-01-01 was a Thursday
+        return ((epochDays[day] + 4) % 7 + 7) % 7 + Calendar.SUNDAY;
+    }
+
+    /**
+     * First day index at or after {@code fromDay} with the given
+     * {@link Calendar} day of week, or -1.
+     */
+    public int findDay(int dayOfWeek, int fromDay) {
+        for (int i = Math.max(0, fromDay); i < epochDays.length; i++) {
+            if (getDayOfWeek(i) == dayOfWeek) return i;
+        }
+        return -1;
+    }
+
+    // ── Daily values ──────────────────────────────────────────────────────────
+
+    public int getWeatherCode(int day) { return codeAt(weatherCode, day); }
+    public float getMaxTemperature(int day) { return valueAt(maxTemperature, day); }
+    public float getMinTemperature(int day) { return valueAt(minTemperature, day); }
+    public float getPrecipitationSum(int day) { return valueAt(precipitationSum, day); }
+    public float getPrecipitationHours(int day) { return valueAt(precipitationHours, day); }
+    public float getMaxWind(int day) { return valueAt(maxWind, day); }
+
+    /** Mean of the day's hourly wind speeds, or NaN when none were reported. */
+    public float getMeanWind(int day) { return meanWind[day]; }
+
+    /** Hours without precipitation (24 - precipitation hours), or NaN. */
+    public float getDryHours(int day) { return dryHours[day]; }
+
+    // ── Hourly values ─────────────────────────────────────────────────────────
+
+    public float getHourlyTemperature(int index) { return valueAt(hourlyTemperature, index); }
+    public float getHourlyPrecipitation(int index) { return valueAt(hourlyPrecipitation, index); }
+    public float getHourlyWind(int index) { return valueAt(hourlyWind, index); }
+    public int getHourlyWeatherCode(int index) { return codeAt(hourlyWeatherCode, index); }
+
+    // ── Binary form (see ForecastStore) ───────────────────────────────────────
+
+    /** Writes the source columns; aggregates are recomputed by {@link #readFrom}. */
+    void writeTo(DataOutputStream out) throws IOException {
+        out.writeDouble(currentTemperature);
+        out.writeInt(currentWeatherCode);
+        out.writeInt(utcOffsetSeconds);
+        writeInts(out, epochDays);
+        writeInts(out, weatherCode);
+        writeFloats(out, maxTemperature);
+        writeFloats(out, minTemperature);
+        writeFloats(out, precipitationSum);
+        writeFloats(out, precipitationHours);
+        writeFloats(out, maxWind);
+        writeFloats(out, hourlyTemperature);
+        writeFloats(out, hourlyPrecipitation);
+        writeFloats(out, hourlyWind);
+        writeInts(out, hourlyWeatherCode);
+    }
+
+    static Forecast readFrom(DataInputStream in) throws IOException {
+        double currentTemperature = in.readDouble();
+        int currentWeatherCode = in.readInt();
+        int utcOffsetSeconds = in.readInt();
+        int[] epochDays = readInts(in);
+        if (epochDays == null) throw new IOException("Forecast without days");
+        int[] weatherCode = readInts(in);
+        float[] maxTemperature = readFloats(in);
+        float[] minTemperature = readFloats(in);
+        float[] precipitationSum = readFloats(in);
+        float[] precipitationHours = readFloats(in);
+        float[] maxWind = readFloats(in);
+        float[] hourlyTemperature = readFloats(in);
+        float[] hourlyPrecipitation = readFloats(in);
+        float[] hourlyWind = readFloats(in);
+        int[] hourlyWeatherCode = readInts(in);
+        return new Forecast(currentTemperature, currentWeatherCode, utcOffsetSeconds,
+                epochDays, weatherCode, maxTemperature, minTemperature,
+                precipitationSum, precipitationHours, maxWind,
+                hourlyTemperature, hourlyPrecipitation,
+                hourlyWind != null ? hourlyWind : new float[0], hourlyWeatherCode);
+    }
+
+    /** Length-prefixed column; -1 marks a column the response did not have. */
+    private static void writeFloats(DataOutputStream out, float[] column) throws IOException {
+        if (column == null) {
+            out.writeInt(-1);
+            return;
+        }
+        out.writeInt(column.length);
+        for (float v : column) out.writeFloat(v);
+    }
+
+    private static void writeInts(DataOutputStream out, int[] column) throws IOException {
+        if (column == null) {
+            out.writeInt(-1);
+            return;
+        }
+        out.writeInt(column.length);
+        for (int v : column) out.writeInt(v);
+    }
+
+    private static float[] readFloats(DataInputStream in) throws IOException {
+        int n = readLength(in);
+        if (n < 0) return null;
+        float[] column = new float[n];
+        for (int i = 0; i < n; i++) column[i] = in.readFloat();
+        return column;
+    }
+
+    private static int[] readInts(DataInputStream in) throws IOException {
+        int n = readLength(in);
+        if (n < 0) return null;
+        int[] column = new int[n];
+        for (int i = 0; i < n; i++) column[i] = in.readInt();
+        return column;
+    }
+
+    private static int readLength(DataInputStream in) throws IOException {
+        int n = in.readInt();
+        // 16 days of hourly values is the API maximum; anything larger is corrupt
+        if (n < -1 || n > 16 * HOURS_PER_DAY * 4) throw new IOException("Bad column length " + n);
+        return n;
+    }
+
+    // ── Helpers ───────────────────────────────────────────────────────────────
+
+    private float computeMeanWind(int day) {
+        int base = hourIndex(day, 0);
+        int end = Math.min(base + HOURS_PER_DAY, hourlyWind.length);
+        float sum = 0f;
+        int count = 0;
+        for (int h = base; h < end; h++) {
+            if (!Float.isNaN(hourlyWind[h])) {
+                sum += hourlyWind[h];
+                count++;
+            }
+        }
+        return count > 0 ? sum / count : Float.NaN;
+    }
+
+    private static float valueAt(float[] column, int index) {
+        return column != null && index >= 0 && index < column.length
+                ? column[index] : Float.NaN;
+    }
+
+    private static int codeAt(int[] column, int index) {
+        return column != null && index >= 0 && index < column.length
+                ? column[index] : NO_CODE;
+    }
+}
@@ -0,0 +1,257 @@
+package com.kitchenboard.weather;
+
+import android.util.JsonReader;
+import android.util.JsonToken;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Streaming decoder for Open-Meteo forecast responses (single or multi-location).
+ *
+ * Reads the JSON token by token with {@link JsonReader} and writes numbers
+ * straight into the primitive columns of a {@link Forecast}; no
+ * intermediate String, JSON tree or boxed values are created. Fields the
+ * app does not use are skipped, including the 336 hourly timestamps: the
+ * hourly series starts at midnight of the first day, so the daily dates
+ * and the UTC offset are enough to place every hour.
+ */
+final class ForecastParser {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private double currentTemperature = Double.NaN;
+    private int currentWeatherCode = Forecast.NO_CODE;
+    private int utcOffsetSeconds;
+    private int[] epochDays;
+    private int[] weatherCode;
+    private float[] maxTemperature;
+    private float[] minTemperature;
+    private float[] precipitationSum;
+    private float[] precipitationHours;
+    private float[] maxWind;
+    private float[] hourlyTemperature;
+    private float[] hourlyPrecipitation;
+    private float[] hourlyWind;
+    private int[] hourlyWeatherCode;
+
+    private ForecastParser() {}
+
+    /**
+     * Parses a response from {@code in}: one forecast object, or an array of
+     * them when several locations were requested. The stream is not closed.
+     */
+    static List<Forecast> parseAll(InputStream in) throws IOException {
+        JsonReader reader = new JsonReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        List<Forecast> forecasts = new ArrayList<>();
+        if (reader.peek() == JsonToken.BEGIN_ARRAY) {
+            reader.beginArray();
+            while (reader.hasNext()) {
+                forecasts.add(parseOne(reader));
+            }
+            reader.endArray();
+        } else {
+            forecasts.add(parseOne(reader));
+        }
+        return forecasts;
+    }
+
+    private static Forecast parseOne(JsonReader reader) throws IOException {
+        ForecastParser p = new ForecastParser();
+        p.readForecast(reader);
+        return p.build();
+    }
+
+    private void readForecast(JsonReader reader) throws IOException {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "current_weather":
+                    readCurrent(reader);
+                    break;
+                case "daily":
+                    readDaily(reader);
+                    break;
+                case "hourly":
+                    readHourly(reader);
+                    break;
+                case "utc_offset_seconds":
+                    utcOffsetSeconds = reader.nextInt();
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
+        }
+        reader.endObject();
+    }
+
+    private Forecast build() throws IOException {
+        if (Double.isNaN(currentTemperature) || epochDays == null || maxTemperature == null) {
+            throw new IOException("Incomplete forecast response");
+        }
+        return new Forecast(currentTemperature, currentWeatherCode, utcOffsetSeconds,
+                epochDays, weatherCode, maxTemperature, minTemperature,
+                precipitationSum, precipitationHours, maxWind,
+                hourlyTemperature, hourlyPrecipitation,
+                hourlyWind != null ? hourlyWind : new float[0], hourlyWeatherCode);
+    }
+
+    // ── Sections ──────────────────────────────────────────────────────────────
+
+    private void readCurrent(JsonReader reader) throws IOException {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "temperature":
+                    currentTemperature = reader.nextDouble();
+                    break;
+                case "weathercode":
+                    currentWeatherCode = reader.nextInt();
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
+        }
+        reader.endObject();
+    }
+
+    private void readDaily(JsonReader reader) throws IOException {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "time":
+                    epochDays = readDates(reader);
+                    break;
+                case "weathercode":
+                    weatherCode = readCodes(reader);
+                    break;
+                case "temperature_2m_max":
+                    maxTemperature = readFloats(reader);
+                    break;
+                case "temperature_2m_min":
+                    minTemperature = readFloats(reader);
+                    break;
+                case "precipitation_sum":
+                    precipitationSum = readFloats(reader);
+                    break;
+                case "precipitation_hours":
+                    precipitationHours = readFloats(reader);
+                    break;
+                case "windspeed_10m_max":
+                    maxWind = readFloats(reader);
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
+        }
+        reader.endObject();
+    }
+
+    private void readHourly(JsonReader reader) throws IOException {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "temperature_2m":
+                    hourlyTemperature = readFloats(reader);
+                    break;
+                case "precipitation":
+                    hourlyPrecipitation = readFloats(reader);
+                    break;
+                case "windspeed_10m":
+                    hourlyWind = readFloats(reader);
+                    break;
+                case "weathercode":
+                    hourlyWeatherCode = readCodes(reader);
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
+        }
+        reader.endObject();
+    }
+
+    // ── Columns ───────────────────────────────────────────────────────────────
+
+    /** Reads a number array; nulls become NaN. */
+    private static float[] readFloats(JsonReader reader) throws IOException {
+        float[] values = new float[INITIAL_CAPACITY];
+        int n = 0;
+        reader.beginArray();
+        while (reader.hasNext()) {
+            if (n == values.length) values = Arrays.copyOf(values, n * 2);
+            if (reader.peek() == JsonToken.NULL) {
+                reader.nextNull();
+                values[n++] = Float.NaN;
+            } else {
+                values[n++] = (float) reader.nextDouble();
+            }
+        }
+        reader.endArray();
+        return n == values.length ? values : Arrays.copyOf(values, n);
+    }
+
+    /** Reads a WMO weather code array; nulls become {@link Forecast#NO_CODE}. */
+    private static int[] readCodes(JsonReader reader) throws IOException {
+        int[] codes = new int[INITIAL_CAPACITY];
+        int n = 0;
+        reader.beginArray();
+        while (reader.hasNext()) {
+            if (n == codes.length) codes = Arrays.copyOf(codes, n * 2);
+            if (reader.peek() == JsonToken.NULL) {
+                reader.nextNull();
+                codes[n++] = Forecast.NO_CODE;
+            } else {
+                codes[n++] = reader.nextInt();
+            }
+        }
+        reader.endArray();
+        return n == codes.length ? codes : Arrays.copyOf(codes, n);
+    }
+
+    /** Reads an array of "yyyy-MM-dd" strings as days since the epoch. */
+    private static int[] readDates(JsonReader reader) throws IOException {
+        int[] days = new int[INITIAL_CAPACITY];
+        int n = 0;
+        reader.beginArray();
+        while (reader.hasNext()) {
+            if (n == days.length) days = Arrays.copyOf(days, n * 2);
+            days[n++] = parseEpochDay(reader.nextString());
+        }
+        reader.endArray();
+        return n == days.length ? days : Arrays.copyOf(days, n);
+    }
+
+    static int parseEpochDay(String isoDate) throws IOException {
+        if (isoDate.length() < 10 || isoDate.charAt(4) != '-' || isoDate.charAt(7) != '-') {
+            throw new IOException("Bad date: " + isoDate);
+        }
+        try {
+            int year = Integer.parseInt(isoDate.substring(0, 4));
+            int month = Integer.parseInt(isoDate.substring(5, 7));
+            int day = Integer.parseInt(isoDate.substring(8, 10));
+            return epochDay(year, month, day);
+        } catch (NumberFormatException e) {
+            throw new IOException("Bad date: " + isoDate, e);
+        }
+    }
+
+    /** Days since 1970-01-01 for a Gregorian date (year ≥ 1, month 1-12). */
+    static int epochDay(int year, int month, int day) {
+        // Shift the year to start in March so the leap day comes last
+        int y = month <= 2 ? year - 1 : year;
+        int era = y / 400;
+        int yearOfEra = y - era * 400;
+        int dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097 + dayOfEra - 719468;
+    }
+}
@@ -0,0 +1,176 @@
+package com.kitchenboard.weather;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+
+import com.kitchenboard.task.TaskScheduler;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Executor;
+
+/**
+ * Keeps the last forecast per location on disk, so the weather panel can be
+ * drawn at start-up (and offline) before the network answers.
+ *
+ * Each location is one small binary file named after its coordinates
+ * rounded to two decimals (about 1 km). Files are written to a temp file
+ * and renamed, and read and written one at a time on the disk pool;
+ * results are delivered on the main thread.
+ */
+public final class ForecastStore {
+
+    /** Receives stored forecasts on the main thread. */
+    public interface Callback {
+        /**
+         * One entry per requested location, in order; an entry is null when
+         * nothing (usable) is stored for that location.
+         */
+        void onLoaded(List<StoredWeather> stored);
+    }
+
+    /** A stored forecast and when it was fetched. */
+    public static final class StoredWeather {
+        public final WeatherData data;
+        public final long fetchedAtMs;
+
+        StoredWeather(WeatherData data, long fetchedAtMs) {
+            this.data = data;
+            this.fetchedAtMs = fetchedAtMs;
+        }
+
+        /** Younger than {@link #TTL_MS}; no refresh needed yet. */
+        public boolean isFresh() {
+            long age = System.currentTimeMillis() - fetchedAtMs;
+            return age >= 0 && age < TTL_MS;
+        }
+    }
+
+    /** Stored forecasts younger than this are shown without refreshing. */
+    public static final long TTL_MS = 30 * 60_000L;
+    /** Older files are neither shown nor kept. */
+    static final long MAX_AGE_MS = 3 * 24 * 60 * 60_000L;
+
+    private static final int MAGIC = 0x4B424643; // "KBFC"
+    private static final int FORMAT_VERSION = 1;
+    private static final String SUFFIX = ".bin";
+
+    private static ForecastStore instance;
+
+    private final File directory;
+    private final Executor executor = TaskScheduler.disk().newSerialExecutor();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    /** The shared store; call on the main thread. */
+    public static ForecastStore get(Context context) {
+        if (instance == null) {
+            instance = new ForecastStore(new File(
+                    context.getApplicationContext().getFilesDir(), "forecasts"));
+        }
+        return instance;
+    }
+
+    private ForecastStore(File directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Loads the forecasts stored for the locations ({@code latitudes[i]},
+     * {@code longitudes[i]}) in the background.
+     */
+    public void load(final double[] latitudes, final double[] longitudes,
+                     final Callback callback) {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final List<StoredWeather> stored = new ArrayList<>(latitudes.length);
+                for (int i = 0; i < latitudes.length; i++) {
+                    stored.add(read(fileFor(latitudes[i], longitudes[i])));
+                }
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        callback.onLoaded(stored);
+                    }
+                });
+            }
+        });
+    }
+
+    /** Stores a freshly fetched forecast in the background and drops expired files. */
+    public void save(final WeatherData data) {
+        if (data.getForecast() == null) return;
+        final long fetchedAtMs = System.currentTimeMillis();
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                write(fileFor(data.getLatitude(), data.getLongitude()), data, fetchedAtMs);
+                deleteExpired();
+            }
+        });
+    }
+
+    // ── Files ─────────────────────────────────────────────────────────────────
+
+    private File fileFor(double latitude, double longitude) {
+        return new File(directory, String.format(Locale.US, "%d_%d%s",
+                Math.round(latitude * 100), Math.round(longitude * 100), SUFFIX));
+    }
+
+    private static StoredWeather read(File file) {
+        if (!file.isFile()) return null;
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) return null;
+            long fetchedAtMs = in.readLong();
+            if (System.currentTimeMillis() - fetchedAtMs > MAX_AGE_MS) return null;
+            double latitude = in.readDouble();
+            double longitude = in.readDouble();
+            String cityName = in.readUTF();
+            Forecast forecast = Forecast.readFrom(in);
+            return new StoredWeather(WeatherApiClient.toWeatherData(
+                    forecast, cityName, latitude, longitude), fetchedAtMs);
+        } catch (IOException e) {
+            file.delete();
+            return null;
+        }
+    }
+
+    private void write(File file, WeatherData data, long fetchedAtMs) {
+        if (!directory.isDirectory() && !directory.mkdirs()) return;
+        File tmp = new File(directory, file.getName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(tmp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeLong(fetchedAtMs);
+            out.writeDouble(data.getLatitude());
+            out.writeDouble(data.getLongitude());
+            out.writeUTF(data.getCityName());
+            data.getForecast().writeTo(out);
+        } catch (IOException e) {
+            tmp.delete();
+            return;
+        }
+        if (!tmp.renameTo(file)) tmp.delete();
+    }
+
+    private void deleteExpired() {
+        File[] files = directory.listFiles();
+        if (files == null) return;
+        long cutoff = System.currentTimeMillis() - MAX_AGE_MS;
+        for (File f : files) {
+            if (f.lastModified() < cutoff) f.delete();
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package com.kitchenboard.weather;
+
+import android.content.Context;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Remembers geocoding results so a weather refresh needs only the forecast
+ * request.
+ *
+ * Forward entries map a typed city name (case-insensitive) to the place the
+ * geocoding API resolved it to; reverse entries map coordinates rounded to
+ * two decimals (about 1 km) to the locality the platform geocoder returned.
+ * Both live in one LRU map of at most {@link #MAX_ENTRIES} entries that is
+ * mirrored to a small file. Places do not move, so entries never expire.
+ *
+ * Methods do disk I/O (the file is read on first use and rewritten after
+ * each insertion) and must be called off the main thread. Thread-safe.
+ */
+public final class GeocodeCache {
+
+    /** A resolved place. */
+    public static final class Place {
+        public final String name;
+        public final double latitude;
+        public final double longitude;
+
+        public Place(String name, double latitude, double longitude) {
+            this.name = name;
+            this.latitude = latitude;
+            this.longitude = longitude;
+        }
+    }
+
+    static final int MAX_ENTRIES = 64;
+
+    private static final int FORMAT_VERSION = 1;
+
+    private static GeocodeCache instance;
+
+    private final File file;
+    private final LinkedHashMap<String, Place> entries =
+            new LinkedHashMap<String, Place>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Place> eldest) {
+                    return size() > MAX_ENTRIES;
+                }
+            };
+    private boolean loaded;
+
+    /** The shared cache; cheap, no I/O until the first lookup. */
+    public static synchronized GeocodeCache get(Context context) {
+        if (instance == null) {
+            instance = new GeocodeCache(new File(
+                    context.getApplicationContext().getFilesDir(), "geocode.bin"));
+        }
+        return instance;
+    }
+
+    private GeocodeCache(File file) {
+        this.file = file;
+    }
+
+    // ── Forward: city name → place ────────────────────────────────────────────
+
+    public synchronized Place getPlace(String cityName) {
+        load();
+        return entries.get(nameKey(cityName));
+    }
+
+    public synchronized void putPlace(String cityName, Place place) {
+        load();
+        entries.put(nameKey(cityName), place);
+        // Typing the resolved name later should hit too
+        entries.put(nameKey(place.name), place);
+        save();
+    }
+
+    // ── Reverse: coordinates → locality ───────────────────────────────────────
+
+    /** Locality name near the coordinates, or null if not cached. */
+    public synchronized String getLocality(double latitude, double longitude) {
+        load();
+        Place place = entries.get(coordinateKey(latitude, longitude));
+        return place != null ? place.name : null;
+    }
+
+    public synchronized void putLocality(double latitude, double longitude, String locality) {
+        load();
+        entries.put(coordinateKey(latitude, longitude), new Place(locality, latitude, longitude));
+        save();
+    }
+
+    // ── Keys ──────────────────────────────────────────────────────────────────
+
+    private static String nameKey(String cityName) {
+        return "n:" + cityName.trim().toLowerCase(Locale.ROOT);
+    }
+
+    private static String coordinateKey(double latitude, double longitude) {
+        return "r:" + Math.round(latitude * 100) + "_" + Math.round(longitude * 100);
+    }
+
+    // ── File ──────────────────────────────────────────────────────────────────
+
+    private void load() {
+        if (loaded) return;
+        loaded = true;
+        if (!file.isFile()) return;
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != FORMAT_VERSION) return;
+            int count = Math.min(in.readInt(), MAX_ENTRIES);
+            // Stored least recently used first, which rebuilds the access order
+            for (int i = 0; i < count; i++) {
+                String key = in.readUTF();
+                entries.put(key, new Place(in.readUTF(), in.readDouble(), in.readDouble()));
+            }
+        } catch (IOException e) {
+            entries.clear();
+            file.delete();
+        }
+    }
+
+    private void save() {
+        File tmp = new File(file.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(tmp)))) {
+            out.writeInt(FORMAT_VERSION);
+            out.writeInt(entries.size());
+            for (Map.Entry<String, Place> e : entries.entrySet()) {
+                out.writeUTF(e.getKey());
+                out.writeUTF(e.getValue().name);
+                out.writeDouble(e.getValue().latitude);
+                out.writeDouble(e.getValue().longitude);
+            }
+        } catch (IOException e) {
+            tmp.delete();
+            return;
+        }
+        if (!tmp.renameTo(file)) tmp.delete();
+    }
+}
@@ -1,19 +1,19 @@
 package com.kitchenboard.weather;
 
-import android.os.Handler;
-import android.os.Looper;
+import android.text.TextUtils;
+
+import com.kitchenboard.net.HttpRequest;
+import com.kitchenboard.net.HttpTransport;
 
 import org.json.JSONArray;
 import org.json.JSONObject;
 
-import java.io.BufferedReader;
-import java.io.InputStreamReader;
-import java.net.HttpURLConnection;
-import java.net.URL;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
 import java.net.URLEncoder;
-import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Calendar;
-import java.util.Date;
+import java.util.List;
 import java.util.Locale;
 
 /**
@@ -28,202 +28,135 @@ public class WeatherApiClient {
     private static final String WEATHER_URL =
             "https://api.open-meteo.com/v1/forecast?latitude=%s&longitude=%s" +
             "&current_weather=true" +
-            "&daily=temperature_2m_max,precipitation_sum,precipitation_hours,windspeed_10m_max" +
-            "&hourly=windspeed_10m" +
+            "&daily=weathercode,temperature_2m_max,temperature_2m_min," +
+            "precipitation_sum,precipitation_hours,windspeed_10m_max" +
+            "&hourly=temperature_2m,precipitation,weathercode,windspeed_10m" +
             "&timezone=auto&forecast_days=14";
 
-    public interface WeatherCallback {
-        void onSuccess(WeatherData data);
-        void onError(String message);
-    }
+    /** Most locations fetched together; more would make one request unwieldy. */
+    public static final int MAX_LOCATIONS = 5;
 
     /**
-     * Fetches weather directly from coordinates (skips geocoding step).
-     * @param cityName display name for the location (e.g. from reverse geocoding)
+     * Blocking: resolves each of {@code cityNames} (from {@code geocodeCache}
+     * when it was looked up before, otherwise with the geocoding API) and
+     * fetches all their forecasts in a single request. Returns one entry per
+     * location, in request order. Names that cannot be resolved are left
+     * out; the call fails only if none can. Exception messages are ready to
+     * be shown.
      */
-    public static void fetchWeatherByCoords(final double latitude, final double longitude,
-                                             final String cityName, final WeatherCallback callback) {
-        final Handler mainHandler = new Handler(Looper.getMainLooper());
-        new Thread(new Runnable() {
-            @Override
-            public void run() {
-                try {
-                    String weatherResponse = httpGet(String.format(WEATHER_URL,
-                            latitude, longitude));
-                    JSONObject weatherJson = new JSONObject(weatherResponse);
-
-                    JSONObject current = weatherJson.getJSONObject("current_weather");
-                    double currentTemp = current.getDouble("temperature");
-                    int weatherCode = current.getInt("weathercode");
-
-                    JSONObject daily = weatherJson.getJSONObject("daily");
-                    JSONArray maxTemps = daily.getJSONArray("temperature_2m_max");
-                    JSONArray precip = daily.getJSONArray("precipitation_sum");
-                    double highTemp = maxTemps.getDouble(0);
-                    double precipMm = precip.isNull(0) ? 0.0 : precip.getDouble(0);
-
-                    WeatherData.WeekendDay[] weekend = parseWeekendDays(daily,
-                            weatherJson.optJSONObject("hourly"));
-
-                    final WeatherData data = new WeatherData(
-                            currentTemp, highTemp, precipMm, weatherCode, cityName,
-                            weekend[0], weekend[1]);
-                    mainHandler.post(new Runnable() {
-                        @Override public void run() { callback.onSuccess(data); }
-                    });
-                } catch (final Exception e) {
-                    mainHandler.post(new Runnable() {
-                        @Override public void run() {
-                            callback.onError("Failed to load weather: " + e.getMessage());
-                        }
-                    });
+    public static List<WeatherData> loadWeather(List<String> cityNames,
+                                                GeocodeCache geocodeCache) throws IOException {
+        List<GeocodeCache.Place> places = new ArrayList<>();
+        List<Forecast> forecasts = null;
+        try {
+            // Step 1: Geocode city names
+            for (String cityName : cityNames) {
+                if (places.size() == MAX_LOCATIONS) break;
+                GeocodeCache.Place place = geocodeCache.getPlace(cityName);
+                if (place == null) {
+                    place = geocode(cityName);
+                    if (place == null) continue;
+                    geocodeCache.putPlace(cityName, place);
                 }
+                places.add(place);
             }
-        }).start();
+
+            // Step 2: Fetch all forecasts at once
+            if (!places.isEmpty()) forecasts = fetchForecasts(places);
+        } catch (Exception e) {
+            throw new IOException("Failed to load weather: " + e.getMessage(), e);
+        }
+        if (places.isEmpty()) {
+            throw new IOException("City not found: " + TextUtils.join(", ", cityNames));
+        }
+
+        List<WeatherData> locations = new ArrayList<>(places.size());
+        for (int i = 0; i < places.size(); i++) {
+            GeocodeCache.Place place = places.get(i);
+            locations.add(toWeatherData(forecasts.get(i), place.name,
+                    place.latitude, place.longitude));
+        }
+        return locations;
     }
 
-    public static void fetchWeather(final String cityName, final WeatherCallback callback) {
-        final Handler mainHandler = new Handler(Looper.getMainLooper());
-        new Thread(new Runnable() {
-            @Override
-            public void run() {
-                try {
-                    // Step 1: Geocode city name
-                    String encodedCity = URLEncoder.encode(cityName, "UTF-8");
-                    String geoResponse = httpGet(String.format(GEOCODING_URL, encodedCity));
-                    JSONObject geoJson = new JSONObject(geoResponse);
-                    JSONArray results = geoJson.optJSONArray("results");
-                    if (results == null || results.length() == 0) {
-                        final String err = "City not found: " + cityName;
-                        mainHandler.post(new Runnable() {
-                            @Override public void run() { callback.onError(err); }
-                        });
-                        return;
-                    }
-                    JSONObject place = results.getJSONObject(0);
-                    final String resolvedCity = place.getString("name");
-                    final double latitude = place.getDouble("latitude");
-                    final double longitude = place.getDouble("longitude");
-
-                    // Step 2: Fetch weather
-                    String weatherResponse = httpGet(String.format(WEATHER_URL,
-                            latitude, longitude));
-                    JSONObject weatherJson = new JSONObject(weatherResponse);
-
-                    JSONObject current = weatherJson.getJSONObject("current_weather");
-                    double currentTemp = current.getDouble("temperature");
-                    int weatherCode = current.getInt("weathercode");
-
-                    JSONObject daily = weatherJson.getJSONObject("daily");
-                    JSONArray maxTemps = daily.getJSONArray("temperature_2m_max");
-                    JSONArray precip = daily.getJSONArray("precipitation_sum");
-                    double highTemp = maxTemps.getDouble(0);
-                    double precipMm = precip.isNull(0) ? 0.0 : precip.getDouble(0);
-
-                    WeatherData.WeekendDay[] weekend = parseWeekendDays(daily,
-                            weatherJson.optJSONObject("hourly"));
-
-                    final WeatherData data = new WeatherData(
-                            currentTemp, highTemp, precipMm, weatherCode, resolvedCity,
-                            weekend[0], weekend[1]);
-                    mainHandler.post(new Runnable() {
-                        @Override public void run() { callback.onSuccess(data); }
-                    });
-
-                } catch (final Exception e) {
-                    mainHandler.post(new Runnable() {
-                        @Override public void run() {
-                            callback.onError("Failed to load weather: " + e.getMessage());
-                        }
-                    });
-                }
-            }
-        }).start();
+    /** Blocking: the first geocoding API match for {@code cityName}, or null. */
+    private static GeocodeCache.Place geocode(String cityName) throws Exception {
+        String encodedCity = URLEncoder.encode(cityName, "UTF-8");
+        String geoResponse = httpGet(String.format(GEOCODING_URL, encodedCity));
+        JSONArray results = new JSONObject(geoResponse).optJSONArray("results");
+        if (results == null || results.length() == 0) return null;
+        JSONObject place = results.getJSONObject(0);
+        return new GeocodeCache.Place(place.getString("name"),
+                place.getDouble("latitude"), place.getDouble("longitude"));
     }
 
     /**
-     * Parses forecast arrays to find the next Saturday and next Sunday.
-     * Returns an array of length 2: [nextSaturday, nextSunday], either may be null.
+     * Blocking: downloads the forecasts for all {@code places} with one
+     * request (Open-Meteo takes comma-separated coordinate lists) and decodes
+     * them in one streaming pass with {@link ForecastParser}.
      */
-    private static WeatherData.WeekendDay[] parseWeekendDays(JSONObject daily,
-                                                               JSONObject hourly) {
-        WeatherData.WeekendDay[] result = new WeatherData.WeekendDay[2];
-        try {
-            JSONArray timeArr = daily.getJSONArray("time");
-            JSONArray maxTempArr = daily.getJSONArray("temperature_2m_max");
-            JSONArray precipHoursArr = daily.optJSONArray("precipitation_hours");
-            JSONArray maxWindArr = daily.optJSONArray("windspeed_10m_max");
-            JSONArray hourlyWindArr = hourly != null ? hourly.optJSONArray("windspeed_10m") : null;
-
-            SimpleDateFormat fmt = new SimpleDateFormat("yyyy-MM-dd", Locale.US);
-
-            for (int i = 0; i < timeArr.length(); i++) {
-                Date d = fmt.parse(timeArr.getString(i));
-                if (d == null) continue;
-                Calendar cal = Calendar.getInstance();
-                cal.setTime(d);
-                int dow = cal.get(Calendar.DAY_OF_WEEK);
-                boolean isSat = dow == Calendar.SATURDAY;
-                boolean isSun = dow == Calendar.SUNDAY;
-
-                if ((isSat && result[0] == null) || (isSun && result[1] == null)) {
-                    double maxTemp = maxTempArr.isNull(i) ? 0.0 : maxTempArr.getDouble(i);
-                    double precipH = (precipHoursArr == null || precipHoursArr.isNull(i))
-                            ? 0.0 : precipHoursArr.getDouble(i);
-                    double dryHours = Math.max(0.0, 24.0 - precipH);
-                    double maxWind = (maxWindArr == null || maxWindArr.isNull(i))
-                            ? 0.0 : maxWindArr.getDouble(i);
-
-                    // Calculate mean wind from 24 hourly values for this day
-                    double meanWind = 0.0;
-                    if (hourlyWindArr != null) {
-                        int count = 0;
-                        int base = i * 24;
-                        for (int h = base; h < base + 24 && h < hourlyWindArr.length(); h++) {
-                            if (!hourlyWindArr.isNull(h)) {
-                                meanWind += hourlyWindArr.getDouble(h);
-                                count++;
-                            }
-                        }
-                        if (count > 0) meanWind /= count;
-                    }
-
-                    String dayName = isSat ? "Saturday" : "Sunday";
-                    WeatherData.WeekendDay wd = new WeatherData.WeekendDay(
-                            dayName, maxTemp, dryHours, maxWind, meanWind);
-                    if (isSat && result[0] == null) result[0] = wd;
-                    if (isSun && result[1] == null) result[1] = wd;
-                }
-                if (result[0] != null && result[1] != null) break;
+    private static List<Forecast> fetchForecasts(List<GeocodeCache.Place> places)
+            throws Exception {
+        StringBuilder latitudes = new StringBuilder();
+        StringBuilder longitudes = new StringBuilder();
+        for (GeocodeCache.Place place : places) {
+            if (latitudes.length() > 0) {
+                latitudes.append(',');
+                longitudes.append(',');
             }
-        } catch (Exception ignored) {}
-        return result;
+            latitudes.append(String.format(Locale.US, "%.4f", place.latitude));
+            longitudes.append(String.format(Locale.US, "%.4f", place.longitude));
+        }
+        byte[] body = HttpTransport.get().fetchBytes(jsonRequest(
+                String.format(WEATHER_URL, latitudes, longitudes)));
+        List<Forecast> forecasts = ForecastParser.parseAll(new ByteArrayInputStream(body));
+        if (forecasts.size() != places.size()) {
+            throw new IOException("Expected " + places.size() + " forecasts, got "
+                    + forecasts.size());
+        }
+        return forecasts;
     }
 
-    private static String httpGet(String urlString) throws Exception {
-        URL url = new URL(urlString);
-        HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-        conn.setRequestMethod("GET");
-        conn.setConnectTimeout(10000);
-        conn.setReadTimeout(10000);
-        conn.setRequestProperty("Accept", "application/json");
-
-        int responseCode = conn.getResponseCode();
-        if (responseCode != HttpURLConnection.HTTP_OK) {
-            conn.disconnect();
-            throw new Exception("HTTP " + responseCode);
-        }
+    /**
+     * Builds the panel summary from a (fetched or stored) forecast. "Today"
+     * is the current date at the location, so an older stored forecast
+     * still yields the right day.
+     */
+    static WeatherData toWeatherData(Forecast forecast, String cityName,
+                                     double latitude, double longitude) {
+        int today = Math.max(0, forecast.dayIndexAt(System.currentTimeMillis()));
+        return new WeatherData(
+                forecast.getCurrentTemperature(), orZero(forecast.getMaxTemperature(today)),
+                orZero(forecast.getPrecipitationSum(today)), forecast.getCurrentWeatherCode(),
+                cityName,
+                weekendDay(forecast, today, Calendar.SATURDAY, "Saturday"),
+                weekendDay(forecast, today, Calendar.SUNDAY, "Sunday"),
+                forecast, latitude, longitude);
+    }
 
-        StringBuilder sb = new StringBuilder();
-        try (BufferedReader reader = new BufferedReader(
-                new InputStreamReader(conn.getInputStream()))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                sb.append(line);
-            }
-        } finally {
-            conn.disconnect();
-        }
-        return sb.toString();
+    /** The first day from {@code today} falling on {@code dayOfWeek}, or null if none is in range. */
+    private static WeatherData.WeekendDay weekendDay(Forecast forecast, int today,
+                                                     int dayOfWeek, String dayName) {
+        int day = forecast.findDay(dayOfWeek, today);
+        if (day < 0) return null;
+        return new WeatherData.WeekendDay(dayName,
+                orZero(forecast.getMaxTemperature(day)),
+                Float.isNaN(forecast.getDryHours(day)) ? 24.0 : forecast.getDryHours(day),
+                orZero(forecast.getMaxWind(day)),
+                orZero(forecast.getMeanWind(day)));
+    }
+
+    private static double orZero(float value) {
+        return Float.isNaN(value) ? 0.0 : value;
+    }
+
+    private static HttpRequest jsonRequest(String urlString) {
+        return new HttpRequest.Builder(urlString)
+                .header("Accept", "application/json")
+                .build();
+    }
+
+    private static String httpGet(String urlString) throws Exception {
+        return HttpTransport.get().fetchString(jsonRequest(urlString));
     }
 }
@@ -28,10 +28,14 @@ public class WeatherData {
     private final String cityName;
     private final WeekendDay nextSaturday;
     private final WeekendDay nextSunday;
+    private final Forecast forecast;
+    private final double latitude;
+    private final double longitude;
 
     public WeatherData(double currentTemperature, double highTemperature,
                        double precipitationMm, int weatherCode, String cityName,
-                       WeekendDay nextSaturday, WeekendDay nextSunday) {
+                       WeekendDay nextSaturday, WeekendDay nextSunday, Forecast forecast,
+                       double latitude, double longitude) {
         this.currentTemperature = currentTemperature;
         this.highTemperature = highTemperature;
         this.precipitationMm = precipitationMm;
@@ -39,6 +43,9 @@ public class WeatherData {
         this.cityName = cityName;
         this.nextSaturday = nextSaturday;
         this.nextSunday = nextSunday;
+        this.forecast = forecast;
+        this.latitude = latitude;
+        this.longitude = longitude;
     }
 
     public double getCurrentTemperature() { return currentTemperature; }
@@ -48,9 +55,23 @@ public class WeatherData {
     public String getCityName() { return cityName; }
     public WeekendDay getNextSaturday() { return nextSaturday; }
     public WeekendDay getNextSunday() { return nextSunday; }
+    /** The full 14-day forecast the summary above was taken from. */
+    public Forecast getForecast() { return forecast; }
+    public double getLatitude() { return latitude; }
+    public double getLongitude() { return longitude; }
 
     /** Returns a human-readable description for the WMO weather code. */
     public String getWeatherDescription() {
+        return describe(weatherCode);
+    }
+
+    /** Returns a simple emoji icon for the weather condition. */
+    public String getWeatherIcon() {
+        return iconFor(weatherCode);
+    }
+
+    /** Human-readable description for a WMO weather code. */
+    public static String describe(int weatherCode) {
         if (weatherCode == 0) return "Clear sky";
         if (weatherCode == 1) return "Mainly clear";
         if (weatherCode == 2) return "Partly cloudy";
@@ -66,8 +87,8 @@ public class WeatherData {
         return "Unknown";
     }
 
-    /** Returns a simple emoji icon for the weather condition. */
-    public String getWeatherIcon() {
+    /** Simple emoji icon for a WMO weather code. */
+    public static String iconFor(int weatherCode) {
         if (weatherCode == 0) return "\u2600";           // ☀
         if (weatherCode <= 3) return "\u26C5";           // ⛅
         if (weatherCode == 45 || weatherCode == 48) return "\uD83C\uDF2B"; // 🌫
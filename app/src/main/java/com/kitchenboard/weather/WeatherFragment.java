@@ -11,6 +11,9 @@ import android.location.LocationManager;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.Looper;
+import android.text.TextUtils;
+import android.text.format.DateFormat;
+import android.util.TypedValue;
 import android.view.KeyEvent;
 import android.view.LayoutInflater;
 import android.view.View;
@@ -31,30 +34,46 @@ import androidx.recyclerview.widget.RecyclerView;
 import androidx.viewpager2.widget.ViewPager2;
 
 import com.kitchenboard.R;
+import com.kitchenboard.task.RequestRegistry;
+import com.kitchenboard.task.TaskGroup;
+import com.kitchenboard.task.TaskScheduler;
 
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 import java.util.Locale;
+import java.util.TimeZone;
+import java.util.concurrent.Callable;
 
 public class WeatherFragment extends Fragment {
 
     private static final String PREFS_NAME = "weather_prefs";
+    /** City names separated by {@link #CITY_SEPARATOR}; the first is the home location. */
     private static final String KEY_CITY = "city_name";
+    /**
+     * Coordinates of the locations last shown ("lat,lon;lat,lon"), the keys
+     * into {@link ForecastStore}.
+     */
+    private static final String KEY_LOCATIONS = "last_locations";
     private static final String DEFAULT_CITY = "Berlin";
+    private static final String CITY_SEPARATOR = ";";
+    private static final String REQUEST_WEATHER = "weather";
     private static final int LOCATION_PERMISSION_REQUEST = 100;
     private static final long SUB_PAGE_ADVANCE_MS = 5_000;
+    private static final long MS_PER_DAY = 86_400_000L;
+
+    // Sub-pages of the inner pager; further locations follow as current-weather pages
+    private static final int PAGE_CURRENT = 0;
+    private static final int PAGE_WEEKEND = 1;
+    private static final int PAGE_NEXT_DAYS = 2;
+    private static final int PAGE_LATER_DAYS = 3;
+    private static final int HOME_PAGE_COUNT = 4;
 
     private EditText etCity;
     private ProgressBar progressBar;
 
-    // Views inside view_weather_current.xml (page 0)
-    private TextView tvIcon;
-    private TextView tvCurrentTemp;
-    private TextView tvDescription;
-    private TextView tvHighTemp;
-    private TextView tvRain;
-    private TextView tvDate;
+    // Status line of the home view_weather_current.xml page (page 0)
     private TextView tvStatus;
 
     // Views inside view_weather_weekend.xml (page 1)
@@ -68,8 +87,30 @@ public class WeatherFragment extends Fragment {
 
     private ViewPager2 weatherViewPager;
     private WeatherPagerAdapter weatherPagerAdapter;
+    private LinearLayout weatherDotContainer;
     private View[] weatherDots;
 
+    /** When the forecast on screen was fetched; 0 while none is shown. */
+    private long shownFetchedAtMs;
+
+    /** Refreshes the saved cities in the background while the panel is visible. */
+    private final WeatherRefreshScheduler refreshScheduler = new WeatherRefreshScheduler(
+            new WeatherRefreshScheduler.Refresher() {
+                @Override
+                public void refresh() {
+                    fetchWeather(splitCities(getSavedCity()), true);
+                }
+            });
+
+    /** Background work of the current view; cancelled when the view is destroyed. */
+    private TaskGroup tasks;
+    private RequestRegistry requests;
+    /**
+     * A request the user started is pending, so a failure is reported as an
+     * error instead of marking the shown forecast offline.
+     */
+    private boolean showFetchErrors;
+
     private final Handler subPageHandler = new Handler(Looper.getMainLooper());
     private final Runnable subPageRunnable = new Runnable() {
         @Override
@@ -93,28 +134,24 @@ public class WeatherFragment extends Fragment {
     @Override
     public void onViewCreated(@NonNull View view, @Nullable Bundle savedInstanceState) {
         super.onViewCreated(view, savedInstanceState);
+        tasks = new TaskGroup(getViewLifecycleOwner());
+        requests = new RequestRegistry(tasks);
+        shownFetchedAtMs = 0;
 
         etCity = view.findViewById(R.id.et_city);
         progressBar = view.findViewById(R.id.progress_weather);
         weatherViewPager = view.findViewById(R.id.weather_view_pager);
-        LinearLayout dotContainer = view.findViewById(R.id.weather_dot_container);
+        weatherDotContainer = view.findViewById(R.id.weather_dot_container);
 
-        // Set up the inner pager adapter (pre-inflates both pages)
+        // Set up the inner pager adapter (pre-inflates all pages)
         LayoutInflater li = LayoutInflater.from(requireContext());
         weatherPagerAdapter = new WeatherPagerAdapter(li, weatherViewPager);
         weatherViewPager.setAdapter(weatherPagerAdapter);
 
         // Bind view references from the pre-inflated pages
-        View currentPage = weatherPagerAdapter.getPage(0);
-        tvIcon = currentPage.findViewById(R.id.tv_weather_icon);
-        tvCurrentTemp = currentPage.findViewById(R.id.tv_current_temp);
-        tvDescription = currentPage.findViewById(R.id.tv_weather_desc);
-        tvHighTemp = currentPage.findViewById(R.id.tv_high_temp);
-        tvRain = currentPage.findViewById(R.id.tv_rain);
-        tvDate = currentPage.findViewById(R.id.tv_date);
-        tvStatus = currentPage.findViewById(R.id.tv_status);
-
-        View weekendPage = weatherPagerAdapter.getPage(1);
+        tvStatus = weatherPagerAdapter.getPage(PAGE_CURRENT).findViewById(R.id.tv_status);
+
+        View weekendPage = weatherPagerAdapter.getPage(PAGE_WEEKEND);
         tvSatMaxTemp = weekendPage.findViewById(R.id.tv_sat_max_temp);
         tvSatDryHours = weekendPage.findViewById(R.id.tv_sat_dry_hours);
         tvSatWind = weekendPage.findViewById(R.id.tv_sat_wind);
@@ -123,8 +160,13 @@ public class WeatherFragment extends Fragment {
         tvSunWind = weekendPage.findViewById(R.id.tv_sun_wind);
         tvWeekendStatus = weekendPage.findViewById(R.id.tv_weekend_status);
 
+        ((TextView) weatherPagerAdapter.getPage(PAGE_NEXT_DAYS).findViewById(R.id.tv_days_title))
+                .setText(R.string.days_next_title);
+        ((TextView) weatherPagerAdapter.getPage(PAGE_LATER_DAYS).findViewById(R.id.tv_days_title))
+                .setText(R.string.days_later_title);
+
         // Dot indicators
-        setupWeatherDots(dotContainer, weatherPagerAdapter.getItemCount());
+        setupWeatherDots(weatherDotContainer, weatherPagerAdapter.getItemCount());
         weatherViewPager.registerOnPageChangeCallback(new ViewPager2.OnPageChangeCallback() {
             @Override
             public void onPageSelected(int position) {
@@ -166,7 +208,7 @@ public class WeatherFragment extends Fragment {
             }
         });
 
-        loadWeather();
+        showStoredThenRefresh();
     }
 
     // ── Sub-page dot helpers ──────────────────────────────────────────────────
@@ -205,12 +247,21 @@ public class WeatherFragment extends Fragment {
     public void onResume() {
         super.onResume();
         subPageHandler.postDelayed(subPageRunnable, SUB_PAGE_ADVANCE_MS);
+        refreshScheduler.start();
     }
 
     @Override
     public void onPause() {
         super.onPause();
         subPageHandler.removeCallbacks(subPageRunnable);
+        refreshScheduler.stop();
+    }
+
+    @Override
+    public void onDestroyView() {
+        super.onDestroyView();
+        // The view's tasks are cancelled with it, so a running refresh never reports back
+        refreshScheduler.cancel();
     }
 
     // ── Location ──────────────────────────────────────────────────────────────
@@ -278,100 +329,256 @@ public class WeatherFragment extends Fragment {
         loadWeatherByLocation(location.getLatitude(), location.getLongitude());
     }
 
+    /**
+     * Makes the device location the home location: resolves its name, maps
+     * that name to the exact coordinates in {@link GeocodeCache} and then
+     * refreshes all locations as usual.
+     */
     private void loadWeatherByLocation(final double lat, final double lon) {
         showLoading(true);
         tvStatus.setVisibility(View.GONE);
         final Context appContext = requireContext().getApplicationContext();
         final String fallbackName = getString(R.string.current_location);
+        final GeocodeCache geocodeCache = GeocodeCache.get(appContext);
 
-        new Thread(new Runnable() {
+        tasks.execute(TaskScheduler.network(), new Runnable() {
             @Override
             public void run() {
-                String cityName = fallbackName;
-                try {
-                    Geocoder geocoder = new Geocoder(appContext, Locale.getDefault());
-                    @SuppressWarnings("deprecation")
-                    List<Address> addresses = geocoder.getFromLocation(lat, lon, 1);
-                    if (addresses != null && !addresses.isEmpty()) {
-                        String locality = addresses.get(0).getLocality();
-                        if (locality != null) cityName = locality;
-                    }
-                } catch (Exception ignored) {}
+                String cityName = geocodeCache.getLocality(lat, lon);
+                if (cityName == null) {
+                    cityName = fallbackName;
+                    try {
+                        Geocoder geocoder = new Geocoder(appContext, Locale.getDefault());
+                        @SuppressWarnings("deprecation")
+                        List<Address> addresses = geocoder.getFromLocation(lat, lon, 1);
+                        if (addresses != null && !addresses.isEmpty()) {
+                            String locality = addresses.get(0).getLocality();
+                            if (locality != null) {
+                                cityName = locality;
+                                geocodeCache.putLocality(lat, lon, locality);
+                            }
+                        }
+                    } catch (Exception ignored) {}
+                }
+                geocodeCache.putPlace(cityName, new GeocodeCache.Place(cityName, lat, lon));
 
                 final String resolvedCity = cityName;
-                WeatherApiClient.fetchWeatherByCoords(lat, lon, resolvedCity,
-                        new WeatherApiClient.WeatherCallback() {
-                            @Override
-                            public void onSuccess(WeatherData data) {
-                                if (isAdded()) {
-                                    showLoading(false);
-                                    displayWeather(data);
-                                    saveCity(data.getCityName());
-                                    etCity.setText(data.getCityName());
-                                }
-                            }
+                tasks.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        List<String> cities = splitCities(getSavedCity());
+                        if (cities.isEmpty()) {
+                            cities.add(resolvedCity);
+                        } else {
+                            cities.set(0, resolvedCity);
+                        }
+                        saveCity(TextUtils.join(CITY_SEPARATOR + " ", cities));
+                        fetchWeather(cities, false);
+                    }
+                });
+            }
+        });
+    }
 
-                            @Override
-                            public void onError(String message) {
-                                if (isAdded()) {
-                                    showLoading(false);
-                                    tvStatus.setText(message);
-                                    tvStatus.setVisibility(View.VISIBLE);
-                                }
-                            }
-                        });
+    /**
+     * Cold start: draws the stored forecast for the last location right away
+     * and only goes to the network when it is older than
+     * {@link ForecastStore#TTL_MS} (or missing). Later refreshes are timed by
+     * {@link WeatherRefreshScheduler}.
+     */
+    private void showStoredThenRefresh() {
+        String saved = requireActivity().getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE)
+                .getString(KEY_LOCATIONS, null);
+        String[] locations = saved != null ? saved.split(CITY_SEPARATOR) : new String[0];
+        double[] latitudes = new double[locations.length];
+        double[] longitudes = new double[locations.length];
+        for (int i = 0; i < locations.length; i++) {
+            String[] latLon = locations[i].split(",");
+            try {
+                latitudes[i] = Double.parseDouble(latLon[0]);
+                longitudes[i] = Double.parseDouble(latLon[1]);
+            } catch (RuntimeException e) {
+                locations = new String[0];
+                break;
             }
-        }).start();
+        }
+        if (locations.length == 0) {
+            loadWeather();
+            return;
+        }
+        showLoading(true);
+        ForecastStore.get(requireContext()).load(latitudes, longitudes,
+                new ForecastStore.Callback() {
+                    @Override
+                    public void onLoaded(List<ForecastStore.StoredWeather> stored) {
+                        // A fetch started or finished meanwhile has newer data
+                        if (!isAdded() || shownFetchedAtMs != 0
+                                || requests.isInFlight(REQUEST_WEATHER)) {
+                            return;
+                        }
+                        // Show the stored set only when it is complete
+                        List<WeatherData> data = new ArrayList<>(stored.size());
+                        long fetchedAtMs = Long.MAX_VALUE;
+                        boolean fresh = true;
+                        for (ForecastStore.StoredWeather entry : stored) {
+                            if (entry == null) {
+                                loadWeather();
+                                return;
+                            }
+                            data.add(entry.data);
+                            fetchedAtMs = Math.min(fetchedAtMs, entry.fetchedAtMs);
+                            fresh &= entry.isFresh();
+                        }
+                        showLoading(false);
+                        displayWeather(data);
+                        shownFetchedAtMs = fetchedAtMs;
+                        refreshScheduler.onDataShown(data.get(0),
+                                System.currentTimeMillis() - fetchedAtMs);
+                        if (!fresh) refreshScheduler.requestRefresh();
+                    }
+                });
     }
 
     private void loadWeather() {
         String city = etCity.getText().toString().trim();
-        if (city.isEmpty()) {
+        if (splitCities(city).isEmpty()) {
             city = DEFAULT_CITY;
             etCity.setText(city);
         }
         saveCity(city);
         hideKeyboard();
-        showLoading(true);
-        tvStatus.setVisibility(View.GONE);
-
-        final String cityToLoad = city;
-        WeatherApiClient.fetchWeather(cityToLoad, new WeatherApiClient.WeatherCallback() {
-            @Override
-            public void onSuccess(WeatherData data) {
-                showLoading(false);
-                displayWeather(data);
-            }
+        fetchWeather(splitCities(city), false);
+    }
 
-            @Override
-            public void onError(String message) {
-                showLoading(false);
-                tvStatus.setText(message);
-                tvStatus.setVisibility(View.VISIBLE);
-            }
-        });
+    /**
+     * Fetches all {@code cities} with one forecast request.
+     *
+     * @param quiet keep the current forecast on screen while loading (no
+     *              spinner) and keep it on failure, marked as offline
+     */
+    private void fetchWeather(final List<String> cities, boolean quiet) {
+        if (!quiet) {
+            showLoading(true);
+            tvStatus.setVisibility(View.GONE);
+            showFetchErrors = true;
+        }
+        // The same city list in flight is joined; a different one replaces it
+        final GeocodeCache geocodeCache = GeocodeCache.get(requireContext());
+        requests.request(REQUEST_WEATHER, cities, TaskScheduler.network(),
+                new Callable<List<WeatherData>>() {
+                    @Override
+                    public List<WeatherData> call() throws Exception {
+                        return WeatherApiClient.loadWeather(cities, geocodeCache);
+                    }
+                }, weatherCallback);
     }
 
-    private void displayWeather(WeatherData data) {
-        tvIcon.setText(data.getWeatherIcon());
-        tvCurrentTemp.setText(String.format("%.0f°C", data.getCurrentTemperature()));
-        tvDescription.setText(data.getWeatherDescription());
-        tvHighTemp.setText(String.format("High: %.0f°C", data.getHighTemperature()));
+    /** The single receiver of weather requests, so joined requests report once. */
+    private final RequestRegistry.Callback<List<WeatherData>> weatherCallback =
+            new RequestRegistry.Callback<List<WeatherData>>() {
+                @Override
+                public void onResult(List<WeatherData> locations) {
+                    refreshScheduler.onRefreshFinished(locations.get(0));
+                    showFetchErrors = false;
+                    showLoading(false);
+                    displayWeather(locations);
+                    rememberForecasts(locations);
+                }
 
-        if (data.getPrecipitationMm() > 0) {
-            tvRain.setText(String.format("Rain: %.1f mm", data.getPrecipitationMm()));
-        } else {
-            tvRain.setText("No rain expected");
+                @Override
+                public void onError(Exception e) {
+                    refreshScheduler.onRefreshFinished(null);
+                    showLoading(false);
+                    if (showFetchErrors) {
+                        tvStatus.setText(e.getMessage());
+                        tvStatus.setVisibility(View.VISIBLE);
+                    } else {
+                        showOffline();
+                    }
+                    showFetchErrors = false;
+                }
+            };
+
+    /** Marks the forecast on screen as an older one that could not be refreshed. */
+    private void showOffline() {
+        String time = DateFormat.getTimeFormat(requireContext())
+                .format(new Date(shownFetchedAtMs));
+        tvStatus.setText(getString(R.string.weather_offline, time));
+        tvStatus.setVisibility(View.VISIBLE);
+    }
+
+    /** Persists freshly fetched forecasts for the next cold start. */
+    private void rememberForecasts(List<WeatherData> locations) {
+        shownFetchedAtMs = System.currentTimeMillis();
+        ForecastStore store = ForecastStore.get(requireContext());
+        StringBuilder keys = new StringBuilder();
+        for (WeatherData data : locations) {
+            store.save(data);
+            if (keys.length() > 0) keys.append(CITY_SEPARATOR);
+            keys.append(data.getLatitude()).append(',').append(data.getLongitude());
         }
+        requireActivity().getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE).edit()
+                .putString(KEY_LOCATIONS, keys.toString())
+                .apply();
+    }
 
+    /**
+     * Shows the home location (the first entry) on the home pages and every
+     * further location on a page of its own. Views are only touched where
+     * the text actually changed, so swapping a refreshed forecast in for a
+     * stored one does not relayout the whole panel.
+     */
+    private void displayWeather(List<WeatherData> locations) {
+        WeatherData data = locations.get(0);
         SimpleDateFormat sdf = new SimpleDateFormat("EEEE, dd. MMMM yyyy", Locale.getDefault());
-        tvDate.setText(sdf.format(new Date()));
-        tvDate.setVisibility(View.VISIBLE);
+        String date = sdf.format(new Date());
+        displayCurrent(weatherPagerAdapter.getPage(PAGE_CURRENT), data, date);
 
         tvStatus.setVisibility(View.GONE);
-        etCity.setText(data.getCityName());
+        String[] names = new String[locations.size()];
+        for (int i = 0; i < names.length; i++) names[i] = locations.get(i).getCityName();
+        setTextIfChanged(etCity, TextUtils.join(CITY_SEPARATOR + " ", names));
 
         displayWeekendWeather(data);
+
+        // Both day-range pages read the same parsed forecast; no extra requests
+        Forecast forecast = data.getForecast();
+        displayDayRange(weatherPagerAdapter.getPage(PAGE_NEXT_DAYS), forecast, 1, 7);
+        displayDayRange(weatherPagerAdapter.getPage(PAGE_LATER_DAYS), forecast, 8, 6);
+
+        if (weatherPagerAdapter.setLocationPageCount(locations.size() - 1)) {
+            setupWeatherDots(weatherDotContainer, weatherPagerAdapter.getItemCount());
+            updateWeatherDots(weatherViewPager.getCurrentItem());
+        }
+        for (int i = 1; i < locations.size(); i++) {
+            WeatherData location = locations.get(i);
+            View page = weatherPagerAdapter.getPage(HOME_PAGE_COUNT + i - 1);
+            displayCurrent(page, location,
+                    getString(R.string.weather_location_date, location.getCityName(), date));
+            page.findViewById(R.id.tv_status).setVisibility(View.GONE);
+        }
+    }
+
+    /** Fills a view_weather_current page. */
+    private void displayCurrent(View page, WeatherData data, String dateLine) {
+        setTextIfChanged((TextView) page.findViewById(R.id.tv_weather_icon), data.getWeatherIcon());
+        setTextIfChanged((TextView) page.findViewById(R.id.tv_current_temp),
+                String.format("%.0f°C", data.getCurrentTemperature()));
+        setTextIfChanged((TextView) page.findViewById(R.id.tv_weather_desc),
+                data.getWeatherDescription());
+        setTextIfChanged((TextView) page.findViewById(R.id.tv_high_temp),
+                String.format("High: %.0f°C", data.getHighTemperature()));
+
+        TextView rain = page.findViewById(R.id.tv_rain);
+        if (data.getPrecipitationMm() > 0) {
+            setTextIfChanged(rain, String.format("Rain: %.1f mm", data.getPrecipitationMm()));
+        } else {
+            setTextIfChanged(rain, "No rain expected");
+        }
+
+        TextView date = page.findViewById(R.id.tv_date);
+        setTextIfChanged(date, dateLine);
+        date.setVisibility(View.VISIBLE);
     }
 
     private void displayWeekendWeather(WeatherData data) {
@@ -386,26 +593,79 @@ public class WeatherFragment extends Fragment {
         tvWeekendStatus.setVisibility(View.GONE);
 
         if (sat != null) {
-            tvSatMaxTemp.setText(String.format(getString(R.string.weekend_max_temp), sat.maxTemp));
-            tvSatDryHours.setText(String.format(getString(R.string.weekend_dry_hours), sat.dryHours));
-            tvSatWind.setText(String.format(getString(R.string.weekend_wind), sat.maxWind, sat.meanWind));
+            setTextIfChanged(tvSatMaxTemp, String.format(getString(R.string.weekend_max_temp), sat.maxTemp));
+            setTextIfChanged(tvSatDryHours, String.format(getString(R.string.weekend_dry_hours), sat.dryHours));
+            setTextIfChanged(tvSatWind, String.format(getString(R.string.weekend_wind), sat.maxWind, sat.meanWind));
         } else {
-            tvSatMaxTemp.setText("--");
-            tvSatDryHours.setText("--");
-            tvSatWind.setText("--");
+            setTextIfChanged(tvSatMaxTemp, "--");
+            setTextIfChanged(tvSatDryHours, "--");
+            setTextIfChanged(tvSatWind, "--");
         }
 
         if (sun != null) {
-            tvSunMaxTemp.setText(String.format(getString(R.string.weekend_max_temp), sun.maxTemp));
-            tvSunDryHours.setText(String.format(getString(R.string.weekend_dry_hours), sun.dryHours));
-            tvSunWind.setText(String.format(getString(R.string.weekend_wind), sun.maxWind, sun.meanWind));
+            setTextIfChanged(tvSunMaxTemp, String.format(getString(R.string.weekend_max_temp), sun.maxTemp));
+            setTextIfChanged(tvSunDryHours, String.format(getString(R.string.weekend_dry_hours), sun.dryHours));
+            setTextIfChanged(tvSunWind, String.format(getString(R.string.weekend_wind), sun.maxWind, sun.meanWind));
         } else {
-            tvSunMaxTemp.setText("--");
-            tvSunDryHours.setText("--");
-            tvSunWind.setText("--");
+            setTextIfChanged(tvSunMaxTemp, "--");
+            setTextIfChanged(tvSunDryHours, "--");
+            setTextIfChanged(tvSunWind, "--");
         }
     }
 
+    /**
+     * Fills a view_weather_days page with one row per day for {@code count}
+     * days starting {@code firstOffset} days after today (in the forecast
+     * location's time zone). Days beyond the forecast are left out.
+     */
+    private void displayDayRange(View page, Forecast forecast, int firstOffset, int count) {
+        LinearLayout rows = page.findViewById(R.id.ll_days);
+        TextView status = page.findViewById(R.id.tv_days_status);
+
+        int today = Math.max(0, forecast.dayIndexAt(System.currentTimeMillis()));
+        int first = today + firstOffset;
+        int end = Math.min(first + count, forecast.getDayCount());
+
+        // Epoch days are local dates, so format them as UTC to avoid shifting
+        SimpleDateFormat sdf = new SimpleDateFormat("EEE dd.MM.", Locale.getDefault());
+        sdf.setTimeZone(TimeZone.getTimeZone("UTC"));
+        float textSizePx = getResources().getDimension(R.dimen.body_text_size);
+        int rowSpacingPx = getResources().getDimensionPixelSize(R.dimen.spacing_small);
+        int textColor = ContextCompat.getColor(requireContext(), R.color.text_primary);
+
+        // Existing rows are reused; only their changed text is replaced
+        int shown = Math.max(0, end - first);
+        while (rows.getChildCount() > shown) rows.removeViewAt(rows.getChildCount() - 1);
+        for (int day = first; day < end; day++) {
+            int position = day - first;
+            TextView row;
+            if (position < rows.getChildCount()) {
+                row = (TextView) rows.getChildAt(position);
+            } else {
+                row = new TextView(requireContext());
+                row.setTextSize(TypedValue.COMPLEX_UNIT_PX, textSizePx);
+                row.setTextColor(textColor);
+                row.setPadding(0, 0, 0, rowSpacingPx);
+                rows.addView(row);
+            }
+            setTextIfChanged(row, getString(R.string.days_row,
+                    sdf.format(new Date(forecast.getEpochDay(day) * MS_PER_DAY)),
+                    WeatherData.iconFor(forecast.getWeatherCode(day)),
+                    orZero(forecast.getMaxTemperature(day)),
+                    orZero(forecast.getMinTemperature(day)),
+                    orZero(forecast.getPrecipitationSum(day))));
+        }
+        status.setVisibility(rows.getChildCount() == 0 ? View.VISIBLE : View.GONE);
+    }
+
+    private static void setTextIfChanged(TextView view, CharSequence text) {
+        if (!TextUtils.equals(view.getText(), text)) view.setText(text);
+    }
+
+    private static float orZero(float value) {
+        return Float.isNaN(value) ? 0f : value;
+    }
+
     private void showLoading(boolean loading) {
         progressBar.setVisibility(loading ? View.VISIBLE : View.GONE);
         weatherViewPager.setVisibility(loading ? View.GONE : View.VISIBLE);
@@ -419,6 +679,16 @@ public class WeatherFragment extends Fragment {
         return prefs.getString(KEY_CITY, DEFAULT_CITY);
     }
 
+    /** The trimmed, non-empty names of a city list, at most {@link WeatherApiClient#MAX_LOCATIONS}. */
+    private static List<String> splitCities(String cities) {
+        List<String> names = new ArrayList<>();
+        for (String name : cities.split(CITY_SEPARATOR)) {
+            name = name.trim();
+            if (!name.isEmpty() && names.size() < WeatherApiClient.MAX_LOCATIONS) names.add(name);
+        }
+        return names;
+    }
+
     private void saveCity(String city) {
         requireActivity().getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE)
                 .edit().putString(KEY_CITY, city).apply();
@@ -440,23 +710,46 @@ public class WeatherFragment extends Fragment {
     private static class WeatherPagerAdapter
             extends RecyclerView.Adapter<WeatherPagerAdapter.PageHolder> {
 
-        private final View[] pages = new View[2];
+        private final LayoutInflater inflater;
+        private final ViewGroup parent;
+        /** Inflated pages; location pages are only ever appended, never dropped. */
+        private final List<View> pages = new ArrayList<>();
+        private int itemCount = HOME_PAGE_COUNT;
 
         WeatherPagerAdapter(LayoutInflater inflater, ViewGroup parent) {
-            // Pre-inflate both pages with the ViewPager2 as parent so layout params
+            this.inflater = inflater;
+            this.parent = parent;
+            // Pre-inflate all pages with the ViewPager2 as parent so layout params
             // are correctly resolved, but do not attach them yet (attachToParent=false).
-            pages[0] = inflater.inflate(R.layout.view_weather_current, parent, false);
-            pages[1] = inflater.inflate(R.layout.view_weather_weekend, parent, false);
+            pages.add(inflater.inflate(R.layout.view_weather_current, parent, false));
+            pages.add(inflater.inflate(R.layout.view_weather_weekend, parent, false));
+            pages.add(inflater.inflate(R.layout.view_weather_days, parent, false));
+            pages.add(inflater.inflate(R.layout.view_weather_days, parent, false));
         }
 
         View getPage(int position) {
-            return pages[position];
+            return pages.get(position);
+        }
+
+        /**
+         * Shows {@code count} location pages after the home pages, inflating
+         * any that are missing. Returns whether the page count changed.
+         */
+        boolean setLocationPageCount(int count) {
+            int newCount = HOME_PAGE_COUNT + count;
+            if (newCount == itemCount) return false;
+            while (pages.size() < newCount) {
+                pages.add(inflater.inflate(R.layout.view_weather_current, parent, false));
+            }
+            itemCount = newCount;
+            notifyDataSetChanged();
+            return true;
         }
 
         @NonNull
         @Override
         public PageHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
-            return new PageHolder(pages[viewType]);
+            return new PageHolder(pages.get(viewType));
         }
 
         @Override
@@ -464,7 +757,7 @@ public class WeatherFragment extends Fragment {
 
         @Override
         public int getItemCount() {
-            return pages.length;
+            return itemCount;
         }
 
         @Override
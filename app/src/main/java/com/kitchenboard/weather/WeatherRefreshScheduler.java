@@ -0,0 +1,190 @@
+package com.kitchenboard.weather;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import java.util.Calendar;
+import java.util.Random;
+
+/**
+ * Decides when the always-on weather panel refreshes itself.
+ *
+ * <ul>
+ *   <li>The interval adapts to the weather: every refresh whose current
+ *       weather code differs from the previous one halves it (down to
+ *       {@link #MIN_INTERVAL_MS}); unchanged weather stretches it again
+ *       by half up to {@link #BASE_INTERVAL_MS}.</li>
+ *   <li>At night (23–6 h device time) it is at least {@link #NIGHT_INTERVAL_MS}.</li>
+ *   <li>Every delay gets ±10 % jitter so several boards do not hit the API in step.</li>
+ *   <li>Failed refreshes are retried with a doubling delay, capped at the interval.</li>
+ *   <li>Triggers arriving within {@link #COALESCE_WINDOW_MS} of each other, or
+ *       while a refresh is running, result in a single refresh.</li>
+ * </ul>
+ *
+ * The scheduler only decides; the {@link Refresher} does the work and
+ * reports back through {@link #onRefreshFinished}. All methods must be
+ * called on the main thread.
+ */
+public class WeatherRefreshScheduler {
+
+    public interface Refresher {
+        /** Starts a background refresh; must end with {@link #onRefreshFinished}. */
+        void refresh();
+    }
+
+    static final long BASE_INTERVAL_MS = ForecastStore.TTL_MS;
+    static final long MIN_INTERVAL_MS = 10 * 60_000L;
+    static final long NIGHT_INTERVAL_MS = 2 * 60 * 60_000L;
+    static final long INITIAL_RETRY_DELAY_MS = 60_000L;
+    static final long COALESCE_WINDOW_MS = 2_000L;
+    private static final double JITTER = 0.1;
+    private static final int NIGHT_START_HOUR = 23;
+    private static final int NIGHT_END_HOUR = 6;
+
+    private final Refresher refresher;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Random random = new Random();
+
+    private boolean started;
+    private boolean inFlight;
+    /** A trigger arrived while stopped or while a refresh was running. */
+    private boolean pending;
+    private long intervalMs = BASE_INTERVAL_MS;
+    private long retryDelayMs = INITIAL_RETRY_DELAY_MS;
+    private int lastWeatherCode = Forecast.NO_CODE;
+    /** {@link SystemClock#elapsedRealtime()} of the data on screen; 0 if none. */
+    private long lastSuccessElapsed;
+
+    private final Runnable timerRunnable = new Runnable() {
+        @Override
+        public void run() {
+            requestRefresh();
+        }
+    };
+
+    private final Runnable refreshRunnable = new Runnable() {
+        @Override
+        public void run() {
+            if (!started) return;
+            if (inFlight) {
+                pending = true;
+                return;
+            }
+            inFlight = true;
+            refresher.refresh();
+        }
+    };
+
+    public WeatherRefreshScheduler(Refresher refresher) {
+        this.refresher = refresher;
+    }
+
+    /**
+     * Starts scheduling from the last data shown; a trigger received while
+     * stopped is run now.
+     */
+    public void start() {
+        if (started) return;
+        started = true;
+        if (pending) {
+            pending = false;
+            requestRefresh();
+        } else if (lastSuccessElapsed > 0) {
+            long due = lastSuccessElapsed + currentIntervalMs() - SystemClock.elapsedRealtime();
+            schedule(Math.max(0, due));
+        }
+        // Otherwise the first load is still running and its report schedules the timer
+    }
+
+    /** Cancels timers; a refresh already running still reports back. */
+    public void stop() {
+        started = false;
+        pending = false;
+        handler.removeCallbacks(timerRunnable);
+        handler.removeCallbacks(refreshRunnable);
+    }
+
+    /**
+     * Stops and forgets a refresh in flight, for when its report will never
+     * come (the work was cancelled).
+     */
+    public void cancel() {
+        stop();
+        inFlight = false;
+    }
+
+    /**
+     * Asks for a refresh soon. Calls within the coalescing window, or while a
+     * refresh is running, are merged into one.
+     */
+    public void requestRefresh() {
+        if (!started || inFlight) {
+            pending = true;
+            return;
+        }
+        handler.removeCallbacks(timerRunnable);
+        handler.removeCallbacks(refreshRunnable);
+        handler.postDelayed(refreshRunnable, COALESCE_WINDOW_MS);
+    }
+
+    /**
+     * Tells the scheduler that data fetched {@code ageMs} ago is on screen
+     * (e.g. a stored forecast), so the next refresh is timed from then.
+     */
+    public void onDataShown(WeatherData data, long ageMs) {
+        lastWeatherCode = data.getWeatherCode();
+        lastSuccessElapsed = Math.max(1, SystemClock.elapsedRealtime() - Math.max(0, ageMs));
+        if (started && !inFlight) {
+            schedule(Math.max(0, currentIntervalMs() - ageMs));
+        }
+    }
+
+    /**
+     * Reports the end of a refresh, whether started by this scheduler or by
+     * the user; {@code data} is null when it failed.
+     */
+    public void onRefreshFinished(WeatherData data) {
+        inFlight = false;
+        long delay;
+        if (data != null) {
+            adaptInterval(data.getWeatherCode());
+            lastSuccessElapsed = SystemClock.elapsedRealtime();
+            retryDelayMs = INITIAL_RETRY_DELAY_MS;
+            delay = currentIntervalMs();
+        } else {
+            delay = Math.min(retryDelayMs, currentIntervalMs());
+            retryDelayMs = Math.min(retryDelayMs * 2, currentIntervalMs());
+        }
+        if (!started) return;
+        if (pending) {
+            pending = false;
+            requestRefresh();
+            return;
+        }
+        schedule(delay);
+    }
+
+    // ── Cadence ───────────────────────────────────────────────────────────────
+
+    private void adaptInterval(int weatherCode) {
+        if (lastWeatherCode != Forecast.NO_CODE && weatherCode != lastWeatherCode) {
+            intervalMs = Math.max(MIN_INTERVAL_MS, intervalMs / 2);
+        } else {
+            intervalMs = Math.min(BASE_INTERVAL_MS, intervalMs * 3 / 2);
+        }
+        lastWeatherCode = weatherCode;
+    }
+
+    private long currentIntervalMs() {
+        int hour = Calendar.getInstance().get(Calendar.HOUR_OF_DAY);
+        boolean night = hour >= NIGHT_START_HOUR || hour < NIGHT_END_HOUR;
+        return night ? Math.max(intervalMs, NIGHT_INTERVAL_MS) : intervalMs;
+    }
+
+    private void schedule(long delayMs) {
+        handler.removeCallbacks(timerRunnable);
+        long jitter = (long) (delayMs * JITTER * (random.nextDouble() * 2 - 1));
+        handler.postDelayed(timerRunnable, Math.max(0, delayMs + jitter));
+    }
+}
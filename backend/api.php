@@ -4,13 +4,42 @@
  *
  * Endpoints (action= GET or POST parameter):
  *   GET  ?action=list            → JSON list of active items (includes quantity)
- *   POST ?action=add             → body: name, category[, quantity] → new item JSON
- *   POST ?action=check           → body: id              → {"success":true}
- *   POST ?action=delete          → body: id              → {"success":true}
- *   POST ?action=update_quantity → body: id, quantity    → {"success":true}
+ *   GET  ?action=list&since=rev  → only items added, changed, checked or deleted after rev
+ *                                  (both send an ETag; If-None-Match → 304 without body)
+ *   GET  ?action=wait&since=rev  → long poll: like list&since, but held open until
+ *                                  something changes after rev or ~25 s pass
+ *   POST ?action=add             → body: name, category[, quantity][, uid] → new item JSON
+ *   POST ?action=check           → body: id or uid           → {"success":true}
+ *   POST ?action=delete          → body: id or uid           → {"success":true}
+ *   POST ?action=update_quantity → body: id or uid, quantity → {"success":true}
+ *   POST ?action=batch           → body: ops (JSON array of the four operations above)
+ *                                  → {"rev":n,"results":[...]} – one transaction
+ *
+ *   GET  ?action=cal_list[&since=rev] → calendar entries changed after rev (all without since)
+ *   POST ?action=cal_batch            → body: ops (JSON array of put / delete by uid)
+ *                                       → {"rev":n,"results":[...]} – one transaction
  *
  * Storage: SQLite3 file (shopping.db) placed beside this script.
  * The database file is protected by .htaccess so it cannot be downloaded.
+ *
+ * Every mutation stamps the touched row with a new value of a global,
+ * monotonically increasing revision counter. Deleted rows are kept as
+ * tombstones (deleted = 1) so that clients syncing with ?since= learn about them.
+ *
+ * Once a day, checked rows and tombstones older than ARCHIVE_AFTER_DAYS are
+ * rolled into the purchase_archive summary table and deleted (see compact()).
+ * Clients whose ?since= predates the deleted rows get a full snapshot instead
+ * of a delta.
+ *
+ * Clients may tag new items with their own unique "uid". Adding the same uid
+ * twice returns the existing row, so offline clients can safely replay
+ * mutations whose response they never received.
+ *
+ * The calendar (appointments, recurring series and standard templates) is
+ * kept in cal_entries, keyed by the uid the creating client assigned, with
+ * its own revision counter so calendar changes do not wake shopping-list
+ * long polls. Puts are upserts and deletes leave tombstones, so replays are
+ * harmless and deltas carry only the rows changed since the client's revision.
  */
 
 header('Content-Type: application/json; charset=utf-8');
@@ -24,6 +53,13 @@ if ($_SERVER['REQUEST_METHOD'] === 'OPTIONS') {
     exit;
 }
 
+// How often a waiting long-poll request re-checks the revision counter
+const WAIT_POLL_INTERVAL_US = 150000;
+
+// Checked and deleted items older than this are archived and removed
+const ARCHIVE_AFTER_DAYS = 90;
+const COMPACT_INTERVAL_S = 86400;
+
 // ── Database setup ────────────────────────────────────────────────────────────
 
 $dbPath = __DIR__ . '/shopping.db';
@@ -44,18 +80,75 @@ $db->exec('CREATE TABLE IF NOT EXISTS items (
     category   TEXT    NOT NULL,
     checked    INTEGER NOT NULL DEFAULT 0,
     created_at INTEGER NOT NULL DEFAULT 0,
-    quantity   INTEGER NOT NULL DEFAULT 1
+    quantity   INTEGER NOT NULL DEFAULT 1,
+    rev        INTEGER NOT NULL DEFAULT 0,
+    deleted    INTEGER NOT NULL DEFAULT 0,
+    uid        TEXT,
+    changed_at INTEGER NOT NULL DEFAULT 0
 )');
 
-// Add quantity column to existing tables that were created without it
-$columnExists = false;
+// Add columns to existing tables that were created by older versions
+$columns = [];
 $result = $db->query('PRAGMA table_info(items)');
 while ($row = $result->fetchArray(SQLITE3_ASSOC)) {
-    if ($row['name'] === 'quantity') { $columnExists = true; break; }
+    $columns[] = $row['name'];
 }
-if (!$columnExists) {
+if (!in_array('quantity', $columns, true)) {
     $db->exec('ALTER TABLE items ADD COLUMN quantity INTEGER NOT NULL DEFAULT 1');
 }
+if (!in_array('rev', $columns, true)) {
+    $db->exec('ALTER TABLE items ADD COLUMN rev INTEGER NOT NULL DEFAULT 0');
+}
+if (!in_array('deleted', $columns, true)) {
+    $db->exec('ALTER TABLE items ADD COLUMN deleted INTEGER NOT NULL DEFAULT 0');
+}
+if (!in_array('uid', $columns, true)) {
+    $db->exec('ALTER TABLE items ADD COLUMN uid TEXT');
+}
+if (!in_array('changed_at', $columns, true)) {
+    $db->exec('ALTER TABLE items ADD COLUMN changed_at INTEGER NOT NULL DEFAULT 0');
+}
+
+$db->exec('CREATE INDEX IF NOT EXISTS idx_items_rev ON items (rev)');
+$db->exec('CREATE UNIQUE INDEX IF NOT EXISTS idx_items_uid ON items (uid)');
+
+// Global change counter used by ?since= delta sync
+$db->exec('CREATE TABLE IF NOT EXISTS meta (
+    key   TEXT    PRIMARY KEY,
+    value INTEGER NOT NULL
+)');
+$db->exec("INSERT OR IGNORE INTO meta (key, value) VALUES ('revision', 0)");
+// Highest revision of a row removed by compaction; older ?since= values get a full list
+$db->exec("INSERT OR IGNORE INTO meta (key, value) VALUES ('compacted_rev', 0)");
+$db->exec("INSERT OR IGNORE INTO meta (key, value) VALUES ('compacted_at', 0)");
+
+// Per name/category totals of purchases whose rows were removed by compaction
+$db->exec('CREATE TABLE IF NOT EXISTS purchase_archive (
+    name           TEXT    NOT NULL,
+    category       TEXT    NOT NULL,
+    purchase_count INTEGER NOT NULL DEFAULT 0,
+    quantity_total INTEGER NOT NULL DEFAULT 0,
+    last_purchase  INTEGER NOT NULL DEFAULT 0,
+    PRIMARY KEY (name, category)
+)');
+
+// Calendar entries; kind is appointment, recurrence or template
+$db->exec('CREATE TABLE IF NOT EXISTS cal_entries (
+    id             INTEGER PRIMARY KEY AUTOINCREMENT,
+    uid            TEXT    NOT NULL UNIQUE,
+    kind           TEXT    NOT NULL,
+    date           TEXT    NOT NULL DEFAULT \'\',
+    end_date       TEXT,
+    frequency      INTEGER NOT NULL DEFAULT 0,
+    interval_count INTEGER NOT NULL DEFAULT 1,
+    title          TEXT    NOT NULL,
+    rev            INTEGER NOT NULL DEFAULT 0,
+    deleted        INTEGER NOT NULL DEFAULT 0,
+    changed_at     INTEGER NOT NULL DEFAULT 0
+)');
+$db->exec('CREATE INDEX IF NOT EXISTS idx_cal_entries_rev ON cal_entries (rev)');
+$db->exec("INSERT OR IGNORE INTO meta (key, value) VALUES ('cal_revision', 0)");
+$db->exec("INSERT OR IGNORE INTO meta (key, value) VALUES ('cal_compacted_rev', 0)");
 
 $db->exec('CREATE TABLE IF NOT EXISTS categories (
     id   INTEGER PRIMARY KEY AUTOINCREMENT,
@@ -82,11 +175,28 @@ switch ($action) {
     case 'update_quantity':
         actionUpdateQuantity($db);
         break;
+    case 'batch':
+        actionBatch($db);
+        break;
+    case 'wait':
+        actionWait($db);
+        break;
+    case 'cal_list':
+        actionCalendarList($db);
+        break;
+    case 'cal_batch':
+        actionCalendarBatch($db);
+        break;
     default:
         http_response_code(400);
         echo json_encode(['error' => 'Unknown or missing action']);
 }
 
+// Housekeeping after the response; long polls should not carry the extra work
+if ($action !== 'wait') {
+    maybeCompact($db);
+}
+
 $db->close();
 exit;
 
@@ -94,43 +204,248 @@ exit;
 
 function actionList(SQLite3 $db): void
 {
+    $since = (int)($_GET['since'] ?? 0);
+    if (notModified($db)) {
+        return;
+    }
+    if ($since > 0) {
+        actionListSince($db, $since);
+        return;
+    }
+    actionListFull($db);
+}
+
+/**
+ * Conditional GET support for action=list. The answer for a given URL only
+ * changes with the revision counter (and with compaction, which can turn a
+ * delta into a full snapshot), so both make up the ETag. Sends the ETag and
+ * answers 304 without a body when it matches If-None-Match.
+ */
+function notModified(SQLite3 $db): bool
+{
+    $etag = sprintf('"%d.%d"', currentRevision($db), metaValue($db, 'compacted_rev'));
+    header('ETag: ' . $etag);
+    // Always revalidate; the list can change at any moment
+    header('Cache-Control: no-cache');
+
+    $ifNoneMatch = $_SERVER['HTTP_IF_NONE_MATCH'] ?? '';
+    foreach (explode(',', $ifNoneMatch) as $candidate) {
+        $candidate = trim($candidate);
+        if ($candidate === $etag || $candidate === 'W/' . $etag || $candidate === '*') {
+            http_response_code(304);
+            header_remove('Content-Type');
+            return true;
+        }
+    }
+    return false;
+}
+
+/** Full snapshot of the active list. */
+function actionListFull(SQLite3 $db): void
+{
+    $rev = currentRevision($db);
     $result = $db->query(
-        'SELECT id, name, category, quantity FROM items
-         WHERE checked = 0
+        'SELECT id, name, category, quantity, uid FROM items
+         WHERE checked = 0 AND deleted = 0
          ORDER BY category ASC, name ASC'
     );
     $items = [];
     while ($row = $result->fetchArray(SQLITE3_ASSOC)) {
-        $items[] = [
-            'id'       => (int)$row['id'],
-            'name'     => $row['name'],
-            'category' => $row['category'],
-            'quantity' => (int)$row['quantity'],
-        ];
+        $items[] = itemJson($row);
+    }
+    echo json_encode(['rev' => $rev, 'full' => true, 'items' => $items]);
+}
+
+/**
+ * Delta variant of actionList: returns only rows stamped after $since.
+ * Active rows go to "items", rows checked off since then to "checked" and
+ * tombstones to "deleted" (ids only). Falls back to the full list when
+ * compaction removed rows newer than $since.
+ */
+function actionListSince(SQLite3 $db, int $since): void
+{
+    // Rows the client has not seen may have been compacted away
+    if ($since < metaValue($db, 'compacted_rev')) {
+        actionListFull($db);
+        return;
+    }
+
+    $rev = currentRevision($db);
+    $stmt = $db->prepare(
+        'SELECT id, name, category, quantity, uid, checked, deleted FROM items
+         WHERE rev > :since
+         ORDER BY rev ASC'
+    );
+    $stmt->bindValue(':since', $since, SQLITE3_INTEGER);
+    $result = $stmt->execute();
+
+    $items   = [];
+    $checked = [];
+    $deleted = [];
+    while ($row = $result->fetchArray(SQLITE3_ASSOC)) {
+        if ((int)$row['deleted'] === 1) {
+            $deleted[] = (int)$row['id'];
+        } elseif ((int)$row['checked'] === 1) {
+            $checked[] = itemJson($row);
+        } else {
+            $items[] = itemJson($row);
+        }
     }
-    echo json_encode(['items' => $items]);
+    echo json_encode([
+        'rev'     => $rev,
+        'full'    => false,
+        'items'   => $items,
+        'checked' => $checked,
+        'deleted' => $deleted,
+    ]);
+}
+
+/**
+ * Long poll for push-style updates. Holds the request open until the revision
+ * moves past "since" (or the optional "timeout" in seconds, max 30, elapses)
+ * and then answers exactly like list&since. An unchanged revision in the
+ * response means the wait timed out and the client should simply wait again.
+ * Without "since" the full list is returned immediately.
+ */
+function actionWait(SQLite3 $db): void
+{
+    $since   = (int)($_GET['since'] ?? 0);
+    $timeout = min(30, max(1, (int)($_GET['timeout'] ?? 25)));
+    if ($since <= 0) {
+        actionListFull($db);
+        return;
+    }
+
+    set_time_limit($timeout + 10);
+    $deadline = microtime(true) + $timeout;
+    // Polling the single meta row is cheap; SQLite has no change notification
+    while (currentRevision($db) <= $since && microtime(true) < $deadline) {
+        usleep(WAIT_POLL_INTERVAL_US);
+    }
+    actionListSince($db, $since);
 }
 
 function actionAdd(SQLite3 $db): void
 {
-    $name     = trim((string)($_POST['name']     ?? ''));
-    $category = trim((string)($_POST['category'] ?? ''));
-    $quantity = max(1, (int)($_POST['quantity'] ?? 1));
+    runSingleOp($db, 'opAdd', $_POST);
+}
 
-    if ($name === '' || $category === '') {
+function actionCheck(SQLite3 $db): void
+{
+    runSingleOp($db, 'opCheck', $_POST);
+}
+
+function actionDelete(SQLite3 $db): void
+{
+    runSingleOp($db, 'opDelete', $_POST);
+}
+
+function actionUpdateQuantity(SQLite3 $db): void
+{
+    runSingleOp($db, 'opUpdateQuantity', $_POST);
+}
+
+/**
+ * Applies several operations in one write transaction, so a burst of changes
+ * costs one request and one fsync. Body parameter "ops" is a JSON array of
+ * objects with an "op" field (add, check, delete, update_quantity) and the
+ * same parameters as the single-operation actions. Operations are applied in
+ * order; a failing operation does not roll back the others. The response lists
+ * one result per operation, in the same order.
+ */
+function actionBatch(SQLite3 $db): void
+{
+    $ops = json_decode((string)($_POST['ops'] ?? ''), true);
+    if (!is_array($ops)) {
         http_response_code(400);
-        echo json_encode(['error' => 'Parameters "name" and "category" are required']);
+        echo json_encode(['error' => 'Parameter "ops" must be a JSON array']);
         return;
     }
 
+    $handlers = [
+        'add'             => 'opAdd',
+        'check'           => 'opCheck',
+        'delete'          => 'opDelete',
+        'update_quantity' => 'opUpdateQuantity',
+    ];
+
+    $db->exec('BEGIN IMMEDIATE');
+    $rev = nextRevision($db);
+    $results = [];
+    foreach ($ops as $op) {
+        $name = is_array($op) ? (string)($op['op'] ?? '') : '';
+        if (!isset($handlers[$name])) {
+            $results[] = ['ok' => false, 'status' => 400, 'error' => 'Unknown or missing op'];
+            continue;
+        }
+        try {
+            $results[] = ['ok' => true] + $handlers[$name]($db, $op, $rev);
+        } catch (ApiError $e) {
+            $results[] = ['ok' => false, 'status' => $e->getCode(), 'error' => $e->getMessage()];
+        }
+    }
+    $db->exec('COMMIT');
+
+    echo json_encode(['rev' => $rev, 'results' => $results]);
+}
+
+// ── Operations ────────────────────────────────────────────────────────────────
+//
+// Each operation runs inside a write transaction opened by the caller and
+// stamps the rows it touches with $rev. Invalid input raises ApiError.
+
+/** Client error raised by an operation; the code is the HTTP status. */
+class ApiError extends Exception
+{
+}
+
+/** Runs one operation in its own transaction and echoes its result. */
+function runSingleOp(SQLite3 $db, string $handler, array $params): void
+{
+    $db->exec('BEGIN IMMEDIATE');
+    try {
+        $result = $handler($db, $params, nextRevision($db));
+    } catch (ApiError $e) {
+        $db->exec('ROLLBACK');
+        http_response_code($e->getCode());
+        echo json_encode(['error' => $e->getMessage()]);
+        return;
+    }
+    $db->exec('COMMIT');
+    echo json_encode($result);
+}
+
+function opAdd(SQLite3 $db, array $params, int $rev): array
+{
+    $name     = trim((string)($params['name']     ?? ''));
+    $category = trim((string)($params['category'] ?? ''));
+    $quantity = max(1, (int)($params['quantity'] ?? 1));
+    $uid      = trim((string)($params['uid']      ?? ''));
+
+    if ($name === '' || $category === '') {
+        throw new ApiError('Parameters "name" and "category" are required', 400);
+    }
+
+    // Replayed add: answer with the row created the first time
+    if ($uid !== '') {
+        $stmt = $db->prepare('SELECT id, name, category, quantity, uid FROM items WHERE uid = :uid');
+        $stmt->bindValue(':uid', $uid, SQLITE3_TEXT);
+        $row = $stmt->execute()->fetchArray(SQLITE3_ASSOC);
+        if ($row !== false) {
+            return itemJson($row);
+        }
+    }
+
     $stmt = $db->prepare(
-        'INSERT INTO items (name, category, checked, created_at, quantity)
-         VALUES (:name, :category, 0, :ts, :quantity)'
+        'INSERT INTO items (name, category, checked, created_at, quantity, rev, uid)
+         VALUES (:name, :category, 0, :ts, :quantity, :rev, :uid)'
     );
     $stmt->bindValue(':name',     $name,     SQLITE3_TEXT);
     $stmt->bindValue(':category', $category, SQLITE3_TEXT);
     $stmt->bindValue(':ts',       (int)(microtime(true) * 1000), SQLITE3_INTEGER);
     $stmt->bindValue(':quantity', $quantity, SQLITE3_INTEGER);
+    $stmt->bindValue(':rev',      $rev,      SQLITE3_INTEGER);
+    $stmt->bindValue(':uid',      $uid !== '' ? $uid : null, SQLITE3_TEXT);
     $stmt->execute();
 
     $id = $db->lastInsertRowID();
@@ -142,55 +457,355 @@ function actionAdd(SQLite3 $db): void
     $stmtCat->bindValue(':name', $category, SQLITE3_TEXT);
     $stmtCat->execute();
 
-    echo json_encode(['id' => $id, 'name' => $name, 'category' => $category, 'quantity' => $quantity]);
+    return [
+        'id'       => $id,
+        'name'     => $name,
+        'category' => $category,
+        'quantity' => $quantity,
+        'uid'      => $uid !== '' ? $uid : null,
+    ];
 }
 
-function actionCheck(SQLite3 $db): void
+function opCheck(SQLite3 $db, array $params, int $rev): array
 {
-    $id = (int)($_POST['id'] ?? 0);
-    if ($id <= 0) {
-        http_response_code(400);
-        echo json_encode(['error' => 'Parameter "id" is required']);
-        return;
-    }
+    $stmt = $db->prepare('UPDATE items SET checked = 1, rev = :rev, changed_at = :ts WHERE id = :id');
+    $stmt->bindValue(':rev', $rev,                        SQLITE3_INTEGER);
+    $stmt->bindValue(':ts',  time(),                      SQLITE3_INTEGER);
+    $stmt->bindValue(':id',  requireItemId($db, $params), SQLITE3_INTEGER);
+    $stmt->execute();
+    return ['success' => true];
+}
 
-    $stmt = $db->prepare('UPDATE items SET checked = 1 WHERE id = :id');
-    $stmt->bindValue(':id', $id, SQLITE3_INTEGER);
+function opDelete(SQLite3 $db, array $params, int $rev): array
+{
+    // Keep a tombstone so delta clients learn about the deletion
+    $stmt = $db->prepare('UPDATE items SET deleted = 1, rev = :rev, changed_at = :ts WHERE id = :id');
+    $stmt->bindValue(':rev', $rev,                        SQLITE3_INTEGER);
+    $stmt->bindValue(':ts',  time(),                      SQLITE3_INTEGER);
+    $stmt->bindValue(':id',  requireItemId($db, $params), SQLITE3_INTEGER);
     $stmt->execute();
+    return ['success' => true];
+}
 
-    echo json_encode(['success' => true]);
+function opUpdateQuantity(SQLite3 $db, array $params, int $rev): array
+{
+    $id       = requireItemId($db, $params);
+    $quantity = max(1, (int)($params['quantity'] ?? 1));
+
+    $stmt = $db->prepare('UPDATE items SET quantity = :quantity, rev = :rev WHERE id = :id');
+    $stmt->bindValue(':quantity', $quantity, SQLITE3_INTEGER);
+    $stmt->bindValue(':rev',      $rev,      SQLITE3_INTEGER);
+    $stmt->bindValue(':id',       $id,       SQLITE3_INTEGER);
+    $stmt->execute();
+    return ['success' => true];
 }
 
-function actionDelete(SQLite3 $db): void
+// ── Calendar ──────────────────────────────────────────────────────────────────
+
+/**
+ * Calendar entries stamped after "since": live rows in "entries", uids of
+ * tombstones in "deleted". Without "since", or when compaction removed
+ * tombstones the client has not seen, all live entries with "full": true.
+ */
+function actionCalendarList(SQLite3 $db): void
 {
-    $id = (int)($_POST['id'] ?? 0);
-    if ($id <= 0) {
+    $since = (int)($_GET['since'] ?? 0);
+    $full  = $since <= 0 || $since < metaValue($db, 'cal_compacted_rev');
+    $rev   = metaValue($db, 'cal_revision');
+
+    $stmt = $db->prepare(
+        'SELECT uid, kind, date, end_date, frequency, interval_count, title, deleted
+         FROM cal_entries
+         WHERE rev > :since' . ($full ? ' AND deleted = 0' : '') . '
+         ORDER BY rev ASC'
+    );
+    $stmt->bindValue(':since', $full ? 0 : $since, SQLITE3_INTEGER);
+    $result = $stmt->execute();
+
+    $entries = [];
+    $deleted = [];
+    while ($row = $result->fetchArray(SQLITE3_ASSOC)) {
+        if ((int)$row['deleted'] === 1) {
+            $deleted[] = $row['uid'];
+        } else {
+            $entries[] = calendarEntryJson($row);
+        }
+    }
+    echo json_encode([
+        'rev'     => $rev,
+        'full'    => $full,
+        'entries' => $entries,
+        'deleted' => $deleted,
+    ]);
+}
+
+/**
+ * Applies calendar changes in one write transaction sharing one revision.
+ * Body parameter "ops" is a JSON array of {"op":"put", "uid", "kind",
+ * "title"[, "date", "end_date", "frequency", "interval"]} and
+ * {"op":"delete", "uid"}. A put replaces the entry with that uid (creating
+ * or reviving it); deleting an unknown uid still records a tombstone.
+ */
+function actionCalendarBatch(SQLite3 $db): void
+{
+    $ops = json_decode((string)($_POST['ops'] ?? ''), true);
+    if (!is_array($ops)) {
         http_response_code(400);
-        echo json_encode(['error' => 'Parameter "id" is required']);
+        echo json_encode(['error' => 'Parameter "ops" must be a JSON array']);
         return;
     }
 
-    $stmt = $db->prepare('DELETE FROM items WHERE id = :id');
-    $stmt->bindValue(':id', $id, SQLITE3_INTEGER);
+    $db->exec('BEGIN IMMEDIATE');
+    $db->exec("UPDATE meta SET value = value + 1 WHERE key = 'cal_revision'");
+    $rev = metaValue($db, 'cal_revision');
+    $results = [];
+    foreach ($ops as $op) {
+        try {
+            if (!is_array($op)) {
+                throw new ApiError('Operation must be an object', 400);
+            }
+            $name = (string)($op['op'] ?? '');
+            if ($name === 'put') {
+                opCalendarPut($db, $op, $rev);
+            } elseif ($name === 'delete') {
+                opCalendarDelete($db, $op, $rev);
+            } else {
+                throw new ApiError('Unknown or missing op', 400);
+            }
+            $results[] = ['ok' => true];
+        } catch (ApiError $e) {
+            $results[] = ['ok' => false, 'status' => $e->getCode(), 'error' => $e->getMessage()];
+        }
+    }
+    $db->exec('COMMIT');
+
+    echo json_encode(['rev' => $rev, 'results' => $results]);
+}
+
+function opCalendarPut(SQLite3 $db, array $params, int $rev): void
+{
+    $uid   = requireCalendarUid($params);
+    $kind  = (string)($params['kind'] ?? '');
+    $title = trim((string)($params['title'] ?? ''));
+    $date  = (string)($params['date'] ?? '');
+    if (!in_array($kind, ['appointment', 'recurrence', 'template'], true) || $title === '') {
+        throw new ApiError('Parameters "kind" and "title" are required', 400);
+    }
+    if ($kind !== 'template' && !preg_match('/^\d{4}-\d{2}-\d{2}$/', $date)) {
+        throw new ApiError('Parameter "date" must be YYYY-MM-DD', 400);
+    }
+    $endDate = $params['end_date'] ?? null;
+
+    $stmt = $db->prepare(
+        'INSERT OR REPLACE INTO cal_entries
+             (id, uid, kind, date, end_date, frequency, interval_count, title, rev, deleted, changed_at)
+         VALUES ((SELECT id FROM cal_entries WHERE uid = :uid), :uid, :kind, :date, :end_date,
+                 :frequency, :interval, :title, :rev, 0, :ts)'
+    );
+    $stmt->bindValue(':uid',       $uid,                                SQLITE3_TEXT);
+    $stmt->bindValue(':kind',      $kind,                               SQLITE3_TEXT);
+    $stmt->bindValue(':date',      $kind === 'template' ? '' : $date,   SQLITE3_TEXT);
+    $stmt->bindValue(':end_date',  $endDate !== null ? (string)$endDate : null, SQLITE3_TEXT);
+    $stmt->bindValue(':frequency', (int)($params['frequency'] ?? 0),    SQLITE3_INTEGER);
+    $stmt->bindValue(':interval',  max(1, (int)($params['interval'] ?? 1)), SQLITE3_INTEGER);
+    $stmt->bindValue(':title',     $title,                              SQLITE3_TEXT);
+    $stmt->bindValue(':rev',       $rev,                                SQLITE3_INTEGER);
+    $stmt->bindValue(':ts',        time(),                              SQLITE3_INTEGER);
     $stmt->execute();
+}
 
-    echo json_encode(['success' => true]);
+function opCalendarDelete(SQLite3 $db, array $params, int $rev): void
+{
+    // Tombstone even for unknown uids: the entry may have been compacted already
+    $stmt = $db->prepare(
+        'INSERT OR REPLACE INTO cal_entries (id, uid, kind, title, rev, deleted, changed_at)
+         VALUES ((SELECT id FROM cal_entries WHERE uid = :uid), :uid,
+                 COALESCE((SELECT kind FROM cal_entries WHERE uid = :uid), \'\'), \'\', :rev, 1, :ts)'
+    );
+    $stmt->bindValue(':uid', requireCalendarUid($params), SQLITE3_TEXT);
+    $stmt->bindValue(':rev', $rev,                        SQLITE3_INTEGER);
+    $stmt->bindValue(':ts',  time(),                      SQLITE3_INTEGER);
+    $stmt->execute();
 }
 
-function actionUpdateQuantity(SQLite3 $db): void
+function requireCalendarUid(array $params): string
 {
-    $id       = (int)($_POST['id']       ?? 0);
-    $quantity = max(1, (int)($_POST['quantity'] ?? 1));
-    if ($id <= 0) {
-        http_response_code(400);
-        echo json_encode(['error' => 'Parameter "id" is required']);
+    $uid = trim((string)($params['uid'] ?? ''));
+    if ($uid === '') {
+        throw new ApiError('Parameter "uid" is required', 400);
+    }
+    return $uid;
+}
+
+/** Maps a cal_entries row to its JSON representation. */
+function calendarEntryJson(array $row): array
+{
+    return [
+        'uid'       => $row['uid'],
+        'kind'      => $row['kind'],
+        'date'      => $row['date'],
+        'end_date'  => $row['end_date'],
+        'frequency' => (int)$row['frequency'],
+        'interval'  => (int)$row['interval_count'],
+        'title'     => $row['title'],
+    ];
+}
+
+// ── Compaction ────────────────────────────────────────────────────────────────
+
+/** Runs compact() when the last run is more than COMPACT_INTERVAL_S ago. */
+function maybeCompact(SQLite3 $db): void
+{
+    if (time() - metaValue($db, 'compacted_at') < COMPACT_INTERVAL_S) {
         return;
     }
+    compact($db, time() - ARCHIVE_AFTER_DAYS * 86400);
+}
 
-    $stmt = $db->prepare('UPDATE items SET quantity = :quantity WHERE id = :id');
-    $stmt->bindValue(':quantity', $quantity, SQLITE3_INTEGER);
-    $stmt->bindValue(':id',       $id,       SQLITE3_INTEGER);
+/**
+ * Rolls checked rows last changed before $cutoff into purchase_archive,
+ * deletes them together with equally old tombstones, raises the
+ * compacted_rev watermark and returns the freed pages to the file system.
+ * Calendar tombstones of the same age go too, raising cal_compacted_rev.
+ * Rows from before changed_at existed count as old.
+ */
+function compact(SQLite3 $db, int $cutoff): void
+{
+    $db->exec('BEGIN IMMEDIATE');
+    $stmt = $db->prepare(
+        'INSERT OR IGNORE INTO purchase_archive (name, category)
+         SELECT DISTINCT name, category FROM items
+         WHERE checked = 1 AND deleted = 0 AND changed_at < :cutoff'
+    );
+    $stmt->bindValue(':cutoff', $cutoff, SQLITE3_INTEGER);
+    $stmt->execute();
+
+    $stmt = $db->prepare(
+        'SELECT name, category, COUNT(*) AS n, SUM(quantity) AS qty, MAX(changed_at) AS last
+         FROM items
+         WHERE checked = 1 AND deleted = 0 AND changed_at < :cutoff
+         GROUP BY name, category'
+    );
+    $stmt->bindValue(':cutoff', $cutoff, SQLITE3_INTEGER);
+    $groups = $stmt->execute();
+    $update = $db->prepare(
+        'UPDATE purchase_archive
+         SET purchase_count = purchase_count + :n,
+             quantity_total = quantity_total + :qty,
+             last_purchase  = MAX(last_purchase, :last)
+         WHERE name = :name AND category = :category'
+    );
+    while ($row = $groups->fetchArray(SQLITE3_ASSOC)) {
+        $update->bindValue(':n',        (int)$row['n'],    SQLITE3_INTEGER);
+        $update->bindValue(':qty',      (int)$row['qty'],  SQLITE3_INTEGER);
+        $update->bindValue(':last',     (int)$row['last'], SQLITE3_INTEGER);
+        $update->bindValue(':name',     $row['name'],      SQLITE3_TEXT);
+        $update->bindValue(':category', $row['category'],  SQLITE3_TEXT);
+        $update->execute();
+        $update->reset();
+    }
+
+    $stmt = $db->prepare(
+        'SELECT MAX(rev) FROM items WHERE (checked = 1 OR deleted = 1) AND changed_at < :cutoff'
+    );
+    $stmt->bindValue(':cutoff', $cutoff, SQLITE3_INTEGER);
+    $maxRev = (int)$stmt->execute()->fetchArray(SQLITE3_NUM)[0];
+    if ($maxRev > metaValue($db, 'compacted_rev')) {
+        setMetaValue($db, 'compacted_rev', $maxRev);
+    }
+
+    $stmt = $db->prepare(
+        'DELETE FROM items WHERE (checked = 1 OR deleted = 1) AND changed_at < :cutoff'
+    );
+    $stmt->bindValue(':cutoff', $cutoff, SQLITE3_INTEGER);
+    $stmt->execute();
+
+    // Calendar tombstones; clients that missed them get a full calendar
+    $stmt = $db->prepare('SELECT MAX(rev) FROM cal_entries WHERE deleted = 1 AND changed_at < :cutoff');
+    $stmt->bindValue(':cutoff', $cutoff, SQLITE3_INTEGER);
+    $maxRev = (int)$stmt->execute()->fetchArray(SQLITE3_NUM)[0];
+    if ($maxRev > metaValue($db, 'cal_compacted_rev')) {
+        setMetaValue($db, 'cal_compacted_rev', $maxRev);
+    }
+    $stmt = $db->prepare('DELETE FROM cal_entries WHERE deleted = 1 AND changed_at < :cutoff');
+    $stmt->bindValue(':cutoff', $cutoff, SQLITE3_INTEGER);
+    $stmt->execute();
+    setMetaValue($db, 'compacted_at', time());
+    $db->exec('COMMIT');
+
+    // Switching an existing file to incremental auto-vacuum needs one full VACUUM
+    if ((int)$db->querySingle('PRAGMA auto_vacuum') !== 2) {
+        $db->exec('PRAGMA auto_vacuum = INCREMENTAL');
+        $db->exec('VACUUM');
+    }
+    $db->exec('PRAGMA incremental_vacuum');
+}
+
+// ── Helpers ───────────────────────────────────────────────────────────────────
+
+function metaValue(SQLite3 $db, string $key): int
+{
+    $stmt = $db->prepare('SELECT value FROM meta WHERE key = :key');
+    $stmt->bindValue(':key', $key, SQLITE3_TEXT);
+    $row = $stmt->execute()->fetchArray(SQLITE3_NUM);
+    return $row !== false ? (int)$row[0] : 0;
+}
+
+function setMetaValue(SQLite3 $db, string $key, int $value): void
+{
+    $stmt = $db->prepare('INSERT OR REPLACE INTO meta (key, value) VALUES (:key, :value)');
+    $stmt->bindValue(':key',   $key,   SQLITE3_TEXT);
+    $stmt->bindValue(':value', $value, SQLITE3_INTEGER);
     $stmt->execute();
+}
+
+/** Returns the latest revision handed out so far. */
+function currentRevision(SQLite3 $db): int
+{
+    return (int)$db->querySingle("SELECT value FROM meta WHERE key = 'revision'");
+}
 
-    echo json_encode(['success' => true]);
+/**
+ * Increments and returns the global revision counter.
+ * Must be called inside a write transaction so the value is unique.
+ */
+function nextRevision(SQLite3 $db): int
+{
+    $db->exec("UPDATE meta SET value = value + 1 WHERE key = 'revision'");
+    return currentRevision($db);
+}
+
+/**
+ * Resolves the item addressed by the parameters "id" or "uid".
+ * Raises ApiError 400 when neither is given and 404 when the uid is unknown.
+ */
+function requireItemId(SQLite3 $db, array $params): int
+{
+    $id = (int)($params['id'] ?? 0);
+    if ($id > 0) {
+        return $id;
+    }
+    $uid = trim((string)($params['uid'] ?? ''));
+    if ($uid === '') {
+        throw new ApiError('Parameter "id" or "uid" is required', 400);
+    }
+    $stmt = $db->prepare('SELECT id FROM items WHERE uid = :uid');
+    $stmt->bindValue(':uid', $uid, SQLITE3_TEXT);
+    $row = $stmt->execute()->fetchArray(SQLITE3_ASSOC);
+    if ($row === false) {
+        throw new ApiError('Item not found', 404);
+    }
+    return (int)$row['id'];
+}
+
+/** Maps an items row to its JSON representation. */
+function itemJson(array $row): array
+{
+    return [
+        'id'       => (int)$row['id'],
+        'name'     => $row['name'],
+        'category' => $row['category'],
+        'quantity' => (int)$row['quantity'],
+        'uid'      => $row['uid'] ?? null,
+    ];
 }